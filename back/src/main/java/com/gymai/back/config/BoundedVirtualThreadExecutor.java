@@ -0,0 +1,88 @@
+package com.gymai.back.config;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un hilo virtual nuevo por tarea, con la concurrencia acotada por semáforos en lugar de
+ * un pool: los hilos virtuales no se reutilizan.
+ *
+ * {@code admitted} cuenta las tareas en curso más las que esperan (concurrencia + cola) y
+ * se pide sin esperar: si no hay permiso, {@link #execute} lanza
+ * {@link RejectedExecutionException}, como la política de rechazo de un pool con cola
+ * llena. {@code running} limita las que se ejecutan a la vez; esperar ese permiso, ya en
+ * su hilo virtual, es la cola.
+ */
+class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore admitted;
+    private final Semaphore running;
+
+    BoundedVirtualThreadExecutor(ThreadFactory factory, int maxConcurrency, int queueCapacity) {
+        this.delegate = Executors.newThreadPerTaskExecutor(factory);
+        this.admitted = new Semaphore(maxConcurrency + queueCapacity);
+        this.running = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admitted.tryAcquire()) {
+            throw new RejectedExecutionException("Executor saturado");
+        }
+        try {
+            delegate.execute(() -> runAdmitted(task));
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    private void runAdmitted(Runnable task) {
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            // Apagado mientras esperaba su turno: no llega a ejecutarse
+            admitted.release();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            running.release();
+            admitted.release();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,45 @@
+package com.gymai.back.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Executor acotado para las llamadas bloqueantes a Gemini.
+ * Crea un hilo virtual por llamada, así que una llamada lenta sólo retiene un hilo virtual
+ * barato; el límite de concurrencia y la cola (esperas de permiso, ver
+ * {@link BoundedVirtualThreadExecutor}) evitan acumular trabajo sin control.
+ *
+ * Los PDF van aparte: generarlos es trabajo de CPU, así que usan pocos hilos de plataforma
+ * con prioridad mínima para no quitarle CPU al chat.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService geminiExecutor(
+            @Value("${gemini.executor.max-concurrency:200}") int maxConcurrency,
+            @Value("${gemini.executor.queue-capacity:500}") int queueCapacity) {
+        return new BoundedVirtualThreadExecutor(Thread.ofVirtual().name("gemini-", 0).factory(),
+                maxConcurrency, queueCapacity);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService pdfExecutor(
+            @Value("${pdf.jobs.workers:1}") int workers,
+            @Value("${pdf.jobs.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                workers, workers,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("pdf-", 0).daemon(true).priority(Thread.MIN_PRIORITY).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,53 @@
+package com.gymai.back.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Cliente HTTP para Gemini con pool de conexiones propio.
+ * Las conexiones se mantienen vivas entre llamadas (keep-alive) y, sobre TLS, se negocia
+ * HTTP/2 para multiplexar peticiones; si el servidor no lo ofrece se usa HTTP/1.1.
+ */
+@Configuration
+public class GeminiHttpConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider(
+            @Value("${gemini.http.max-connections:100}") int maxConnections,
+            @Value("${gemini.http.pending-acquire-max:1000}") int pendingAcquireMax,
+            @Value("${gemini.http.max-idle-time:PT60S}") Duration maxIdleTime,
+            @Value("${gemini.http.max-life-time:PT10M}") Duration maxLifeTime) {
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @Bean
+    public HttpClient geminiHttpClient(ConnectionProvider geminiConnectionProvider,
+            @Value("${gemini.http.connect-timeout:PT5S}") Duration connectTimeout) {
+        return HttpClient.create(geminiConnectionProvider)
+                .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                .keepAlive(true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis());
+    }
+
+    @Bean
+    public WebClient geminiWebClient(WebClient.Builder builder, HttpClient geminiHttpClient) {
+        return builder.clientConnector(new ReactorClientHttpConnector(geminiHttpClient)).build();
+    }
+}
@@ -3,25 +3,40 @@ package com.gymai.back.controller;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.time.Instant;
+import java.time.LocalDate;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.gymai.back.model.ChatMessage;
 import com.gymai.back.service.ChatService;
 import com.gymai.back.service.GeminiChatService;
+import com.gymai.back.service.GenerationBudgets;
+import com.gymai.back.service.PdfCache;
+import com.gymai.back.service.PdfJobService;
 import com.gymai.back.service.PdfService;
+import com.gymai.back.service.ProfileRegistry;
 import com.gymai.back.service.PromptBuilder;
+import com.gymai.back.service.SseFraming;
+import com.gymai.back.service.StreamRegistry;
 
 import lombok.RequiredArgsConstructor;
 
@@ -37,44 +52,122 @@ public class ChatController {
 	private final ChatService chatService;
 	private final PdfService pdfService;
 	private final PromptBuilder promptBuilder;
+	private final SseFraming sseFraming;
+	private final StreamRegistry streamRegistry;
+	private final ProfileRegistry profileRegistry;
+	private final GenerationBudgets generationBudgets;
+	private final PdfCache pdfCache;
+	private final PdfJobService pdfJobService;
+
+	private static final String STREAM_EXPIRED_MESSAGE =
+			"La respuesta ya no está disponible. Vuelve a enviar el mensaje.";
+	private static final String PROFILE_MISSING_MESSAGE =
+			"Perfil desconocido. Vuelve a registrarlo con PUT /api/profile.";
 
 	/**
 	 * Mensaje de entrada enviado por el front.
 	 */
-	public static record ChatRequest(String message) {}
+	public static record ChatRequest(String message, String sessionId, String profileHash, String budget) {}
 
 	/**
 	 * Respuesta mínima devuelta al front.
 	 */
-	public static record ChatResponse(String reply) {}
+	public static record ChatResponse(String reply, String messageId) {}
 
 	@GetMapping("/messages")
 	/**
 	 * Devuelve el historial simple en memoria (sólo para desarrollo/demo).
 	 */
-	public List<ChatMessage> getMessages() {
-		return chatService.getAllMessages();
+	public List<ChatMessage> getMessages(@RequestParam(name = "sessionId", required = false) String sessionId) {
+		return chatService.getAllMessages(sessionId);
 	}
 
 	@GetMapping(path = "/export/last-plan.pdf", produces = MediaType.APPLICATION_PDF_VALUE)
-	public ResponseEntity<byte[]> exportLastPlanPdf() {
-		ChatMessage lastBot = chatService.getLastBotMessage();
+	public ResponseEntity<StreamingResponseBody> exportLastPlanPdf(
+			@RequestParam(name = "sessionId", required = false) String sessionId, WebRequest request) {
+		ChatMessage lastBot = chatService.getLastBotMessage(sessionId);
 		if (lastBot == null) {
 			return ResponseEntity.noContent().build();
 		}
-		String title = "Plan GymAI";
-		byte[] pdfBytes = pdfService.generatePlanPdf(title, lastBot.getContent());
+		return planPdf(lastBot, request);
+	}
+
+	/**
+	 * Exporta toda la conversación de la sesión como un único PDF con índice. Se genera y
+	 * se envía mensaje a mensaje; no pasa por {@link PdfCache} porque cambia con cada turno.
+	 * La generación corre en el pool de PDF, como los trabajos de exportación, y con la
+	 * cola llena se responde 503.
+	 */
+	@GetMapping(path = "/export/conversation.pdf", produces = MediaType.APPLICATION_PDF_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportConversationPdf(
+			@RequestParam(name = "sessionId", required = false) String sessionId) {
+		List<ChatMessage> messages = chatService.getAllMessages(sessionId);
+		if (messages.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		PdfJobService.Reservation render;
+		try {
+			// Se reserva el hueco en el pool antes de responder, para poder contestar 503
+			render = pdfJobService.reserve(sink -> pdfService.writeConversationPdf(messages, LocalDate.now(), sink));
+		} catch (PdfJobService.QueueFullException e) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+		}
 		return ResponseEntity
 				.ok()
 				.headers(h -> {
-					h.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=plan-gymai.pdf");
+					h.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=conversacion-gymai.pdf");
 				})
-				.body(pdfBytes);
+				.body(render::writeTo);
+	}
+
+	/**
+	 * Exporta un mensaje concreto del historial (por su id) como PDF.
+	 */
+	@GetMapping(path = "/export/{messageId}.pdf", produces = MediaType.APPLICATION_PDF_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportMessagePdf(@PathVariable("messageId") String messageId,
+			@RequestParam(name = "sessionId", required = false) String sessionId, WebRequest request) {
+		ChatMessage message = chatService.getMessage(sessionId, messageId);
+		if (message == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return planPdf(message, request);
+	}
+
+	/**
+	 * El PDF se escribe directamente en la respuesta (sin Content-Length, con transferencia
+	 * por trozos) en lugar de generarse antes en un byte[]. Un fallo de generación sigue
+	 * terminando en 500 mientras no se haya enviado el primer bloque de la respuesta.
+	 *
+	 * La fecha de la cabecera es la del mensaje, así que el mismo plan da siempre el mismo
+	 * PDF: se sirve de {@link PdfCache} y su clave es el ETag. Con un
+	 * {@code If-None-Match} que coincide se responde 304 sin generar ni enviar nada.
+	 */
+	private ResponseEntity<StreamingResponseBody> planPdf(ChatMessage message, WebRequest request) {
+		String title = PdfService.PLAN_TITLE;
+		String content = message.getContent();
+		LocalDate renderDate = pdfService.renderDateOf(message);
+		String key = PdfCache.keyFor(title, content, renderDate);
+		if (request.checkNotModified(PdfCache.etag(key))) {
+			return null;
+		}
+		ResponseEntity.BodyBuilder response = ResponseEntity
+				.ok()
+				.eTag(PdfCache.etag(key))
+				.cacheControl(CacheControl.noCache().cachePrivate())
+				.headers(h -> {
+					h.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=plan-gymai.pdf");
+				});
+		byte[] cached = pdfCache.get(key);
+		if (cached != null) {
+			return response.contentLength(cached.length).body(out -> out.write(cached));
+		}
+		return response.body(out -> pdfCache.render(key, out,
+				sink -> pdfService.writePlanPdf(title, content, renderDate, sink)));
 	}
 
 	@PostMapping("/messages/reset")
-	public void resetMessages() {
-		chatService.clearMessages();
+	public void resetMessages(@RequestParam(name = "sessionId", required = false) String sessionId) {
+		chatService.clearMessages(sessionId);
 	}
 	
 
@@ -83,50 +176,96 @@ public class ChatController {
      * Recibe el mensaje del usuario, lo guarda en el historial y contexto (solo la
      * parte de mensaje del usuario), construye un prompt con el contexto reciente
      * más el mensaje completo recibido (que puede incluir perfil) y consulta a Gemini.
+     * Con {@code profileHash} el perfil sale del registro y el mensaje es sólo texto.
+     * {@code budget} elige el presupuesto de generación ({@code chat} o {@code plan}).
      */
-    public ChatResponse chat(@RequestBody ChatRequest request) {
+    public CompletableFuture<ChatResponse> chat(@RequestBody ChatRequest request) {
         String userText = request.message() == null ? "" : request.message();
+        String sessionId = request.sessionId();
 
-        String storedUserText = promptBuilder.extractUserMessage(userText);
+        ProfileRegistry.StoredProfile profile = resolveProfile(sessionId, request.profileHash());
+        if (hasText(request.profileHash()) && profile == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, PROFILE_MISSING_MESSAGE);
+        }
+
+        String storedUserText = profile != null ? userText : promptBuilder.extractUserMessage(userText);
 
         ChatMessage userMsg = new ChatMessage("user", storedUserText);
         userMsg.setTimestamp(Instant.now().toString());
-        chatService.addMessage(userMsg);
-
-        String prompt = promptBuilder.buildPrompt(chatService.getLastContext(), userText);
-        String reply = geminiChatService.getChatbotResponse(prompt);
+        chatService.addMessage(sessionId, userMsg);
 
-        ChatMessage botMsg = new ChatMessage("bot", reply);
-        botMsg.setTimestamp(Instant.now().toString());
-        chatService.addMessage(botMsg);
-        return new ChatResponse(reply);
+        PromptBuilder.Prompt prompt = buildPrompt(sessionId, profile, userText);
+        GenerationBudgets.Budget budget = generationBudgets.get(request.budget());
+        return geminiChatService.getChatbotResponseAsync(prompt, budget).thenApply(reply -> {
+            ChatMessage botMsg = new ChatMessage("bot", reply);
+            botMsg.setTimestamp(Instant.now().toString());
+            chatService.addMessage(sessionId, botMsg);
+            return new ChatResponse(reply, botMsg.getId());
+        });
     }
 
+	/**
+	 * Respuesta en streaming. Si llega {@code Last-Event-ID} (cabecera que envía el navegador
+	 * al reconectar, o parámetro {@code lastEventId} para clientes que no pueden fijarla) se
+	 * reanuda la respuesta ya en curso en vez de guardar otra vez el mensaje y volver a
+	 * llamar a Gemini. Con {@code profileHash} el perfil sale del registro; si el hash no
+	 * se conoce se responde con un evento {@code profile-missing} sin guardar nada.
+	 * {@code budget} elige el presupuesto de generación ({@code chat} o {@code plan}).
+	 */
 	@GetMapping(path = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-	public Flux<ServerSentEvent<String>> chatStream(@RequestParam("message") String message) {
+	public Flux<ServerSentEvent<String>> chatStream(@RequestParam("message") String message,
+			@RequestParam(name = "sessionId", required = false) String sessionId,
+			@RequestParam(name = "profileHash", required = false) String profileHash,
+			@RequestParam(name = "budget", required = false) String budget,
+			@RequestHeader(name = "Last-Event-ID", required = false) String lastEventIdHeader,
+			@RequestParam(name = "lastEventId", required = false) String lastEventIdParam) {
+		String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+		if (lastEventId != null && !lastEventId.isBlank()) {
+			return sseFraming.events(null, streamRegistry.resume(sessionId, lastEventId))
+					.onErrorResume(StreamRegistry.StreamExpiredException.class,
+							e -> Flux.just(ServerSentEvent.<String>builder().event("expired").data(STREAM_EXPIRED_MESSAGE).build()));
+		}
+
 		String userText = message == null ? "" : message;
-		String storedUserText = promptBuilder.extractUserMessage(userText);
+		ProfileRegistry.StoredProfile profile = resolveProfile(sessionId, profileHash);
+		if (hasText(profileHash) && profile == null) {
+			return Flux.just(ServerSentEvent.<String>builder().event("profile-missing").data(PROFILE_MISSING_MESSAGE).build());
+		}
+		String storedUserText = profile != null ? userText : promptBuilder.extractUserMessage(userText);
 
 		ChatMessage userMsg = new ChatMessage("user", storedUserText);
 		userMsg.setTimestamp(Instant.now().toString());
-		chatService.addMessage(userMsg);
-
-		String prompt = promptBuilder.buildPrompt(chatService.getLastContext(), userText);
-		StringBuilder fullReplyBuilder = new StringBuilder();
+		chatService.addMessage(sessionId, userMsg);
 
-		return geminiChatService.streamChatbotResponse(prompt)
-				.map(chunk -> {
-					fullReplyBuilder.append(chunk);
-					return ServerSentEvent.<String>builder()
-							.data(chunk)
-							.build();
-				})
-				.doOnComplete(() -> {
-					String fullReply = fullReplyBuilder.toString();
-					ChatMessage botMsg = new ChatMessage("bot", fullReply);
+		PromptBuilder.Prompt prompt = buildPrompt(sessionId, profile, userText);
+		String streamId = streamRegistry.start(sessionId,
+				sseFraming.coalesce(geminiChatService.streamChatbotResponse(prompt, generationBudgets.get(budget))),
+				(reply, truncated) -> {
+					ChatMessage botMsg = new ChatMessage("bot", reply);
 					botMsg.setTimestamp(Instant.now().toString());
-					chatService.addMessage(botMsg);
+					botMsg.setTruncated(truncated);
+					chatService.addMessage(sessionId, botMsg);
 				});
+		return sseFraming.events(streamId, streamRegistry.chunks(streamId));
+	}
+
+	private ProfileRegistry.StoredProfile resolveProfile(String sessionId, String profileHash) {
+		return hasText(profileHash) ? profileRegistry.get(sessionId, profileHash) : null;
+	}
+
+	/**
+	 * Con perfil registrado se reutiliza su prefijo ya renderizado y el mensaje llega sin
+	 * perfil; sin él, el perfil (si lo hay) va incrustado en el mensaje, como antes.
+	 */
+	private PromptBuilder.Prompt buildPrompt(String sessionId, ProfileRegistry.StoredProfile profile, String userText) {
+		if (profile != null) {
+			return promptBuilder.buildPrompt(chatService.getContext(sessionId), profile.prefix(), userText);
+		}
+		return promptBuilder.buildPrompt(chatService.getContext(sessionId), userText);
+	}
+
+	private static boolean hasText(String value) {
+		return value != null && !value.isBlank();
 	}
 
 }
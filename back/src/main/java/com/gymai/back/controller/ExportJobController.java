@@ -0,0 +1,105 @@
+package com.gymai.back.controller;
+
+import java.net.URI;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.gymai.back.model.ChatMessage;
+import com.gymai.back.service.ChatService;
+import com.gymai.back.service.PdfCache;
+import com.gymai.back.service.PdfJobService;
+import com.gymai.back.service.PdfService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exportación de planes a PDF como trabajos en segundo plano: se crea el trabajo y se
+ * consulta hasta que el PDF está listo, sin ocupar un hilo de petición mientras se genera.
+ */
+@RestController
+@RequestMapping(path = "/api/export/jobs")
+@CrossOrigin(origins = "http://localhost:4200")
+@RequiredArgsConstructor
+public class ExportJobController {
+
+	private final ChatService chatService;
+	private final PdfService pdfService;
+	private final PdfJobService pdfJobService;
+
+	/** Segundos que se sugiere esperar entre consultas de un trabajo pendiente. */
+	private static final String RETRY_AFTER_SECONDS = "1";
+
+	/**
+	 * Mensaje a exportar; sin {@code messageId} se exporta la última respuesta del bot.
+	 */
+	public static record JobRequest(String sessionId, String messageId) {}
+
+	/**
+	 * Estado de un trabajo mientras no hay PDF.
+	 */
+	public static record JobResponse(String jobId, PdfJobService.State status, String error) {}
+
+	@PostMapping
+	public ResponseEntity<JobResponse> createJob(@RequestBody JobRequest request) {
+		ChatMessage message = request.messageId() == null
+				? chatService.getLastBotMessage(request.sessionId())
+				: chatService.getMessage(request.sessionId(), request.messageId());
+		if (message == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No hay ningún plan que exportar");
+		}
+		PdfJobService.Job job;
+		try {
+			job = pdfJobService.submit(request.sessionId(), PdfService.PLAN_TITLE, message.getContent(),
+					pdfService.renderDateOf(message));
+		} catch (PdfJobService.QueueFullException e) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+		}
+		return ResponseEntity
+				.accepted()
+				.location(URI.create("/api/export/jobs/" + job.id()))
+				.body(new JobResponse(job.id(), job.state(), null));
+	}
+
+	/**
+	 * PDF del trabajo si ya está listo (200, servido de la caché de PDF); si no, su estado:
+	 * 202 mientras está en cola o generándose y 500 si falló.
+	 */
+	@GetMapping("/{jobId}")
+	public ResponseEntity<?> getJob(@PathVariable("jobId") String jobId,
+			@RequestParam(name = "sessionId", required = false) String sessionId) {
+		PdfJobService.Job job = pdfJobService.get(sessionId, jobId);
+		if (job == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return switch (job.state()) {
+			case DONE -> ResponseEntity
+					.ok()
+					.contentType(MediaType.APPLICATION_PDF)
+					.eTag(PdfCache.etag(job.key()))
+					.cacheControl(CacheControl.noCache().cachePrivate())
+					.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=plan-gymai.pdf")
+					.body((StreamingResponseBody) out -> pdfJobService.writePdf(job, out));
+			case FAILED -> ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(new JobResponse(job.id(), job.state(), job.error()));
+			default -> ResponseEntity
+					.accepted()
+					.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+					.body(new JobResponse(job.id(), job.state(), null));
+		};
+	}
+}
@@ -0,0 +1,65 @@
+package com.gymai.back.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.gymai.back.service.ChatService;
+import com.gymai.back.service.GeminiChatService;
+import com.gymai.back.service.GeminiCircuitBreaker;
+import com.gymai.back.service.GeminiContextCache;
+import com.gymai.back.service.GeminiHedger;
+import com.gymai.back.service.GeminiRateLimiter;
+import com.gymai.back.service.PdfCache;
+import com.gymai.back.service.PdfJobService;
+import com.gymai.back.service.ProfileRegistry;
+import com.gymai.back.service.ResponseCache;
+import com.gymai.back.service.SingleFlight;
+import com.gymai.back.service.StreamRegistry;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Contadores internos del backend (cachés, sesiones, latencias) para diagnóstico.
+ */
+@RestController
+@RequestMapping(path = "/api")
+@RequiredArgsConstructor
+public class MetricsController {
+
+	private final ChatService chatService;
+	private final ResponseCache responseCache;
+	private final SingleFlight singleFlight;
+	private final GeminiChatService geminiChatService;
+	private final GeminiRateLimiter rateLimiter;
+	private final GeminiCircuitBreaker circuitBreaker;
+	private final GeminiHedger hedger;
+	private final GeminiContextCache contextCache;
+	private final StreamRegistry streamRegistry;
+	private final ProfileRegistry profileRegistry;
+	private final PdfCache pdfCache;
+	private final PdfJobService pdfJobService;
+
+	@GetMapping("/metrics")
+	public Map<String, Object> metrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("sessions", chatService.getSessionCount());
+		metrics.put("responseCache", responseCache.stats());
+		metrics.put("singleFlight", singleFlight.stats());
+		metrics.put("streamFirstToken", geminiChatService.firstTokenStats());
+		metrics.put("replyLatency", geminiChatService.replyStats());
+		metrics.put("rateLimiter", rateLimiter.stats());
+		metrics.put("circuitBreaker", circuitBreaker.stats());
+		metrics.put("bulkheads", geminiChatService.bulkheadStats());
+		metrics.put("hedging", hedger.stats());
+		metrics.put("contextCache", contextCache.stats());
+		metrics.put("streams", streamRegistry.stats());
+		metrics.put("profiles", profileRegistry.stats());
+		metrics.put("pdfCache", pdfCache.stats());
+		metrics.put("pdfJobs", pdfJobService.stats());
+		return metrics;
+	}
+}
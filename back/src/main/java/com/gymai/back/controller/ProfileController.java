@@ -0,0 +1,38 @@
+package com.gymai.back.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.gymai.back.model.UserProfile;
+import com.gymai.back.service.ChatService;
+import com.gymai.back.service.ProfileRegistry;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Registro del perfil de usuario. El front lo envía una vez (y cuando cambia) y en cada
+ * mensaje manda sólo el hash devuelto.
+ */
+@RestController
+@RequestMapping(path = "/api")
+@RequiredArgsConstructor
+public class ProfileController {
+
+	private final ProfileRegistry profileRegistry;
+
+	/**
+	 * Hash de contenido del perfil registrado y su versión dentro de la sesión.
+	 */
+	public static record ProfileResponse(String profileHash, long version) {}
+
+	@PutMapping(path = "/profile", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ProfileResponse putProfile(@RequestBody UserProfile profile,
+			@RequestParam(name = "sessionId", required = false) String sessionId) {
+		ProfileRegistry.StoredProfile stored = profileRegistry.put(ChatService.resolveSessionId(sessionId), profile);
+		return new ProfileResponse(stored.hash(), stored.version());
+	}
+}
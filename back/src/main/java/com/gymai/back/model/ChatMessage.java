@@ -10,6 +10,12 @@ public class ChatMessage {
 	private String content;
 	private String timestamp;
 
+	/** La respuesta se cortó antes de terminar (el cliente se desconectó). */
+	private boolean truncated;
+
+	/** Estimación de tokens calculada una sola vez; -1 = pendiente. */
+	private transient int tokenEstimate = -1;
+
 	public ChatMessage() {
 		this.id = java.util.UUID.randomUUID().toString();
 	}
@@ -27,8 +33,28 @@ public class ChatMessage {
 	public void setSender(String sender) { this.sender = sender; }
 
 	public String getContent() { return content; }
-	public void setContent(String content) { this.content = content; }
+	public void setContent(String content) {
+		this.content = content;
+		this.tokenEstimate = -1;
+	}
 
 	public String getTimestamp() { return timestamp; }
 	public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
+
+	public boolean isTruncated() { return truncated; }
+	public void setTruncated(boolean truncated) { this.truncated = truncated; }
+
+	/**
+	 * Estimación aproximada de los tokens que ocupa el mensaje en el prompt
+	 * (unos 4 caracteres por token más el prefijo del remitente). Se calcula una vez y se cachea.
+	 */
+	public int estimatedTokens() {
+		int estimate = tokenEstimate;
+		if (estimate < 0) {
+			int chars = (sender == null ? 0 : sender.length()) + 2 + (content == null ? 0 : content.length());
+			estimate = (chars + 3) / 4 + 1;
+			tokenEstimate = estimate;
+		}
+		return estimate;
+	}
 }
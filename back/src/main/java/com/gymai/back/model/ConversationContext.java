@@ -0,0 +1,17 @@
+package com.gymai.back.model;
+
+import java.util.List;
+
+/**
+ * Contexto de conversación que se envía a Gemini: un resumen opcional de los turnos
+ * antiguos que no caben en el presupuesto y los mensajes recientes completos.
+ *
+ * @param summary Resumen de turnos anteriores, o null si todo cabe en el presupuesto
+ * @param messages Mensajes recientes, del más antiguo al más reciente
+ */
+public record ConversationContext(String summary, List<ChatMessage> messages) {
+
+	public static ConversationContext empty() {
+		return new ConversationContext(null, List.of());
+	}
+}
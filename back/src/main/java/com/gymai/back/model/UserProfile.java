@@ -0,0 +1,16 @@
+package com.gymai.back.model;
+
+/**
+ * Perfil de entrenamiento y dieta que el front registra con {@code PUT /api/profile}.
+ * Todos los campos son opcionales.
+ *
+ * @param age Edad en años
+ * @param height Altura en cm
+ * @param weight Peso en kg
+ * @param goal Objetivo (adelgazar, ganar_masa, definir, mantener)
+ * @param activity Actividad diaria, texto libre
+ * @param medicalNotes Datos médicos relevantes
+ */
+public record UserProfile(Integer age, Double height, Double weight, String goal, String activity,
+		String medicalNotes) {
+}
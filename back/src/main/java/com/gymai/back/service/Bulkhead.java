@@ -0,0 +1,68 @@
+package com.gymai.back.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compartimento estanco: limita cuántas llamadas de un mismo camino pueden estar en
+ * curso a la vez, para que un atasco en uno (p. ej. {@code /chat}) no deje sin
+ * capacidad al otro ({@code /chat/stream}). No hay cola: si está lleno, falla al momento.
+ */
+public class Bulkhead {
+
+	private final String name;
+	private final int maxConcurrent;
+	private final Semaphore permits;
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Error devuelto cuando el compartimento está lleno.
+	 */
+	public static class BulkheadFullException extends RuntimeException {
+		public BulkheadFullException(String name) {
+			super("Compartimento " + name + " lleno");
+		}
+	}
+
+	/**
+	 * Ocupación del compartimento.
+	 */
+	public record Stats(int maxConcurrent, int active, long rejected) {}
+
+	public Bulkhead(String name, int maxConcurrent) {
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.permits = new Semaphore(maxConcurrent);
+	}
+
+	public <T> Mono<T> run(Mono<T> call) {
+		return Mono.usingWhen(acquire(), permit -> call, permit -> release(), (permit, error) -> release(),
+				permit -> release());
+	}
+
+	public <T> Flux<T> run(Flux<T> call) {
+		return Flux.usingWhen(acquire(), permit -> call, permit -> release(), (permit, error) -> release(),
+				permit -> release());
+	}
+
+	public Stats stats() {
+		return new Stats(maxConcurrent, maxConcurrent - permits.availablePermits(), rejected.get());
+	}
+
+	private Mono<Boolean> acquire() {
+		return Mono.defer(() -> {
+			if (permits.tryAcquire()) {
+				return Mono.just(Boolean.TRUE);
+			}
+			rejected.incrementAndGet();
+			return Mono.error(new BulkheadFullException(name));
+		});
+	}
+
+	private Mono<Void> release() {
+		return Mono.fromRunnable(permits::release);
+	}
+}
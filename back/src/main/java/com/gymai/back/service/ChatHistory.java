@@ -0,0 +1,145 @@
+package com.gymai.back.service;
+
+import com.gymai.back.model.ChatMessage;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Buffer circular de capacidad fija para el historial de una sesión, sin bloqueos.
+ *
+ * Cada mensaje recibe un número de secuencia creciente y ocupa la posición
+ * {@code secuencia % capacidad}. Cada posición tiene una versión tipo seqlock:
+ * 0 = vacía, impar = escritura en curso, par = publicada. Los lectores validan la
+ * versión antes y después de leer el mensaje, así que nunca ven una posición a medio
+ * sobrescribir. Añadir es O(1) y no reserva memoria; leer devuelve copias inmutables.
+ *
+ * Un índice id → secuencia y un puntero al último mensaje del bot permiten búsquedas
+ * O(1). Ambos guardan secuencias, no mensajes: la lectura pasa por la validación de la
+ * posición, así que un mensaje ya sobrescrito nunca se devuelve aunque siga indexado.
+ */
+class ChatHistory {
+
+    private final int capacity;
+    private final AtomicReferenceArray<ChatMessage> slots;
+    private final AtomicLongArray versions;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<String, Long> seqById = new ConcurrentHashMap<>();
+    private final AtomicLong latestBotSeq = new AtomicLong(-1);
+
+    ChatHistory(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.versions = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Añade un mensaje, sobrescribiendo el más antiguo si el buffer está lleno.
+     *
+     * @return Variación en bytes estimados del historial
+     */
+    long append(ChatMessage message) {
+        long seq = next.getAndIncrement();
+        int idx = index(seq);
+        long published = published(seq);
+
+        long previous;
+        for (;;) {
+            previous = versions.get(idx);
+            if ((previous & 1) == 1) {
+                // Otro escritor termina de publicar en esta posición (capacidad llena de escritores)
+                Thread.onSpinWait();
+                continue;
+            }
+            if (previous >= published) {
+                // Una secuencia posterior ya ocupó la posición: este mensaje nace expulsado
+                return 0;
+            }
+            if (versions.compareAndSet(idx, previous, published - 1)) {
+                break;
+            }
+        }
+
+        ChatMessage evicted = slots.getAndSet(idx, message);
+        versions.set(idx, published);
+
+        seqById.put(message.getId(), seq);
+        if ("bot".equals(message.getSender())) {
+            latestBotSeq.accumulateAndGet(seq, Math::max);
+        }
+
+        long delta = ChatSession.estimateBytes(message);
+        if (evicted != null) {
+            seqById.remove(evicted.getId(), previous / 2 - 1);
+            delta -= ChatSession.estimateBytes(evicted);
+        }
+        bytes.addAndGet(delta);
+        return delta;
+    }
+
+    /**
+     * Devuelve una copia inmutable de hasta los últimos {@code count} mensajes, en orden.
+     * Los mensajes aún en escritura no se incluyen.
+     */
+    List<ChatMessage> last(int count) {
+        long hi = next.get();
+        long lo = Math.max(0, hi - Math.min(count, capacity));
+        List<ChatMessage> out = new ArrayList<>((int) (hi - lo));
+        for (long seq = lo; seq < hi; seq++) {
+            ChatMessage m = read(seq);
+            if (m != null) {
+                out.add(m);
+            }
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    /**
+     * Devuelve el mensaje con el id indicado, o null si no existe o ya fue expulsado.
+     */
+    ChatMessage byId(String id) {
+        Long seq = seqById.get(id);
+        return seq == null ? null : read(seq);
+    }
+
+    /**
+     * Devuelve el mensaje más reciente del bot, o null si no queda ninguno.
+     * Si el último ya fue expulsado, todos los anteriores también lo fueron.
+     */
+    ChatMessage latestBot() {
+        long seq = latestBotSeq.get();
+        return seq < 0 ? null : read(seq);
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Lee la posición de una secuencia; null si aún no se publicó o ya fue sobrescrita.
+     */
+    private ChatMessage read(long seq) {
+        int idx = index(seq);
+        long expected = published(seq);
+        if (versions.get(idx) != expected) {
+            return null;
+        }
+        ChatMessage m = slots.get(idx);
+        return versions.get(idx) == expected ? m : null;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private static long published(long seq) {
+        return 2 * seq + 2;
+    }
+}
@@ -0,0 +1,380 @@
+package com.gymai.back.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.gymai.back.model.ChatMessage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registro duradero y sólo de escritura del historial de chat (opcional).
+ *
+ * Los mensajes se encolan sin bloquear y un hilo de escritura diferida los vuelca por
+ * lotes en segmentos de tamaño fijo mapeados en memoria. Cada registro lleva su longitud
+ * al principio y al final, y la cabecera del segmento guarda la posición confirmada, así
+ * que la recuperación recorre los segmentos desde la cola hacia atrás y se detiene en
+ * cuanto los registros son más antiguos que el tiempo de inactividad de sesión: el
+ * arranque no depende del tamaño total del historial.
+ */
+@Component
+@Slf4j
+public class ChatHistoryLog {
+
+	private static final int MAGIC = 0x47594d4c; // "GYML"
+	private static final int HEADER_SIZE = 16;
+	private static final int TAIL_OFFSET = 8;
+	private static final int MAX_BATCH = 256;
+
+	private static final byte TYPE_MESSAGE = 1;
+	private static final byte TYPE_CLEAR = 2;
+	private static final byte TYPE_TRUNCATED_MESSAGE = 3;
+
+	@Value("${chat.persistence.enabled:false}")
+	private boolean enabled;
+
+	@Value("${chat.persistence.dir:./data/history}")
+	private Path dir;
+
+	@Value("${chat.persistence.segment-size:8388608}")
+	private int segmentSize;
+
+	@Value("${chat.persistence.queue-capacity:10000}")
+	private int queueCapacity;
+
+	@Value("${chat.session.idle-timeout:PT30M}")
+	private Duration retention;
+
+	private BlockingQueue<Entry> queue;
+	private Thread writerThread;
+	private volatile boolean running;
+
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long segmentIndex;
+
+	/**
+	 * Registro pendiente de escribir.
+	 */
+	private record Entry(byte type, long time, String sessionId, ChatMessage message) {}
+
+	/**
+	 * Mensajes recuperados de una sesión, del más antiguo al más reciente.
+	 */
+	public record RecoveredSession(String sessionId, List<ChatMessage> messages) {}
+
+	@PostConstruct
+	public void init() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		Files.createDirectories(dir);
+		deleteExpiredSegments();
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		running = true;
+		writerThread = new Thread(this::writeLoop, "chat-history-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		log.info("💾 Persistencia del historial activa en {}", dir.toAbsolutePath());
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Encola un mensaje para escribirlo en segundo plano. Nunca bloquea: si la cola está
+	 * llena el mensaje sólo queda en memoria.
+	 */
+	public void append(String sessionId, ChatMessage message) {
+		byte type = message.isTruncated() ? TYPE_TRUNCATED_MESSAGE : TYPE_MESSAGE;
+		offer(new Entry(type, System.currentTimeMillis(), sessionId, message));
+	}
+
+	/**
+	 * Encola una marca de borrado de sesión para que la recuperación no la resucite.
+	 */
+	public void appendClear(String sessionId) {
+		offer(new Entry(TYPE_CLEAR, System.currentTimeMillis(), sessionId, null));
+	}
+
+	private void offer(Entry entry) {
+		if (!enabled) {
+			return;
+		}
+		if (!queue.offer(entry)) {
+			log.warn("Cola de persistencia llena; el mensaje de la sesión {} no se guardará en disco", entry.sessionId());
+		}
+	}
+
+	/**
+	 * Reconstruye los últimos mensajes de cada sesión recorriendo los segmentos desde la
+	 * cola hacia atrás. Se detiene al llegar a registros más antiguos que la retención.
+	 *
+	 * @param maxPerSession Máximo de mensajes a recuperar por sesión
+	 */
+	public List<RecoveredSession> recover(int maxPerSession) {
+		if (!enabled) {
+			return List.of();
+		}
+		long cutoff = System.currentTimeMillis() - retention.toMillis();
+		Map<String, Deque<ChatMessage>> bySession = new LinkedHashMap<>();
+		Set<String> closed = new HashSet<>();
+		long started = System.nanoTime();
+		int scanned = 0;
+
+		segments:
+		for (Path file : listSegments(true)) {
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+				if (ch.size() < HEADER_SIZE) {
+					continue;
+				}
+				MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+				if (buf.getInt(0) != MAGIC) {
+					log.warn("Segmento de historial no válido, se ignora: {}", file);
+					continue;
+				}
+				int pos = Math.min(buf.getInt(TAIL_OFFSET), buf.capacity());
+				while (pos > HEADER_SIZE) {
+					int length = buf.getInt(pos - 4);
+					int start = pos - 4 - length - 4;
+					if (length <= 0 || start < HEADER_SIZE || buf.getInt(start) != length) {
+						log.warn("Registro corrupto en {} (posición {}); se detiene la recuperación de ese segmento", file, pos);
+						break;
+					}
+					pos = start;
+					scanned++;
+
+					ByteBuffer record = buf.slice(start + 4, length);
+					byte type = record.get();
+					long time = record.getLong();
+					if (time < cutoff) {
+						break segments;
+					}
+					String sessionId = readString(record);
+					if (closed.contains(sessionId)) {
+						continue;
+					}
+					if (type == TYPE_CLEAR) {
+						closed.add(sessionId);
+						continue;
+					}
+					Deque<ChatMessage> messages = bySession.computeIfAbsent(sessionId, k -> new ArrayDeque<>());
+					if (messages.size() < maxPerSession) {
+						ChatMessage message = readMessage(record);
+						message.setTruncated(type == TYPE_TRUNCATED_MESSAGE);
+						messages.addFirst(message);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				log.warn("No se pudo leer el segmento {}: {}", file, e.getMessage());
+			}
+		}
+
+		List<RecoveredSession> recovered = new ArrayList<>(bySession.size());
+		bySession.forEach((id, messages) -> recovered.add(new RecoveredSession(id, new ArrayList<>(messages))));
+		log.info("💾 Recuperadas {} sesiones ({} registros leídos) en {} ms", recovered.size(), scanned,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		return recovered;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (!enabled || writerThread == null) {
+			return;
+		}
+		// Sin interrupt(): interrumpir el hilo cerraría el FileChannel a mitad de escritura
+		running = false;
+		try {
+			writerThread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeSegment();
+	}
+
+	private void writeLoop() {
+		List<Entry> batch = new ArrayList<>(MAX_BATCH);
+		while (running || !queue.isEmpty()) {
+			try {
+				Entry first = queue.poll(200, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			queue.drainTo(batch, MAX_BATCH - batch.size());
+			if (batch.isEmpty()) {
+				continue;
+			}
+			try {
+				writeBatch(batch);
+			} catch (IOException | RuntimeException e) {
+				log.error("Error escribiendo el historial en disco; se descartan {} registros", batch.size(), e);
+				closeSegment();
+			}
+			batch.clear();
+		}
+	}
+
+	private void writeBatch(List<Entry> batch) throws IOException {
+		for (Entry entry : batch) {
+			byte[] record = encode(entry);
+			int needed = 4 + record.length + 4;
+			if (needed > segmentSize - HEADER_SIZE) {
+				log.warn("Mensaje de {} bytes demasiado grande para un segmento; no se persiste", record.length);
+				continue;
+			}
+			if (segment == null || segment.remaining() < needed) {
+				rollSegment();
+			}
+			segment.putInt(record.length);
+			segment.put(record);
+			segment.putInt(record.length);
+		}
+		if (segment == null) {
+			return;
+		}
+		// La posición confirmada se publica después de los datos: un corte a mitad de
+		// lote deja el segmento en el último estado coherente
+		segment.putInt(TAIL_OFFSET, segment.position());
+		segment.force();
+	}
+
+	private void rollSegment() throws IOException {
+		if (segment != null) {
+			segment.putInt(TAIL_OFFSET, segment.position());
+			segment.force();
+			closeSegment();
+			deleteExpiredSegments();
+		}
+		segmentIndex = Math.max(segmentIndex, lastSegmentIndex()) + 1;
+		Path file = dir.resolve(String.format("segment-%020d.log", segmentIndex));
+		channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		segment.putInt(0, MAGIC);
+		segment.putInt(TAIL_OFFSET, HEADER_SIZE);
+		segment.position(HEADER_SIZE);
+	}
+
+	private void closeSegment() {
+		segment = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.warn("Error cerrando segmento de historial: {}", e.getMessage());
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * Borra los segmentos cuyo último registro es anterior a la retención: nunca se
+	 * recuperarían y sólo ocuparían disco.
+	 */
+	private void deleteExpiredSegments() {
+		long cutoff = System.currentTimeMillis() - retention.toMillis();
+		for (Path file : listSegments(false)) {
+			try {
+				if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+					Files.deleteIfExists(file);
+				}
+			} catch (IOException e) {
+				log.warn("No se pudo borrar el segmento caducado {}: {}", file, e.getMessage());
+			}
+		}
+	}
+
+	private long lastSegmentIndex() {
+		List<Path> segments = listSegments(true);
+		if (segments.isEmpty()) {
+			return 0;
+		}
+		String name = segments.get(0).getFileName().toString();
+		return Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+	}
+
+	private List<Path> listSegments(boolean newestFirst) {
+		try (Stream<Path> files = Files.list(dir)) {
+			Comparator<Path> byName = Comparator.comparing(p -> p.getFileName().toString());
+			return files
+					.filter(p -> p.getFileName().toString().matches("segment-\\d{20}\\.log"))
+					.sorted(newestFirst ? byName.reversed() : byName)
+					.toList();
+		} catch (IOException e) {
+			log.warn("No se pudo listar el directorio de historial {}: {}", dir, e.getMessage());
+			return List.of();
+		}
+	}
+
+	private static byte[] encode(Entry entry) {
+		byte[] session = utf8(entry.sessionId());
+		ChatMessage m = entry.message();
+		byte[] id = m == null ? new byte[0] : utf8(m.getId());
+		byte[] sender = m == null ? new byte[0] : utf8(m.getSender());
+		byte[] timestamp = m == null ? new byte[0] : utf8(m.getTimestamp());
+		byte[] content = m == null ? new byte[0] : utf8(m.getContent());
+
+		ByteBuffer buf = ByteBuffer.allocate(1 + 8 + 5 * 4
+				+ session.length + id.length + sender.length + timestamp.length + content.length);
+		buf.put(entry.type());
+		buf.putLong(entry.time());
+		putBytes(buf, session);
+		putBytes(buf, id);
+		putBytes(buf, sender);
+		putBytes(buf, timestamp);
+		putBytes(buf, content);
+		return buf.array();
+	}
+
+	private static ChatMessage readMessage(ByteBuffer record) {
+		ChatMessage m = new ChatMessage();
+		m.setId(readString(record));
+		m.setSender(readString(record));
+		m.setTimestamp(emptyToNull(readString(record)));
+		m.setContent(readString(record));
+		return m;
+	}
+
+	private static void putBytes(ByteBuffer buf, byte[] bytes) {
+		buf.putInt(bytes.length);
+		buf.put(bytes);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int length = buf.getInt();
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] utf8(String s) {
+		return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String emptyToNull(String s) {
+		return s.isEmpty() ? null : s;
+	}
+}
@@ -1,63 +1,224 @@
 package com.gymai.back.service;
 
 import com.gymai.back.model.ChatMessage;
+import com.gymai.back.model.ConversationContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Servicio centralizado para gestión de mensajes y contexto.
- * Única fuente de verdad para el historial de chat.
+ * Única fuente de verdad para el historial de chat, separado por sesión.
+ * Las sesiones inactivas se expulsan pasado un tiempo y, si la memoria total
+ * estimada supera el límite, se expulsan primero las menos recientes.
+ * Con la persistencia activa, cada cambio se registra también en {@link ChatHistoryLog}
+ * y al arrancar se recuperan las sesiones recientes.
  */
 @Service
+@Slf4j
+@RequiredArgsConstructor
 public class ChatService {
 
     private static final int MAX_MESSAGES = 50;
-    private static final int CONTEXT_SIZE = 5;
-    
-    private final List<ChatMessage> messages = Collections.synchronizedList(new ArrayList<>());
+    private static final int MAX_SESSION_ID_LENGTH = 64;
+
+    @Value("${chat.session.idle-timeout:PT30M}")
+    private Duration idleTimeout;
+
+    @Value("${chat.session.max-total-bytes:67108864}")
+    private long maxTotalBytes;
+
+    private final ChatHistoryLog historyLog;
+    private final ContextWindow contextWindow;
+
+    private final Map<String, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Reconstruye en memoria las sesiones guardadas en disco (si la persistencia está activa).
+     */
+    @PostConstruct
+    public void recoverSessions() {
+        for (ChatHistoryLog.RecoveredSession recovered : historyLog.recover(MAX_MESSAGES)) {
+            recovered.messages().forEach(m -> store(recovered.sessionId(), m));
+        }
+    }
+
+    /**
+     * Se rechaza la petición porque el identificador de sesión falta o no es válido (400).
+     */
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class InvalidSessionIdException extends RuntimeException {
+        public InvalidSessionIdException() {
+            super("sessionId obligatorio: hasta " + MAX_SESSION_ID_LENGTH + " letras, dígitos, '-' o '_'");
+        }
+    }
+
+    /**
+     * Valida el identificador de sesión recibido del cliente ({@code [A-Za-z0-9_-]}, sólo
+     * ASCII). No hay sesión compartida por defecto: si falta o no es válido se rechaza,
+     * para que clientes distintos nunca lean el contexto de otros.
+     *
+     * @throws InvalidSessionIdException si falta o no es válido
+     */
+    public static String resolveSessionId(String sessionId) {
+        if (sessionId == null || sessionId.isBlank() || sessionId.length() > MAX_SESSION_ID_LENGTH) {
+            throw new InvalidSessionIdException();
+        }
+        for (int i = 0; i < sessionId.length(); i++) {
+            char c = sessionId.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_';
+            if (!allowed) {
+                throw new InvalidSessionIdException();
+            }
+        }
+        return sessionId;
+    }
+
+    /**
+     * Devuelve todos los mensajes del historial de la sesión.
+     */
+    public List<ChatMessage> getAllMessages(String sessionId) {
+        ChatSession session = sessions.get(resolveSessionId(sessionId));
+        return session == null ? List.of() : session.all();
+    }
+
+    /**
+     * Devuelve el contexto de la sesión ajustado al presupuesto de tokens: los mensajes
+     * recientes completos más un resumen de los anteriores (reutilizado entre turnos).
+     * Es una copia inmutable: puede recorrerse sin bloqueos aunque otros hilos escriban.
+     */
+    public ConversationContext getContext(String sessionId) {
+        ChatSession session = sessions.get(resolveSessionId(sessionId));
+        if (session == null) {
+            return ConversationContext.empty();
+        }
+        ContextWindow.Selection selection = contextWindow.select(session.all(), session.summary());
+        session.summary(selection.summary());
+        return selection.context();
+    }
+
+    /**
+     * Añade un mensaje al historial de la sesión, manteniendo un máximo de 50.
+     */
+    public void addMessage(String sessionId, ChatMessage message) {
+        String id = resolveSessionId(sessionId);
+        store(id, message);
+        historyLog.append(id, message);
+    }
+
+    private void store(String sessionId, ChatMessage message) {
+        // Se añade dentro de compute: un clear o una expulsión concurrente no puede quitar
+        // la sesión del mapa entre crearla y escribir en ella (el mensaje se perdería).
+        long[] added = new long[1];
+        sessions.compute(sessionId, (id, session) -> {
+            ChatSession target = session != null ? session : new ChatSession(MAX_MESSAGES);
+            added[0] = target.add(message);
+            return target;
+        });
+        long total = totalBytes.addAndGet(added[0]);
+        if (total > maxTotalBytes) {
+            evictOverBudget();
+        }
+    }
 
     /**
-     * Devuelve todos los mensajes del historial.
+     * Devuelve el último mensaje del bot de la sesión para generar PDFs (O(1)).
      */
-    public List<ChatMessage> getAllMessages() {
-        return new ArrayList<>(messages);
+    public ChatMessage getLastBotMessage(String sessionId) {
+        ChatSession session = sessions.get(resolveSessionId(sessionId));
+        return session == null ? null : session.latestBot();
     }
 
     /**
-     * Devuelve hasta los últimos 5 mensajes para contexto.
+     * Busca un mensaje de la sesión por su id (O(1)); null si no existe o ya fue expulsado.
      */
-    public List<ChatMessage> getLastContext() {
-        int size = messages.size();
-        return messages.subList(Math.max(0, size - CONTEXT_SIZE), size);
+    public ChatMessage getMessage(String sessionId, String messageId) {
+        ChatSession session = sessions.get(resolveSessionId(sessionId));
+        return session == null || messageId == null ? null : session.byId(messageId);
     }
 
     /**
-     * Añade un mensaje al historial, manteniendo un máximo de 50.
+     * Limpia todo el historial de mensajes de la sesión.
      */
-    public void addMessage(ChatMessage message) {
-        messages.add(message);
-        if (messages.size() > MAX_MESSAGES) {
-            messages.remove(0);
+    public void clearMessages(String sessionId) {
+        String id = resolveSessionId(sessionId);
+        ChatSession session = sessions.remove(id);
+        if (session != null) {
+            totalBytes.addAndGet(-session.bytes());
         }
+        historyLog.appendClear(id);
+    }
+
+    /**
+     * Número de sesiones vivas en memoria.
+     */
+    public int getSessionCount() {
+        return sessions.size();
     }
 
     /**
-     * Busca el último mensaje del bot para generar PDFs.
+     * Expulsa periódicamente las sesiones inactivas y recalcula el total de memoria
+     * estimada para corregir desviaciones por escrituras concurrentes con la expulsión.
      */
-    public ChatMessage getLastBotMessage() {
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            ChatMessage m = messages.get(i);
-            if ("bot".equals(m.getSender())) {
-                return m;
+    @Scheduled(fixedDelayString = "${chat.session.sweep-interval:PT1M}")
+    public void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTimeout.toMillis();
+        int evicted = 0;
+        for (Map.Entry<String, ChatSession> entry : sessions.entrySet()) {
+            if (entry.getValue().lastAccess() < cutoff && sessions.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
             }
         }
-        return null;
+        totalBytes.set(sumSessionBytes());
+        if (evicted > 0) {
+            log.info("Expulsadas {} sesiones inactivas ({} activas)", evicted, sessions.size());
+        }
     }
 
     /**
-     * Limpia todo el historial de mensajes.
+     * Expulsa las sesiones menos recientes hasta volver por debajo del límite de memoria.
+     * Si otro hilo ya está expulsando, no se espera.
      */
-    public void clearMessages() {
-        messages.clear();
+    private void evictOverBudget() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, ChatSession>> byAge = new ArrayList<>(sessions.entrySet());
+            byAge.sort(Comparator.comparingLong(e -> e.getValue().lastAccess()));
+            long total = sumSessionBytes();
+            // Nunca se expulsa la sesión más reciente: es la que está escribiendo ahora
+            for (int i = 0; i < byAge.size() - 1 && total > maxTotalBytes; i++) {
+                Map.Entry<String, ChatSession> entry = byAge.get(i);
+                if (sessions.remove(entry.getKey(), entry.getValue())) {
+                    total -= entry.getValue().bytes();
+                    log.warn("Sesión {} expulsada por límite de memoria", entry.getKey());
+                }
+            }
+            totalBytes.set(total);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private long sumSessionBytes() {
+        long sum = 0;
+        for (ChatSession session : sessions.values()) {
+            sum += session.bytes();
+        }
+        return sum;
     }
 }
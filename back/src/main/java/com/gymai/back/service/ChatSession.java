@@ -0,0 +1,81 @@
+package com.gymai.back.service;
+
+import com.gymai.back.model.ChatMessage;
+import java.util.List;
+
+/**
+ * Historial acotado de una única sesión de chat.
+ * Se apoya en un {@link ChatHistory} sin bloqueos, de modo que ni las sesiones
+ * distintas ni los lectores y escritores de una misma sesión compiten por un monitor.
+ */
+class ChatSession {
+
+    private final ChatHistory history;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+    private volatile ContextWindow.RollingSummary summary;
+
+    ChatSession(int maxMessages) {
+        this.history = new ChatHistory(maxMessages);
+    }
+
+    /**
+     * Añade un mensaje descartando el más antiguo si se supera el máximo.
+     *
+     * @return Variación en bytes estimados del historial de la sesión
+     */
+    long add(ChatMessage message) {
+        touch();
+        return history.append(message);
+    }
+
+    List<ChatMessage> all() {
+        touch();
+        return history.last(history.capacity());
+    }
+
+    ChatMessage byId(String id) {
+        touch();
+        return history.byId(id);
+    }
+
+    ChatMessage latestBot() {
+        touch();
+        return history.latestBot();
+    }
+
+    ContextWindow.RollingSummary summary() {
+        return summary;
+    }
+
+    void summary(ContextWindow.RollingSummary summary) {
+        this.summary = summary;
+    }
+
+    long bytes() {
+        return history.bytes();
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    private void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Estimación aproximada de la huella en heap de un mensaje (UTF-16 + cabeceras).
+     */
+    static long estimateBytes(ChatMessage message) {
+        return 64L
+                + 2L * length(message.getId())
+                + 2L * length(message.getSender())
+                + 2L * length(message.getContent())
+                + 2L * length(message.getTimestamp());
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
@@ -0,0 +1,116 @@
+package com.gymai.back.service;
+
+import com.gymai.back.model.ChatMessage;
+import com.gymai.back.model.ConversationContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.List;
+
+/**
+ * Selecciona el contexto de conversación según un presupuesto de tokens.
+ *
+ * Se incluyen completos los mensajes más recientes que quepan en el presupuesto; los
+ * anteriores se pliegan en un resumen acumulado que se calcula una sola vez por sesión
+ * y sólo se amplía con los mensajes que van saliendo de la ventana.
+ */
+@Component
+public class ContextWindow {
+
+    /** Máximo de caracteres que aporta cada mensaje plegado al resumen. */
+    private static final int SUMMARY_LINE_CHARS = 160;
+
+    @Value("${chat.context.token-budget:1200}")
+    private int tokenBudget;
+
+    @Value("${chat.context.summary-token-budget:300}")
+    private int summaryTokenBudget;
+
+    /**
+     * Resumen acumulado de una sesión.
+     *
+     * @param lastFoldedId Id del mensaje más reciente ya incluido en el resumen
+     * @param text Texto del resumen
+     */
+    record RollingSummary(String lastFoldedId, String text) {}
+
+    /**
+     * Resultado de la selección: el contexto a enviar y el resumen a cachear en la sesión.
+     */
+    record Selection(ConversationContext context, RollingSummary summary) {}
+
+    /**
+     * Elige los mensajes recientes que caben en el presupuesto y actualiza el resumen.
+     *
+     * @param history Historial de la sesión, del más antiguo al más reciente
+     * @param cached Resumen calculado en una llamada anterior, o null
+     */
+    Selection select(List<ChatMessage> history, RollingSummary cached) {
+        int recentBudget = Math.max(1, tokenBudget - summaryTokenBudget);
+        int start = history.size();
+        int used = 0;
+        while (start > 0) {
+            int tokens = history.get(start - 1).estimatedTokens();
+            if (used + tokens > recentBudget && start < history.size()) {
+                break;
+            }
+            used += tokens;
+            start--;
+        }
+
+        // Lo que ya está en el resumen no vuelve a la ventana, aunque ahora quepa
+        int folded = cached == null ? -1 : indexOf(history, cached.lastFoldedId());
+        start = Math.max(start, folded + 1);
+
+        List<ChatMessage> recent = history.subList(start, history.size());
+        if (start == 0 && cached == null) {
+            return new Selection(new ConversationContext(null, recent), null);
+        }
+
+        RollingSummary summary = cached;
+        if (folded + 1 < start) {
+            String base = cached == null ? "" : cached.text();
+            summary = new RollingSummary(history.get(start - 1).getId(),
+                    fold(base, history.subList(folded + 1, start)));
+        }
+        return new Selection(new ConversationContext(summary.text(), recent), summary);
+    }
+
+    /**
+     * Añade una línea breve por mensaje y recorta por el principio para respetar el
+     * presupuesto del resumen (se conservan los turnos más recientes).
+     */
+    private String fold(String base, List<ChatMessage> messages) {
+        StringBuilder sb = new StringBuilder(base);
+        for (ChatMessage m : messages) {
+            sb.append("- ").append(m.getSender()).append(": ").append(firstLine(m.getContent())).append('\n');
+        }
+        int maxChars = summaryTokenBudget * 4;
+        if (sb.length() > maxChars) {
+            int cut = sb.indexOf("\n", sb.length() - maxChars);
+            sb.delete(0, cut < 0 ? sb.length() - maxChars : cut + 1);
+        }
+        return sb.toString();
+    }
+
+    private static String firstLine(String content) {
+        if (content == null) {
+            return "";
+        }
+        String text = content.strip();
+        int end = text.indexOf('\n');
+        if (end < 0) {
+            end = text.length();
+        }
+        end = Math.min(end, SUMMARY_LINE_CHARS);
+        return end < text.length() ? text.substring(0, end).strip() + "…" : text;
+    }
+
+    private static int indexOf(List<ChatMessage> history, String id) {
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
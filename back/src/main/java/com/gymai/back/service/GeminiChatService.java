@@ -1,30 +1,52 @@
 package com.gymai.back.service;
 
-import java.util.HashMap;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.retry.Retry;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Servicio que encapsula la llamada HTTP a la API REST de Gemini.
- * Usa API key desde application.properties y envía un único bloque de contenido
- * con el texto recibido (prompt ya construido por el controlador).
+ * Usa API key desde application.properties (en la cabecera, no en la URL) y envía un
+ * único bloque de contenido con el texto recibido (prompt ya construido por el
+ * controlador), codificado con {@link GeminiRequestEncoder}.
+ * Las respuestas completas se guardan en {@link ResponseCache}, de modo que un prompt
+ * idéntico se responde sin volver a llamar a Gemini, y las peticiones idénticas
+ * simultáneas comparten una única llamada en curso mediante {@link SingleFlight}.
+ * Con {@link GeminiHedger} activo, una llamada lenta se cubre con una segunda petición
+ * (opcionalmente a {@code gemini.hedge.fallback-model}) y se queda la más rápida.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class GeminiChatService {
 
 	@Value("${gemini.api-key}")
@@ -33,144 +55,419 @@ public class GeminiChatService {
 	@Value("${gemini.model-name:gemini-2.0-flash}")
 	private String modelName;
 
-	private static final String BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/%s:generateContent?key=%s";
-	private static final String STREAM_URL_TEMPLATE = "https://generativelanguage.googleapis.com/v1beta/models/%s:streamGenerateContent?key=%s";
+	@Value("${gemini.base-url:https://generativelanguage.googleapis.com}")
+	private String baseUrl;
+
+	@Value("${gemini.http.warmup:true}")
+	private boolean warmupEnabled;
+
+	@Value("${gemini.http.warmup-connections:2}")
+	private int warmupConnections;
+
+	@Value("${gemini.hedge.fallback-model:}")
+	private String hedgeModelName;
+
+	@Value("${gemini.bulkhead.chat.max-concurrent:60}")
+	private int chatMaxConcurrent;
+
+	@Value("${gemini.bulkhead.stream.max-concurrent:60}")
+	private int streamMaxConcurrent;
+
+	private static final String BASE_URL = "%s/v1beta/models/%s:generateContent";
+	private static final String STREAM_URL_TEMPLATE = "%s/v1beta/models/%s:streamGenerateContent?alt=sse";
+	private static final String MODEL_URL_TEMPLATE = "%s/v1beta/models/%s";
+	private static final String API_KEY_HEADER = "x-goog-api-key";
+	private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_CHUNK = new ParameterizedTypeReference<>() {};
+	private static final String DEADLINE_MESSAGE = "⏱️ La IA ha tardado demasiado en responder. Por favor, inténtalo de nuevo.";
+	private static final String BUSY_MESSAGE = "⏳ El sistema está recibiendo muchas peticiones. Por favor, inténtalo de nuevo más tarde.";
 
-	private final WebClient webClient = WebClient.builder().build();
 	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final ResponseCache responseCache;
+	private final SingleFlight singleFlight;
+	private final GeminiRateLimiter rateLimiter;
+	private final GeminiCircuitBreaker circuitBreaker;
+	private final ExecutorService geminiExecutor;
+	private final WebClient geminiWebClient;
+	private final HttpClient geminiHttpClient;
+	private final GeminiHedger hedger;
+	private final GeminiContextCache contextCache;
+	private final LatencyTracker firstTokenLatency = new LatencyTracker(512);
+	private final LatencyTracker replyLatency = new LatencyTracker(512);
+
+	/**
+	 * Texto devuelto por Gemini; {@code complete} indica si es una respuesta real
+	 * (cacheable) o un aviso por respuesta vacía o incompleta.
+	 */
+	private record Reply(String text, boolean complete) {}
+
+	/**
+	 * Modelo al que se llama y sus URIs precalculadas.
+	 */
+	private record Target(String model, URI generateUri, URI streamUri) {}
+
+	private Target primary;
+	private Target hedgeTarget;
+	private Bulkhead chatBulkhead;
+	private Bulkhead streamBulkhead;
 
 	@PostConstruct
 	public void init() {
 		log.info("🚀 Usando modelo GEMINI: {}", modelName);
+		primary = target(modelName);
+		String hedgeModel = hedgeModelName == null || hedgeModelName.isBlank() ? modelName : hedgeModelName;
+		hedgeTarget = target(hedgeModel);
+		if (hedger.isEnabled()) {
+			log.info("Peticiones cubiertas activas con el modelo {}", hedgeModel);
+		}
+		chatBulkhead = new Bulkhead("chat", chatMaxConcurrent);
+		streamBulkhead = new Bulkhead("stream", streamMaxConcurrent);
+	}
+
+	private Target target(String model) {
+		return new Target(model,
+				URI.create(String.format(BASE_URL, baseUrl, model)),
+				URI.create(String.format(STREAM_URL_TEMPLATE, baseUrl, model)));
+	}
+
+	/**
+	 * Precalienta el cliente HTTP al arrancar: carga el event loop y el resolvedor DNS y
+	 * abre unas pocas conexiones con Gemini (una consulta barata de metadatos del modelo)
+	 * que quedan en el pool para el primer usuario. Los fallos sólo se registran.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		if (!warmupEnabled) {
+			return;
+		}
+		URI modelUri = URI.create(String.format(MODEL_URL_TEMPLATE, baseUrl, modelName));
+		geminiHttpClient.warmup()
+				.thenMany(Flux.range(0, warmupConnections)
+						.flatMap(i -> geminiWebClient.get()
+								.uri(modelUri)
+								.header(API_KEY_HEADER, apiKey)
+								.retrieve()
+								.toBodilessEntity()
+								.onErrorResume(WebClientResponseException.class, ex -> Mono.empty())))
+				.timeout(java.time.Duration.ofSeconds(10))
+				.subscribe(
+						entity -> {},
+						error -> log.warn("No se pudo precalentar la conexión con Gemini: {}", error.toString()),
+						() -> log.info("Conexiones con Gemini precalentadas"));
 	}
 
 	/**
 	 * Envía el prompt a Gemini y devuelve el primer texto de la primera candidata.
 	 */
 	public String getChatbotResponse(String userMessage) {
-		try {
-			String url = String.format(BASE_URL, modelName, apiKey);
-
-			Map<String, Object> part = new HashMap<>();
-			part.put("text", userMessage);
-
-			Map<String, Object> content = new HashMap<>();
-			content.put("parts", List.of(part));
+		return getChatbotResponse(PromptBuilder.Prompt.of(userMessage));
+	}
 
-			Map<String, Object> body = new HashMap<>();
-			body.put("contents", List.of(content));
+	/**
+	 * Igual que {@link #getChatbotResponse(String)} con el prompt separado en prefijo
+	 * estable y parte variable; el prefijo se envía como contenido cacheado cuando
+	 * {@link GeminiContextCache} lo permite.
+	 */
+	public String getChatbotResponse(PromptBuilder.Prompt prompt) {
+		return getChatbotResponse(prompt, null);
+	}
 
-			return webClient.post()
-					.uri(url)
-					.contentType(MediaType.APPLICATION_JSON)
-					.bodyValue(body)
-					.retrieve()
-					.bodyToMono(Map.class)
-					.map(response -> {
-						if (response == null)
-							return "Respuesta vacía de Gemini";
-						@SuppressWarnings("unchecked")
-						List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.get("candidates");
-						if (candidates == null || candidates.isEmpty())
-							return "Sin candidatos en la respuesta";
-						Map<String, Object> firstCandidate = candidates.get(0);
-						@SuppressWarnings("unchecked")
-						Map<String, Object> contentObj = (Map<String, Object>) firstCandidate.get("content");
-						if (contentObj == null)
-							return "Respuesta sin contenido";
-						@SuppressWarnings("unchecked")
-						List<Map<String, Object>> parts = (List<Map<String, Object>>) contentObj.get("parts");
-						if (parts == null || parts.isEmpty())
-							return "Respuesta sin partes";
-						Object text = parts.get(0).get("text");
-						return text != null ? text.toString() : "Respuesta sin texto";
-					})
-					.retryWhen(reactor.util.retry.Retry.backoff(3, java.time.Duration.ofSeconds(2))
-							.filter(throwable -> {
-								if (throwable instanceof WebClientResponseException wcre) {
-									return wcre.getStatusCode().value() == 429
-											|| wcre.getStatusCode().is5xxServerError();
-								}
-								return false;
-							}))
+	/**
+	 * Igual que {@link #getChatbotResponse(PromptBuilder.Prompt)} dentro de un presupuesto de
+	 * generación: se envía su {@code generationConfig} y, si no hay respuesta en su plazo,
+	 * se abandona la llamada. Sin presupuesto, Gemini aplica sus propios límites.
+	 */
+	public String getChatbotResponse(PromptBuilder.Prompt prompt, GenerationBudgets.Budget budget) {
+		String cacheKey = cacheKey(prompt, budget);
+		String cached = responseCache.get(cacheKey);
+		if (cached != null) {
+			return cached;
+		}
+		try {
+			Reply reply = singleFlight.mono(cacheKey, () -> withDeadline(hedger.hedge(
+							upstreamReply(primary, prompt, budget),
+							() -> upstreamReply(hedgeTarget, prompt, budget),
+							replyLatency), budget)
+					.doOnNext(r -> {
+						if (r.complete()) {
+							responseCache.put(cacheKey, r.text());
+						}
+					}))
 					.block();
+			return reply.text();
+		} catch (GeminiCircuitBreaker.CircuitOpenException e) {
+			return circuitOpenMessage(e);
 		} catch (Exception e) {
 			// Si fallan los reintentos (o error 4xx no reintentable), llegamos aquí.
 			// Podemos inspeccionar la causa para dar el mensaje amigable.
 			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof TimeoutException) {
+				log.warn("Gemini no respondió dentro del plazo de {}", budget.deadline());
+				return DEADLINE_MESSAGE;
+			}
 			if (cause instanceof WebClientResponseException wcre && wcre.getStatusCode().value() == 429) {
 				return "⏳ Se ha superado la cuota gratuita de uso. Por favor, inténtalo más tarde.";
 			}
 			// Mensaje genérico amigable para otros errores graves
-			return "⏳ El sistema está recibiendo muchas peticiones. Por favor, inténtalo de nuevo más tarde.";
+			return BUSY_MESSAGE;
 		}
 	}
 
+	/**
+	 * Igual que {@link #getChatbotResponse(String)} pero ejecutado en el executor acotado de
+	 * Gemini, para no retener el hilo de la petición durante la llamada y sus reintentos.
+	 * Si el executor está saturado se responde al momento con el aviso de sobrecarga.
+	 */
+	public CompletableFuture<String> getChatbotResponseAsync(String userMessage) {
+		return getChatbotResponseAsync(PromptBuilder.Prompt.of(userMessage));
+	}
+
+	public CompletableFuture<String> getChatbotResponseAsync(PromptBuilder.Prompt prompt) {
+		return getChatbotResponseAsync(prompt, null);
+	}
+
+	public CompletableFuture<String> getChatbotResponseAsync(PromptBuilder.Prompt prompt, GenerationBudgets.Budget budget) {
+		try {
+			return CompletableFuture.supplyAsync(() -> getChatbotResponse(prompt, budget), geminiExecutor);
+		} catch (RejectedExecutionException e) {
+			log.warn("Executor de Gemini saturado, se rechaza la petición");
+			return CompletableFuture.completedFuture(BUSY_MESSAGE);
+		}
+	}
+
+	/**
+	 * Llamada real a Gemini (sin caché ni agrupación), con reintentos ante 429 y 5xx.
+	 * Cada intento pasa por {@link GeminiCircuitBreaker} y {@link GeminiRateLimiter}, que
+	 * respeta las pausas pedidas por Gemini y falla al momento si la espera se alarga; el
+	 * conjunto ocupa un hueco del compartimento de {@code /chat}.
+	 */
+	private Mono<Reply> upstreamReply(Target target, PromptBuilder.Prompt prompt, GenerationBudgets.Budget budget) {
+		Mono<Reply> attempt = contextCache.handleFor(target.model(), prompt.prefix())
+				.map(Optional::of)
+				.defaultIfEmpty(Optional.empty())
+				.flatMap(handle -> handle
+						.map(name -> replyCall(target, name, prompt.suffix(), budget)
+								.onErrorResume(GeminiChatService::isStaleCachedContent, ex -> {
+									contextCache.invalidate(target.model(), prompt.prefix());
+									return replyCall(target, null, prompt.full(), budget);
+								}))
+						.orElseGet(() -> replyCall(target, null, prompt.full(), budget)));
+		return chatBulkhead.run(circuitBreaker.protect(rateLimiter.limit(attempt)).retryWhen(retryOnOverload()));
+	}
+
+	private Mono<Reply> replyCall(Target target, String cachedContent, String text, GenerationBudgets.Budget budget) {
+		return Mono.defer(() -> {
+			long started = System.nanoTime();
+			return geminiWebClient.post()
+					.uri(target.generateUri())
+					.header(API_KEY_HEADER, apiKey)
+					.contentType(MediaType.APPLICATION_JSON)
+					.body(GeminiRequestEncoder.body(cachedContent, text, budget))
+					.retrieve()
+					.bodyToMono(Map.class)
+					.map(GeminiChatService::toReply)
+					.doOnNext(reply -> replyLatency.record(System.nanoTime() - started));
+		});
+	}
+
+	private static Reply toReply(Map<?, ?> response) {
+		if (response == null)
+			return new Reply("Respuesta vacía de Gemini", false);
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.get("candidates");
+		if (candidates == null || candidates.isEmpty())
+			return new Reply("Sin candidatos en la respuesta", false);
+		Map<String, Object> firstCandidate = candidates.get(0);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> contentObj = (Map<String, Object>) firstCandidate.get("content");
+		if (contentObj == null)
+			return new Reply("Respuesta sin contenido", false);
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> parts = (List<Map<String, Object>>) contentObj.get("parts");
+		if (parts == null || parts.isEmpty())
+			return new Reply("Respuesta sin partes", false);
+		Object text = parts.get(0).get("text");
+		return text != null ? new Reply(text.toString(), true) : new Reply("Respuesta sin texto", false);
+	}
+
 	/**
 	 * Streaming de respuesta desde Gemini: va emitiendo trozos de texto segan
-	 * llegan.
+	 * llegan. Si el prompt ya está en caché, se reproduce la respuesta troceada.
+	 * Gemini responde con {@code alt=sse} y cada evento se decodifica con
+	 * {@link GeminiResponseDecoder} y se reenvía en cuanto llega, sin construir mapas.
 	 */
 	public Flux<String> streamChatbotResponse(String prompt) {
-		String url = String.format(STREAM_URL_TEMPLATE, modelName, apiKey);
-
-		Map<String, Object> part = new HashMap<>();
-		part.put("text", prompt);
-
-		Map<String, Object> content = new HashMap<>();
-		content.put("parts", List.of(part));
-
-		Map<String, Object> body = new HashMap<>();
-		body.put("contents", List.of(content));
-
-		return webClient.post()
-				.uri(url)
-				.contentType(MediaType.APPLICATION_JSON)
-				.bodyValue(body)
-				.retrieve()
-				.bodyToFlux(Map.class)
-				.flatMap(chunk -> {
-					try {
-						@SuppressWarnings("unchecked")
-						List<Map<String, Object>> candidates = (List<Map<String, Object>>) chunk.get("candidates");
-						if (candidates == null || candidates.isEmpty()) {
-							return Flux.empty();
-						}
-						Map<String, Object> firstCandidate = candidates.get(0);
-						@SuppressWarnings("unchecked")
-						Map<String, Object> contentObj = (Map<String, Object>) firstCandidate.get("content");
-						if (contentObj == null) {
-							return Flux.empty();
-						}
-						@SuppressWarnings("unchecked")
-						List<Map<String, Object>> parts = (List<Map<String, Object>>) contentObj.get("parts");
-						if (parts == null || parts.isEmpty()) {
-							return Flux.empty();
-						}
+		return streamChatbotResponse(PromptBuilder.Prompt.of(prompt));
+	}
 
-						return Flux.fromIterable(parts)
-								.map(p -> {
-									Object text = p.get("text");
-									return text != null ? text.toString() : "";
-								})
-								.filter(t -> !t.isEmpty());
-					} catch (Exception e) {
-						return Flux.just("Error al procesar chunk de la IA: " + e.getMessage());
-					}
-				})
-				.retryWhen(reactor.util.retry.Retry.backoff(3, java.time.Duration.ofSeconds(2))
-						.filter(throwable -> {
-							if (throwable instanceof WebClientResponseException wcre) {
-								return wcre.getStatusCode().value() == 429
-										|| wcre.getStatusCode().is5xxServerError();
-							}
-							return false;
+	public Flux<String> streamChatbotResponse(PromptBuilder.Prompt prompt) {
+		return streamChatbotResponse(prompt, null);
+	}
+
+	/**
+	 * Streaming dentro de un presupuesto de generación. Al cumplirse su plazo se cancela la
+	 * llamada a Gemini y, tras los fragmentos ya emitidos, el flujo termina con
+	 * {@link GenerationBudgets.DeadlineExceededException} para que quien lo entrega marque
+	 * la respuesta como truncada; el aviso no forma parte del texto y la respuesta,
+	 * incompleta, no se cachea.
+	 */
+	public Flux<String> streamChatbotResponse(PromptBuilder.Prompt prompt, GenerationBudgets.Budget budget) {
+		String cacheKey = cacheKey(prompt, budget);
+		String cached = responseCache.get(cacheKey);
+		if (cached != null) {
+			return responseCache.replay(cached);
+		}
+		return singleFlight.flux(cacheKey, () -> {
+			StringBuilder fullReply = new StringBuilder();
+			AtomicBoolean chunkFailed = new AtomicBoolean();
+			AtomicBoolean deadlineReached = new AtomicBoolean();
+			Flux<String> reply = hedger.hedge(
+							upstreamStream(primary, prompt, budget, chunkFailed),
+							() -> upstreamStream(hedgeTarget, prompt, budget, chunkFailed),
+							firstTokenLatency);
+			if (budget != null) {
+				reply = reply
+						.takeUntilOther(Mono.delay(budget.deadline()).doOnNext(tick -> {
+							deadlineReached.set(true);
+							log.warn("Streaming de Gemini cortado al cumplirse el plazo de {}", budget.deadline());
 						}))
+						.concatWith(Flux.defer(() -> deadlineReached.get()
+								? Flux.error(new GenerationBudgets.DeadlineExceededException(budget.deadline()))
+								: Flux.empty()));
+			}
+			return reply
+					.doOnNext(fullReply::append)
+					.doOnComplete(() -> {
+						if (!chunkFailed.get()) {
+							responseCache.put(cacheKey, fullReply.toString());
+						}
+					});
+		})
 				.onErrorResume(WebClientResponseException.class, ex -> {
 					String friendlyMessage = mapErrorToUserMessage(ex);
 					return Flux.just(friendlyMessage);
 				})
-				.onErrorResume(Exception.class, ex -> Flux.just(
-						"⏳ El sistema está recibiendo muchas peticiones. Por favor, inténtalo de nuevo más tarde."));
+				.onErrorResume(GeminiCircuitBreaker.CircuitOpenException.class, ex -> Flux.just(circuitOpenMessage(ex)))
+				.onErrorResume(ex -> ex instanceof Exception && !(ex instanceof GenerationBudgets.DeadlineExceededException),
+						ex -> Flux.just(BUSY_MESSAGE));
+	}
+
+	private Flux<String> upstreamStream(Target target, PromptBuilder.Prompt prompt, GenerationBudgets.Budget budget,
+			AtomicBoolean chunkFailed) {
+		Flux<String> attempt = contextCache.handleFor(target.model(), prompt.prefix())
+				.map(Optional::of)
+				.defaultIfEmpty(Optional.empty())
+				.flatMapMany(handle -> handle
+						.map(name -> streamCall(target, name, prompt.suffix(), budget, chunkFailed)
+								.onErrorResume(GeminiChatService::isStaleCachedContent, ex -> {
+									contextCache.invalidate(target.model(), prompt.prefix());
+									return streamCall(target, null, prompt.full(), budget, chunkFailed);
+								}))
+						.orElseGet(() -> streamCall(target, null, prompt.full(), budget, chunkFailed)));
+		return streamBulkhead.run(circuitBreaker.protect(rateLimiter.limit(attempt)).retryWhen(retryOnOverload()));
+	}
+
+	private Flux<String> streamCall(Target target, String cachedContent, String text, GenerationBudgets.Budget budget,
+			AtomicBoolean chunkFailed) {
+		return Flux.defer(() -> {
+			long started = System.nanoTime();
+			AtomicBoolean firstFragment = new AtomicBoolean(true);
+			return geminiWebClient.post()
+					.uri(target.streamUri())
+					.header(API_KEY_HEADER, apiKey)
+					.contentType(MediaType.APPLICATION_JSON)
+					.accept(MediaType.TEXT_EVENT_STREAM)
+					.body(GeminiRequestEncoder.body(cachedContent, text, budget))
+					.retrieve()
+					.bodyToFlux(SSE_CHUNK)
+					.concatMapIterable(event -> decodeChunk(event.data(), chunkFailed))
+					.doOnNext(fragment -> {
+						if (firstFragment.compareAndSet(true, false)) {
+							firstTokenLatency.record(System.nanoTime() - started);
+						}
+					});
+		});
+	}
+
+	/**
+	 * Clave de caché y de agrupación: el mismo prompt con otro presupuesto es otra respuesta.
+	 */
+	private static String cacheKey(PromptBuilder.Prompt prompt, GenerationBudgets.Budget budget) {
+		String key = ResponseCache.keyFor(prompt.full());
+		return budget == null ? key : key + ":" + budget.cacheTag();
+	}
+
+	private static <T> Mono<T> withDeadline(Mono<T> call, GenerationBudgets.Budget budget) {
+		return budget == null ? call : call.timeout(budget.deadline());
+	}
+
+	/**
+	 * Gemini ya no reconoce el contenido cacheado (caducado o borrado): se olvida y se
+	 * repite la llamada con el prefijo en línea.
+	 */
+	private static boolean isStaleCachedContent(Throwable error) {
+		return error instanceof WebClientResponseException wcre
+				&& (wcre.getStatusCode().value() == 403 || wcre.getStatusCode().value() == 404);
+	}
+
+	/**
+	 * Reintentos con espera creciente sólo ante sobrecarga de Gemini (429 y 5xx).
+	 */
+	private static Retry retryOnOverload() {
+		return Retry.backoff(3, java.time.Duration.ofSeconds(2))
+				.filter(throwable -> {
+					if (throwable instanceof WebClientResponseException wcre) {
+						return wcre.getStatusCode().value() == 429
+								|| wcre.getStatusCode().is5xxServerError();
+					}
+					return false;
+				});
+	}
+
+	/**
+	 * Extrae los textos de un evento SSE de Gemini. Un evento que no se puede leer se
+	 * sustituye por un aviso y marca la respuesta como no cacheable.
+	 */
+	private static List<String> decodeChunk(String data, AtomicBoolean chunkFailed) {
+		if (data == null || data.isBlank()) {
+			return List.of();
+		}
+		List<String> texts = new ArrayList<>(2);
+		try {
+			GeminiResponseDecoder.readTexts(data, texts::add);
+			return texts;
+		} catch (Exception e) {
+			chunkFailed.set(true);
+			return List.of("Error al procesar chunk de la IA: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Con el circuito abierto se responde al momento con el mensaje del último error de
+	 * Gemini, el mismo que habría recibido el usuario tras agotar los reintentos.
+	 */
+	private String circuitOpenMessage(GeminiCircuitBreaker.CircuitOpenException ex) {
+		return ex.lastFailure() != null ? mapErrorToUserMessage(ex.lastFailure()) : BUSY_MESSAGE;
+	}
+
+	/**
+	 * Ocupación de los compartimentos de {@code /chat} y {@code /chat/stream}.
+	 */
+	public Map<String, Bulkhead.Stats> bulkheadStats() {
+		return Map.of("chat", chatBulkhead.stats(), "stream", streamBulkhead.stats());
+	}
+
+	/**
+	 * Tiempo hasta el primer fragmento (TTFT) de las llamadas de streaming a Gemini.
+	 */
+	public LatencyTracker.Stats firstTokenStats() {
+		return firstTokenLatency.stats();
+	}
+
+	/**
+	 * Tiempo hasta la respuesta completa de las llamadas no streaming a Gemini.
+	 */
+	public LatencyTracker.Stats replyStats() {
+		return replyLatency.stats();
 	}
 
 	private String mapErrorToUserMessage(WebClientResponseException ex) {
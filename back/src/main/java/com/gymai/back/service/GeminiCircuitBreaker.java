@@ -0,0 +1,208 @@
+package com.gymai.back.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cortocircuito para las llamadas a Gemini.
+ *
+ * Lleva la cuenta de los últimos resultados en una ventana fija. Si la proporción de
+ * fallos (5xx, 429 o errores de red) supera el umbral, se abre: durante un tiempo las
+ * llamadas fallan al momento con {@link CircuitOpenException}, que conserva el último
+ * error de Gemini para poder dar el mismo mensaje al usuario. Pasado ese tiempo se deja
+ * pasar un número limitado de llamadas de prueba (semiabierto): si todas salen bien se
+ * cierra, y al primer fallo se vuelve a abrir.
+ */
+@Component
+@Slf4j
+public class GeminiCircuitBreaker {
+
+	@Value("${gemini.breaker.window:20}")
+	private int window;
+
+	@Value("${gemini.breaker.min-calls:10}")
+	private int minCalls;
+
+	@Value("${gemini.breaker.failure-rate:0.5}")
+	private double failureRateThreshold;
+
+	@Value("${gemini.breaker.open-duration:PT30S}")
+	private Duration openDuration;
+
+	@Value("${gemini.breaker.half-open-probes:3}")
+	private int halfOpenProbes;
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	/**
+	 * Error devuelto mientras el circuito está abierto. {@code lastFailure} es el último
+	 * error recibido de Gemini, o null si no fue una respuesta HTTP.
+	 */
+	public static class CircuitOpenException extends RuntimeException {
+		private final transient WebClientResponseException lastFailure;
+
+		public CircuitOpenException(WebClientResponseException lastFailure) {
+			super("Circuito de Gemini abierto");
+			this.lastFailure = lastFailure;
+		}
+
+		public WebClientResponseException lastFailure() {
+			return lastFailure;
+		}
+	}
+
+	/**
+	 * Estado del circuito y contadores.
+	 */
+	public record Stats(State state, int calls, int failures, long opened, long rejected) {}
+
+	private boolean[] outcomes;
+	private int position;
+	private int calls;
+	private int failures;
+
+	private State state = State.CLOSED;
+	private long openUntil;
+	private int probesStarted;
+	private int probesSucceeded;
+	private WebClientResponseException lastFailure;
+
+	private final AtomicLong opened = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		outcomes = new boolean[window];
+	}
+
+	public <T> Mono<T> protect(Mono<T> call) {
+		return Mono.usingWhen(acquire(), permit -> call,
+				permit -> record(true, null),
+				(permit, error) -> record(false, error),
+				permit -> cancelled());
+	}
+
+	public <T> Flux<T> protect(Flux<T> call) {
+		return Flux.usingWhen(acquire(), permit -> call,
+				permit -> record(true, null),
+				(permit, error) -> record(false, error),
+				permit -> cancelled());
+	}
+
+	public synchronized State state() {
+		if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	public synchronized Stats stats() {
+		return new Stats(state(), calls, failures, opened.get(), rejected.get());
+	}
+
+	private Mono<Boolean> acquire() {
+		return Mono.defer(() -> {
+			synchronized (this) {
+				if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+					state = State.HALF_OPEN;
+					probesStarted = 0;
+					probesSucceeded = 0;
+					log.info("Circuito de Gemini semiabierto: se prueban {} llamadas", halfOpenProbes);
+				}
+				if (state == State.CLOSED || (state == State.HALF_OPEN && probesStarted < halfOpenProbes)) {
+					if (state == State.HALF_OPEN) {
+						probesStarted++;
+					}
+					return Mono.just(Boolean.TRUE);
+				}
+				rejected.incrementAndGet();
+				return Mono.error(new CircuitOpenException(lastFailure));
+			}
+		});
+	}
+
+	private Mono<Void> record(boolean success, Throwable error) {
+		return Mono.fromRunnable(() -> {
+			boolean failure = !success && isFailure(error);
+			if (!success && !failure) {
+				// Error ajeno a la salud de Gemini (400, límite local...): no cuenta.
+				cancelledNow();
+				return;
+			}
+			synchronized (this) {
+				if (error instanceof WebClientResponseException wcre) {
+					lastFailure = wcre;
+				}
+				if (state == State.HALF_OPEN) {
+					if (failure) {
+						open();
+					} else if (++probesSucceeded >= halfOpenProbes) {
+						close();
+					}
+					return;
+				}
+				if (state == State.OPEN) {
+					return;
+				}
+				if (calls == outcomes.length) {
+					failures -= outcomes[position] ? 1 : 0;
+				} else {
+					calls++;
+				}
+				outcomes[position] = failure;
+				failures += failure ? 1 : 0;
+				position = (position + 1) % outcomes.length;
+				if (calls >= minCalls && failures >= failureRateThreshold * calls) {
+					open();
+				}
+			}
+		});
+	}
+
+	private Mono<Void> cancelled() {
+		return Mono.fromRunnable(this::cancelledNow);
+	}
+
+	/**
+	 * Una llamada de prueba cancelada o sin resultado útil deja su hueco a otra.
+	 */
+	private synchronized void cancelledNow() {
+		if (state == State.HALF_OPEN && probesStarted > probesSucceeded) {
+			probesStarted--;
+		}
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openUntil = System.currentTimeMillis() + openDuration.toMillis();
+		opened.incrementAndGet();
+		log.warn("Circuito de Gemini abierto durante {} s ({} fallos de {} llamadas)",
+				openDuration.toSeconds(), failures, calls);
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		calls = 0;
+		failures = 0;
+		position = 0;
+		lastFailure = null;
+		log.info("Circuito de Gemini cerrado");
+	}
+
+	private static boolean isFailure(Throwable error) {
+		if (error instanceof WebClientResponseException wcre) {
+			return wcre.getStatusCode().value() == 429 || wcre.getStatusCode().is5xxServerError();
+		}
+		return !(error instanceof GeminiRateLimiter.RateLimitedException || error instanceof Bulkhead.BulkheadFullException);
+	}
+}
@@ -0,0 +1,224 @@
+package com.gymai.back.service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registro de contenidos cacheados en Gemini (API {@code cachedContents}).
+ *
+ * El prefijo estable del prompt (instrucciones del sistema y perfil) se registra una vez
+ * por modelo y se referencia por su nombre en cada llamada, de modo que Gemini no vuelve
+ * a procesar esos tokens en cada turno. La clave es el hash del prefijo, así que sesiones
+ * con el mismo perfil comparten registro. Un registro que se usa cuando le queda menos de
+ * {@code refresh-margin} de vida se renueva en segundo plano; los que dejan de usarse
+ * caducan solos en Gemini.
+ *
+ * Gemini exige un mínimo de tokens para cachear; los prefijos más cortos, y los que no se
+ * pudieron registrar (durante {@code failure-backoff}), se envían en línea como siempre.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class GeminiContextCache {
+
+	@Value("${gemini.api-key}")
+	private String apiKey;
+
+	@Value("${gemini.base-url:https://generativelanguage.googleapis.com}")
+	private String baseUrl;
+
+	@Value("${gemini.context-cache.enabled:true}")
+	private boolean enabled;
+
+	@Value("${gemini.context-cache.min-tokens:1024}")
+	private int minTokens;
+
+	@Value("${gemini.context-cache.ttl:PT1H}")
+	private Duration ttl;
+
+	@Value("${gemini.context-cache.refresh-margin:PT5M}")
+	private Duration refreshMargin;
+
+	@Value("${gemini.context-cache.failure-backoff:PT10M}")
+	private Duration failureBackoff;
+
+	@Value("${gemini.context-cache.max-entries:1000}")
+	private int maxEntries;
+
+	private static final String API_KEY_HEADER = "x-goog-api-key";
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final WebClient geminiWebClient;
+
+	/**
+	 * Registro de un prefijo: nombre en Gemini (null si falló) y caducidad. Mientras se
+	 * crea, {@code pending} es la llamada en curso que comparten los llamantes;
+	 * {@code refreshing} evita lanzar más de una renovación por registro.
+	 */
+	private record Handle(String name, long expiresAt, Mono<String> pending, boolean refreshing) {}
+
+	/**
+	 * Contadores del registro.
+	 */
+	public record Stats(int entries, long created, long refreshed, long reused, long failed, long skipped) {}
+
+	private final LinkedHashMap<String, Handle> handles = new LinkedHashMap<>(64, 0.75f, true);
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong refreshed = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * Nombre del contenido cacheado para el prefijo en el modelo dado, creándolo si hace
+	 * falta. Vacío si el prefijo no se cachea: el llamante debe enviarlo en línea.
+	 */
+	public Mono<String> handleFor(String model, String prefix) {
+		if (!enabled || prefix == null || prefix.isEmpty()) {
+			return Mono.empty();
+		}
+		if (estimateTokens(prefix) < minTokens) {
+			skipped.incrementAndGet();
+			return Mono.empty();
+		}
+		String key = model + ":" + ResponseCache.keyFor(prefix);
+		return Mono.defer(() -> {
+			long now = System.currentTimeMillis();
+			synchronized (handles) {
+				Handle handle = handles.get(key);
+				if (handle != null && handle.pending() != null) {
+					return handle.pending();
+				}
+				if (handle != null && handle.expiresAt() > now) {
+					if (handle.name() == null) {
+						return Mono.empty();
+					}
+					reused.incrementAndGet();
+					if (!handle.refreshing() && handle.expiresAt() - now < refreshMargin.toMillis()) {
+						refresh(key, handle);
+					}
+					return Mono.just(handle.name());
+				}
+				Mono<String> creation = create(key, model, prefix).cache();
+				handles.put(key, new Handle(null, 0, creation, false));
+				evictOverflow();
+				return creation;
+			}
+		});
+	}
+
+	/**
+	 * Olvida el registro de un prefijo, p. ej. si Gemini ya no lo reconoce.
+	 */
+	public void invalidate(String model, String prefix) {
+		synchronized (handles) {
+			handles.remove(model + ":" + ResponseCache.keyFor(prefix));
+		}
+	}
+
+	public Stats stats() {
+		synchronized (handles) {
+			return new Stats(handles.size(), created.get(), refreshed.get(), reused.get(), failed.get(), skipped.get());
+		}
+	}
+
+	private Mono<String> create(String key, String model, String prefix) {
+		Map<String, Object> body = Map.of(
+				"model", "models/" + model,
+				"systemInstruction", Map.of("parts", List.of(Map.of("text", prefix))),
+				"ttl", ttl.toSeconds() + "s");
+		return geminiWebClient.post()
+				.uri(URI.create(baseUrl + "/v1beta/cachedContents"))
+				.header(API_KEY_HEADER, apiKey)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(body)
+				.retrieve()
+				.bodyToMono(String.class)
+				.map(GeminiContextCache::readName)
+				.doOnNext(name -> {
+					created.incrementAndGet();
+					store(key, new Handle(name, System.currentTimeMillis() + ttl.toMillis(), null, false));
+					log.info("Contexto cacheado en Gemini: {}", name);
+				})
+				.onErrorResume(e -> {
+					failed.incrementAndGet();
+					store(key, new Handle(null, System.currentTimeMillis() + failureBackoff.toMillis(), null, false));
+					log.warn("No se pudo cachear el contexto en Gemini, se envía en línea: {}", e.toString());
+					return Mono.empty();
+				});
+	}
+
+	/**
+	 * Amplía la vida del registro en Gemini. Mientras tanto se sigue usando el nombre
+	 * actual, que aún es válido; si la renovación falla, caducará y se creará otro.
+	 * Se llama con el bloqueo tomado.
+	 */
+	private void refresh(String key, Handle handle) {
+		handles.put(key, new Handle(handle.name(), handle.expiresAt(), null, true));
+		geminiWebClient.patch()
+				.uri(URI.create(baseUrl + "/v1beta/" + handle.name() + "?updateMask=ttl"))
+				.header(API_KEY_HEADER, apiKey)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(Map.of("ttl", ttl.toSeconds() + "s"))
+				.retrieve()
+				.toBodilessEntity()
+				.map(response -> handle.name())
+				.subscribe(
+						name -> {
+							refreshed.incrementAndGet();
+							store(key, new Handle(name, System.currentTimeMillis() + ttl.toMillis(), null, false));
+						},
+						e -> log.warn("No se pudo renovar el contexto cacheado {}: {}", handle.name(), e.toString()));
+	}
+
+	private void store(String key, Handle handle) {
+		synchronized (handles) {
+			handles.put(key, handle);
+			evictOverflow();
+		}
+	}
+
+	private void evictOverflow() {
+		Iterator<Map.Entry<String, Handle>> it = handles.entrySet().iterator();
+		while (handles.size() > maxEntries && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	private static String readName(String response) {
+		try {
+			JsonNode name = JSON.readTree(response).get("name");
+			if (name == null || name.asText().isEmpty()) {
+				throw new IllegalStateException("Respuesta de cachedContents sin nombre");
+			}
+			return name.asText();
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Respuesta de cachedContents no válida", e);
+		}
+	}
+
+	private static int estimateTokens(String text) {
+		return text.length() / 4 + 1;
+	}
+}
@@ -0,0 +1,148 @@
+package com.gymai.back.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Peticiones cubiertas ("hedged") para recortar la latencia de cola de Gemini.
+ *
+ * Si la llamada principal no ha producido nada tras un retardo igual al percentil
+ * configurado de las latencias recientes, se lanza una segunda llamada (posiblemente a
+ * otro modelo). Gana la primera que emita un valor y la otra se cancela. Mientras no hay
+ * suficientes muestras se usa el retardo mínimo.
+ *
+ * Sólo se compiten valores: si la principal falla (o termina vacía) antes de lanzar la
+ * segunda, se cancela el retardo y su error llega al momento, sin esperar ni duplicar una
+ * llamada condenada (400, circuito abierto, compartimento lleno, límite de llamadas). Si
+ * la segunda ya está en curso, se espera a ella.
+ */
+@Component
+public class GeminiHedger {
+
+	@Value("${gemini.hedge.enabled:false}")
+	private boolean enabled;
+
+	@Value("${gemini.hedge.percentile:0.95}")
+	private double percentile;
+
+	@Value("${gemini.hedge.min-delay:PT1S}")
+	private Duration minDelay;
+
+	@Value("${gemini.hedge.min-samples:20}")
+	private int minSamples;
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong won = new AtomicLong();
+
+	/**
+	 * Contadores: llamadas cubiertas lanzadas y cuántas respondieron antes que la principal.
+	 */
+	public record Stats(boolean enabled, long sent, long won) {}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public <T> Mono<T> hedge(Mono<T> primary, Supplier<Mono<T>> backup, LatencyTracker latency) {
+		if (!enabled) {
+			return primary;
+		}
+		return Mono.defer(() -> {
+			AtomicBoolean decided = new AtomicBoolean();
+			Sinks.Empty<Void> primaryEnded = Sinks.empty();
+			Mono<T> second = hedgeTimer(latency, primaryEnded)
+					.flatMap(tick -> {
+						sent.incrementAndGet();
+						return backup.get();
+					})
+					.doOnNext(value -> decide(decided, true));
+			return Mono.firstWithValue(primary
+							.doOnNext(value -> decide(decided, false))
+							.doOnTerminate(primaryEnded::tryEmitEmpty), second)
+					.onErrorMap(GeminiHedger::primaryError);
+		});
+	}
+
+	/**
+	 * Igual que {@link #hedge(Mono, Supplier, LatencyTracker)} para un flujo: cuenta el
+	 * primer fragmento, y a partir de ahí sólo sigue el flujo ganador.
+	 */
+	public <T> Flux<T> hedge(Flux<T> primary, Supplier<Flux<T>> backup, LatencyTracker latency) {
+		if (!enabled) {
+			return primary;
+		}
+		return Flux.defer(() -> {
+			AtomicBoolean decided = new AtomicBoolean();
+			Sinks.Empty<Void> primaryEnded = Sinks.empty();
+			Flux<T> second = hedgeTimer(latency, primaryEnded)
+					.flatMapMany(tick -> {
+						sent.incrementAndGet();
+						return backup.get();
+					})
+					.doOnNext(value -> decide(decided, true));
+			return Flux.firstWithValue(primary
+							.doOnNext(value -> decide(decided, false))
+							.doOnTerminate(primaryEnded::tryEmitEmpty), second)
+					.onErrorResume(GeminiHedger::noValues, ex -> Flux.empty())
+					.onErrorMap(GeminiHedger::primaryError);
+		});
+	}
+
+	public Stats stats() {
+		return new Stats(enabled, sent.get(), won.get());
+	}
+
+	/**
+	 * Emite cuando toca lanzar la segunda llamada, o termina vacío si antes acaba la
+	 * principal; entonces la segunda no llega a lanzarse.
+	 */
+	private Mono<Long> hedgeTimer(LatencyTracker latency, Sinks.Empty<Void> primaryEnded) {
+		return Mono.delay(delay(latency)).or(primaryEnded.asMono().then(Mono.empty()));
+	}
+
+	Duration delay(LatencyTracker latency) {
+		if (latency.count() < minSamples) {
+			return minDelay;
+		}
+		Duration observed = Duration.ofNanos(latency.percentile(percentile));
+		return observed.compareTo(minDelay) > 0 ? observed : minDelay;
+	}
+
+	private void decide(AtomicBoolean decided, boolean backupWon) {
+		if (decided.compareAndSet(false, true) && backupWon) {
+			won.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Ambas llamadas terminaron sin error y sin valores: el flujo queda vacío, como sin cubrir.
+	 */
+	private static boolean noValues(Throwable error) {
+		return error instanceof NoSuchElementException && (error.getCause() == null
+				|| Exceptions.unwrapMultiple(error.getCause()).stream().allMatch(NoSuchElementException.class::isInstance));
+	}
+
+	/**
+	 * Si fallan las dos, se propaga el error de la principal y no el agregado de Reactor, para que
+	 * el llamante pueda seguir traduciéndolo a un mensaje para el usuario.
+	 */
+	private static Throwable primaryError(Throwable error) {
+		if (error instanceof NoSuchElementException && error.getCause() != null) {
+			List<Throwable> errors = Exceptions.unwrapMultiple(error.getCause());
+			return errors.isEmpty() ? error : errors.get(0);
+		}
+		return error;
+	}
+}
@@ -0,0 +1,329 @@
+package com.gymai.back.service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limitador adaptativo compartido por todas las llamadas a Gemini.
+ *
+ * Controla cuántas llamadas pueden estar en curso a la vez con un esquema AIMD: cada
+ * respuesta correcta sube el límite poco a poco y cada 429 lo reduce a la mitad y
+ * pausa todas las llamadas el tiempo indicado por {@code Retry-After} o por el
+ * {@code RetryInfo} del cuerpo del error. Quien no obtiene permiso espera en una cola
+ * acotada durante un tiempo máximo; si la cola está llena o se agota la espera, falla
+ * al momento con {@link RateLimitedException}.
+ */
+@Component
+@Slf4j
+public class GeminiRateLimiter {
+
+	@Value("${gemini.limiter.initial-concurrency:20}")
+	private int initialConcurrency;
+
+	@Value("${gemini.limiter.min-concurrency:1}")
+	private int minConcurrency;
+
+	@Value("${gemini.limiter.max-concurrency:100}")
+	private int maxConcurrency;
+
+	@Value("${gemini.limiter.max-queue:200}")
+	private int maxQueue;
+
+	@Value("${gemini.limiter.max-wait:PT10S}")
+	private Duration maxWait;
+
+	@Value("${gemini.limiter.default-pause:PT2S}")
+	private Duration defaultPause;
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	/**
+	 * Error devuelto cuando una llamada no obtiene permiso a tiempo.
+	 */
+	public static class RateLimitedException extends RuntimeException {
+		public RateLimitedException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Estado del limitador: límite actual, llamadas en curso y en cola, y contadores.
+	 */
+	public record Stats(double limit, int inFlight, int queued, long rejected, long timedOut, long throttled,
+			long pausedMillis) {}
+
+	/**
+	 * Llamada esperando permiso. {@code state} pasa de {@link #WAITING} a {@link #GRANTED}
+	 * al reservarle un permiso y a {@link #DELIVERED} cuando el permiso le llega; si se
+	 * cancela o agota la espera antes, pasa a {@link #ABANDONED}.
+	 */
+	private record Waiter(MonoSink<Boolean> sink, AtomicInteger state) {}
+
+	private static final int WAITING = 0;
+	private static final int GRANTED = 1;
+	private static final int DELIVERED = 2;
+	private static final int ABANDONED = 3;
+
+	private final Object lock = new Object();
+	private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+	private double limit;
+	private int inFlight;
+	private long pausedUntil;
+	private boolean drainScheduled;
+
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		limit = initialConcurrency;
+	}
+
+	/**
+	 * Ejecuta {@code call} cuando haya permiso, ajustando el límite según su resultado.
+	 */
+	public <T> Mono<T> limit(Mono<T> call) {
+		return Mono.usingWhen(acquire(),
+				permit -> call,
+				permit -> release(true, null),
+				(permit, error) -> release(false, error),
+				permit -> release(false, null));
+	}
+
+	/**
+	 * Igual que {@link #limit(Mono)} para un flujo: el permiso se mantiene hasta que el
+	 * flujo termina o se cancela.
+	 */
+	public <T> Flux<T> limit(Flux<T> call) {
+		return Flux.usingWhen(acquire(),
+				permit -> call,
+				permit -> release(true, null),
+				(permit, error) -> release(false, error),
+				permit -> release(false, null));
+	}
+
+	public Stats stats() {
+		synchronized (lock) {
+			long paused = Math.max(0, pausedUntil - System.currentTimeMillis());
+			return new Stats(limit, inFlight, queue.size(), rejected.get(), timedOut.get(), throttled.get(), paused);
+		}
+	}
+
+	private Mono<Boolean> acquire() {
+		return Mono.create(sink -> {
+			Waiter waiter = new Waiter(sink, new AtomicInteger(WAITING));
+			// Antes de reservar nada: si ya se canceló, se ejecuta aquí mismo
+			sink.onCancel(() -> cancel(waiter));
+			boolean granted = false;
+			synchronized (lock) {
+				if (waiter.state().get() != WAITING) {
+					return;
+				}
+				if (queue.isEmpty() && canStart(System.currentTimeMillis())) {
+					if (!waiter.state().compareAndSet(WAITING, GRANTED)) {
+						return;
+					}
+					inFlight++;
+					granted = true;
+				} else if (queue.size() >= maxQueue) {
+					rejected.incrementAndGet();
+					sink.error(new RateLimitedException("Cola de Gemini llena"));
+					return;
+				} else {
+					queue.addLast(waiter);
+					scheduleDrainLocked();
+				}
+			}
+			if (granted) {
+				deliver(waiter);
+				return;
+			}
+			// La espera se controla aquí y no con timeout(): así un permiso concedido nunca
+			// se pierde por llegar a la vez que el fin de la espera.
+			var timer = Schedulers.parallel().schedule(() -> {
+				if (abandon(waiter)) {
+					timedOut.incrementAndGet();
+					sink.error(new RateLimitedException("Tiempo de espera agotado para llamar a Gemini"));
+				}
+			}, maxWait.toMillis(), TimeUnit.MILLISECONDS);
+			sink.onDispose(timer);
+		});
+	}
+
+	/**
+	 * Saca de la cola una llamada que aún no tiene permiso; false si ya lo tenía reservado.
+	 */
+	private boolean abandon(Waiter waiter) {
+		if (!waiter.state().compareAndSet(WAITING, ABANDONED)) {
+			return false;
+		}
+		synchronized (lock) {
+			queue.remove(waiter);
+		}
+		return true;
+	}
+
+	/**
+	 * Cancelación del suscriptor. Si el permiso estaba reservado pero aún no entregado,
+	 * Reactor descarta la entrega y {@code usingWhen} nunca lo liberaría: se devuelve aquí.
+	 */
+	private void cancel(Waiter waiter) {
+		if (!abandon(waiter) && waiter.state().compareAndSet(GRANTED, ABANDONED)) {
+			returnPermit(false, null);
+		}
+	}
+
+	private Mono<Void> release(boolean success, Throwable error) {
+		return Mono.fromRunnable(() -> returnPermit(success, error));
+	}
+
+	private void returnPermit(boolean success, Throwable error) {
+		List<Waiter> granted;
+		synchronized (lock) {
+			inFlight--;
+			long now = System.currentTimeMillis();
+			if (error instanceof WebClientResponseException wcre && wcre.getStatusCode().value() == 429) {
+				throttled.incrementAndGet();
+				// Varios 429 simultáneos cuentan como uno: sólo reduce el primero de la pausa.
+				if (now >= pausedUntil) {
+					limit = Math.max(minConcurrency, limit / 2);
+				}
+				long pause = retryDelay(wcre).toMillis();
+				pausedUntil = Math.max(pausedUntil, now + pause);
+				log.warn("Gemini devolvió 429: límite {} y pausa de {} ms", (int) limit, pause);
+			} else if (success) {
+				limit = Math.min(maxConcurrency, limit + 1.0 / Math.max(1, limit));
+			}
+			granted = drainLocked();
+		}
+		grant(granted);
+	}
+
+	private boolean canStart(long now) {
+		return now >= pausedUntil && inFlight < (int) limit;
+	}
+
+	/**
+	 * Reserva permisos para los primeros de la cola. Se avisa a los elegidos fuera del
+	 * bloqueo con {@link #grant(List)}, porque su llamada puede arrancar en el mismo hilo.
+	 */
+	private List<Waiter> drainLocked() {
+		long now = System.currentTimeMillis();
+		List<Waiter> granted = new ArrayList<>();
+		Iterator<Waiter> it = queue.iterator();
+		while (it.hasNext() && canStart(now)) {
+			Waiter waiter = it.next();
+			it.remove();
+			if (waiter.state().compareAndSet(WAITING, GRANTED)) {
+				inFlight++;
+				granted.add(waiter);
+			}
+		}
+		scheduleDrainLocked();
+		return granted;
+	}
+
+	private static void grant(List<Waiter> granted) {
+		granted.forEach(GeminiRateLimiter::deliver);
+	}
+
+	/**
+	 * Entrega un permiso reservado. Si el suscriptor canceló antes, Reactor descarta la
+	 * entrega y {@link #cancel(Waiter)} ya lo ha devuelto (o lo devolverá); si no, desde
+	 * ahora lo libera {@code usingWhen}.
+	 */
+	private static void deliver(Waiter waiter) {
+		waiter.sink().success(Boolean.TRUE);
+		waiter.state().compareAndSet(GRANTED, DELIVERED);
+	}
+
+	/**
+	 * Si hay llamadas en cola esperando a que termine una pausa, programa el reparto de
+	 * permisos para cuando acabe (nadie liberará un permiso si no hay llamadas en curso).
+	 */
+	private void scheduleDrainLocked() {
+		long delay = pausedUntil - System.currentTimeMillis();
+		if (queue.isEmpty() || drainScheduled || delay <= 0) {
+			return;
+		}
+		drainScheduled = true;
+		Schedulers.parallel().schedule(() -> {
+			List<Waiter> granted;
+			synchronized (lock) {
+				drainScheduled = false;
+				granted = drainLocked();
+			}
+			grant(granted);
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Tiempo de espera pedido por Gemini: cabecera {@code Retry-After} (segundos o fecha
+	 * HTTP) o {@code retryDelay} de un detalle {@code google.rpc.RetryInfo} del cuerpo.
+	 */
+	Duration retryDelay(WebClientResponseException ex) {
+		String header = ex.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+		if (header != null && !header.isBlank()) {
+			try {
+				return Duration.ofSeconds(Long.parseLong(header.trim()));
+			} catch (NumberFormatException e) {
+				try {
+					ZonedDateTime date = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+					return positive(Duration.between(ZonedDateTime.now(date.getZone()), date));
+				} catch (RuntimeException ignored) {
+					// Cabecera no reconocible: se prueba con el cuerpo.
+				}
+			}
+		}
+		try {
+			JsonNode root = JSON.readTree(ex.getResponseBodyAsString());
+			if (root != null && root.isArray() && root.size() > 0) {
+				root = root.get(0);
+			}
+			JsonNode details = root == null ? null : root.path("error").path("details");
+			if (details != null && details.isArray()) {
+				for (JsonNode detail : details) {
+					if (detail.path("@type").asText().endsWith("google.rpc.RetryInfo")) {
+						String delay = detail.path("retryDelay").asText();
+						if (delay.endsWith("s")) {
+							double seconds = Double.parseDouble(delay.substring(0, delay.length() - 1));
+							return positive(Duration.ofMillis((long) (seconds * 1000)));
+						}
+					}
+				}
+			}
+		} catch (Exception ignored) {
+			// Cuerpo no JSON o sin detalles: se usa la pausa por defecto.
+		}
+		return defaultPause;
+	}
+
+	private Duration positive(Duration delay) {
+		return delay.isNegative() || delay.isZero() ? defaultPause : delay;
+	}
+}
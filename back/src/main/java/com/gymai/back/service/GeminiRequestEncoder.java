@@ -0,0 +1,132 @@
+package com.gymai.back.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+
+import reactor.core.publisher.Mono;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Codifica el cuerpo de una petición a Gemini sin mapas intermedios.
+ *
+ * El envoltorio JSON es fijo y se guarda ya en bytes; sólo el prompt se escapa y se
+ * escribe entre el prefijo y el sufijo, directamente en un buffer de la fábrica de la
+ * petición (con Reactor Netty, un buffer del pool). Con presupuesto se añade además su
+ * {@code generationConfig}.
+ */
+final class GeminiRequestEncoder {
+
+	private static final JsonFactory JSON = new JsonFactory();
+	private static final byte[] PREFIX = "{\"contents\":[{\"parts\":[{\"text\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CACHED_PREFIX = "{\"cachedContent\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CACHED_CONTENTS = ",\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] SUFFIX = "}]}]".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] GENERATION_CONFIG = ",\"generationConfig\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] END = "}".getBytes(StandardCharsets.US_ASCII);
+
+	private GeminiRequestEncoder() {
+	}
+
+	/**
+	 * Cuerpo de la petición listo para {@code WebClient.RequestBodySpec.body(...)}.
+	 */
+	static BodyInserter<String, ClientHttpRequest> body(String prompt) {
+		return body(null, prompt);
+	}
+
+	/**
+	 * Cuerpo que referencia un contenido cacheado en Gemini ({@code cachedContents/...});
+	 * el prompt sólo lleva la parte que cambia. Con {@code cachedContent} nulo equivale a
+	 * {@link #body(String)}.
+	 */
+	static BodyInserter<String, ClientHttpRequest> body(String cachedContent, String prompt) {
+		return body(cachedContent, prompt, null);
+	}
+
+	/**
+	 * Igual que {@link #body(String, String)} limitando la generación con {@code budget}
+	 * (sin límites si es nulo).
+	 */
+	static BodyInserter<String, ClientHttpRequest> body(String cachedContent, String prompt,
+			GenerationBudgets.Budget budget) {
+		return (request, context) -> {
+			DataBuffer buffer = encode(request.bufferFactory(), cachedContent, prompt, budget);
+			request.getHeaders().setContentLength(buffer.readableByteCount());
+			return request.writeWith(Mono.just(buffer));
+		};
+	}
+
+	static DataBuffer encode(DataBufferFactory factory, String prompt) {
+		return encode(factory, null, prompt);
+	}
+
+	static DataBuffer encode(DataBufferFactory factory, String cachedContent, String prompt) {
+		return encode(factory, cachedContent, prompt, null);
+	}
+
+	static DataBuffer encode(DataBufferFactory factory, String cachedContent, String prompt,
+			GenerationBudgets.Budget budget) {
+		int fixed = cachedContent == null ? PREFIX.length
+				: CACHED_PREFIX.length + cachedContent.length() + 2 + CACHED_CONTENTS.length;
+		int config = budget == null ? 0 : GENERATION_CONFIG.length + 96;
+		DataBuffer buffer = factory.allocateBuffer(fixed + SUFFIX.length + config + END.length + prompt.length() + 16);
+		try {
+			if (cachedContent == null) {
+				buffer.write(PREFIX);
+				writeString(buffer, prompt);
+			} else {
+				buffer.write(CACHED_PREFIX);
+				writeString(buffer, cachedContent);
+				buffer.write(CACHED_CONTENTS);
+				writeString(buffer, prompt);
+			}
+			buffer.write(SUFFIX);
+			if (budget != null) {
+				buffer.write(GENERATION_CONFIG);
+				writeGenerationConfig(buffer, budget);
+			}
+			buffer.write(END);
+			return buffer;
+		} catch (IOException e) {
+			DataBufferUtils.release(buffer);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			DataBufferUtils.release(buffer);
+			throw e;
+		}
+	}
+
+	private static void writeString(DataBuffer buffer, String value) throws IOException {
+		try (OutputStream out = buffer.asOutputStream();
+				JsonGenerator generator = JSON.createGenerator(out)) {
+			generator.writeString(value);
+		}
+	}
+
+	private static void writeGenerationConfig(DataBuffer buffer, GenerationBudgets.Budget budget) throws IOException {
+		try (OutputStream out = buffer.asOutputStream();
+				JsonGenerator generator = JSON.createGenerator(out)) {
+			generator.writeStartObject();
+			generator.writeNumberField("maxOutputTokens", budget.maxOutputTokens());
+			generator.writeNumberField("temperature", budget.temperature());
+			if (!budget.stopSequences().isEmpty()) {
+				generator.writeArrayFieldStart("stopSequences");
+				for (String stop : budget.stopSequences()) {
+					generator.writeString(stop);
+				}
+				generator.writeEndArray();
+			}
+			generator.writeEndObject();
+		}
+	}
+}
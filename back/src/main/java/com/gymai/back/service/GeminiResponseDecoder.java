@@ -0,0 +1,99 @@
+package com.gymai.back.service;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodificador de respuestas de Gemini a nivel de tokens JSON.
+ *
+ * Recorre el documento con un {@link JsonParser} y sólo extrae
+ * {@code candidates[0].content.parts[*].text}; el resto se salta con
+ * {@code skipChildren()} sin construir mapas ni árboles intermedios.
+ */
+final class GeminiResponseDecoder {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private GeminiResponseDecoder() {
+	}
+
+	/**
+	 * Entrega al {@code sink} cada texto no vacío de las partes de la primera candidata,
+	 * en orden de aparición.
+	 */
+	static void readTexts(String json, Consumer<String> sink) throws IOException {
+		try (JsonParser parser = JSON.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("candidates".equals(field) && value == JsonToken.START_ARRAY) {
+					readFirstCandidate(parser, sink);
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+
+	private static void readFirstCandidate(JsonParser parser, Consumer<String> sink) throws IOException {
+		boolean first = true;
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+			if (first && token == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.currentName();
+					JsonToken value = parser.nextToken();
+					if ("content".equals(field) && value == JsonToken.START_OBJECT) {
+						readContent(parser, sink);
+					} else {
+						parser.skipChildren();
+					}
+				}
+			} else {
+				parser.skipChildren();
+			}
+			first = false;
+		}
+	}
+
+	private static void readContent(JsonParser parser, Consumer<String> sink) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.currentName();
+			JsonToken value = parser.nextToken();
+			if ("parts".equals(field) && value == JsonToken.START_ARRAY) {
+				readParts(parser, sink);
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	private static void readParts(JsonParser parser, Consumer<String> sink) throws IOException {
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+			if (token != JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				continue;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("text".equals(field) && value == JsonToken.VALUE_STRING) {
+					String text = parser.getText();
+					if (!text.isEmpty()) {
+						sink.accept(text);
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+}
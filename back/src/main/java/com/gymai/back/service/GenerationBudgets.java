@@ -0,0 +1,105 @@
+package com.gymai.back.service;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Presupuestos de generación para Gemini: límite de tokens de salida, temperatura,
+ * secuencias de parada (el {@code generationConfig} de la petición) y un plazo máximo
+ * por respuesta.
+ *
+ * Los valores de {@code gemini.generation.*} son la base; {@code chat} (respuestas
+ * cortas, por defecto en ambos endpoints) y {@code plan} (rutinas y dietas completas)
+ * pueden sobrescribir cada uno por separado.
+ */
+@Component
+@Slf4j
+public class GenerationBudgets {
+
+	public static final String CHAT = "chat";
+	public static final String PLAN = "plan";
+
+	/** Gemini no admite más secuencias de parada. */
+	private static final int MAX_STOP_SEQUENCES = 5;
+
+	@Value("${gemini.generation.chat.max-output-tokens:${gemini.generation.max-output-tokens:1024}}")
+	private int chatMaxOutputTokens;
+
+	@Value("${gemini.generation.chat.temperature:${gemini.generation.temperature:1.0}}")
+	private double chatTemperature;
+
+	@Value("${gemini.generation.chat.stop-sequences:${gemini.generation.stop-sequences:}}")
+	private List<String> chatStopSequences;
+
+	@Value("${gemini.generation.chat.deadline:${gemini.generation.deadline:PT60S}}")
+	private Duration chatDeadline;
+
+	@Value("${gemini.generation.plan.max-output-tokens:${gemini.generation.max-output-tokens:1024}}")
+	private int planMaxOutputTokens;
+
+	@Value("${gemini.generation.plan.temperature:${gemini.generation.temperature:1.0}}")
+	private double planTemperature;
+
+	@Value("${gemini.generation.plan.stop-sequences:${gemini.generation.stop-sequences:}}")
+	private List<String> planStopSequences;
+
+	@Value("${gemini.generation.plan.deadline:${gemini.generation.deadline:PT60S}}")
+	private Duration planDeadline;
+
+	/**
+	 * Presupuesto de una petición. {@link #cacheTag()} distingue en la caché de respuestas
+	 * las mismas preguntas con límites distintos; el plazo no cuenta porque una respuesta
+	 * cortada por tiempo no se cachea.
+	 */
+	public record Budget(String name, int maxOutputTokens, double temperature, List<String> stopSequences,
+			Duration deadline) {
+
+		public String cacheTag() {
+			return maxOutputTokens + "/" + temperature + "/" + String.join("\u0000", stopSequences);
+		}
+	}
+
+	/**
+	 * El streaming se cortó al cumplirse el plazo del presupuesto. No es un fallo de Gemini:
+	 * lo recibido hasta entonces vale, pero está incompleto y debe guardarse como truncado.
+	 */
+	public static class DeadlineExceededException extends RuntimeException {
+		public DeadlineExceededException(Duration deadline) {
+			super("Plazo de generación cumplido: " + deadline);
+		}
+	}
+
+	private Budget chat;
+	private Budget plan;
+
+	@PostConstruct
+	public void init() {
+		chat = budget(CHAT, chatMaxOutputTokens, chatTemperature, chatStopSequences, chatDeadline);
+		plan = budget(PLAN, planMaxOutputTokens, planTemperature, planStopSequences, planDeadline);
+	}
+
+	/**
+	 * Presupuesto por nombre; uno desconocido o vacío es el de {@code chat}.
+	 */
+	public Budget get(String name) {
+		return PLAN.equalsIgnoreCase(name) ? plan : chat;
+	}
+
+	private static Budget budget(String name, int maxOutputTokens, double temperature, List<String> stopSequences,
+			Duration deadline) {
+		List<String> stops = stopSequences == null ? List.of()
+				: stopSequences.stream().filter(s -> !s.isEmpty()).toList();
+		if (stops.size() > MAX_STOP_SEQUENCES) {
+			log.warn("Presupuesto {}: Gemini admite {} secuencias de parada, se ignoran el resto", name,
+					MAX_STOP_SEQUENCES);
+			stops = stops.subList(0, MAX_STOP_SEQUENCES);
+		}
+		return new Budget(name, maxOutputTokens, temperature, List.copyOf(stops), deadline);
+	}
+}
@@ -0,0 +1,58 @@
+package com.gymai.back.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registro de latencias recientes en una ventana circular de tamaño fijo.
+ * Registrar es O(1) y sin bloqueos; los percentiles se calculan sobre una copia.
+ */
+public class LatencyTracker {
+
+	private final AtomicLongArray samples;
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Resumen de la ventana actual, en milisegundos.
+	 */
+	public record Stats(long count, double p50Ms, double p95Ms, double p99Ms) {}
+
+	public LatencyTracker(int window) {
+		this.samples = new AtomicLongArray(window);
+	}
+
+	public void record(long nanos) {
+		long n = count.getAndIncrement();
+		samples.set((int) (n % samples.length()), nanos);
+	}
+
+	/**
+	 * Percentil {@code p} (0..1) de la ventana en nanosegundos, o -1 si no hay muestras.
+	 */
+	public long percentile(double p) {
+		int size = (int) Math.min(count.get(), samples.length());
+		if (size == 0) {
+			return -1;
+		}
+		long[] copy = new long[size];
+		for (int i = 0; i < size; i++) {
+			copy[i] = samples.get(i);
+		}
+		Arrays.sort(copy);
+		int index = (int) Math.ceil(p * size) - 1;
+		return copy[Math.max(0, Math.min(size - 1, index))];
+	}
+
+	public long count() {
+		return count.get();
+	}
+
+	public Stats stats() {
+		return new Stats(count.get(), toMillis(percentile(0.5)), toMillis(percentile(0.95)), toMillis(percentile(0.99)));
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos < 0 ? 0 : nanos / 1_000_000.0;
+	}
+}
@@ -0,0 +1,224 @@
+package com.gymai.back.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizador del Markdown que devuelve Gemini en los planes, en una sola pasada.
+ *
+ * Recorre el texto línea a línea sin expresiones regulares ni copias del documento
+ * completo y entrega cada bloque a un {@link Handler}: encabezados, viñetas, pares
+ * etiqueta/valor, elementos numerados, texto y filas de tabla. Reconoce exactamente lo
+ * mismo que el parser original del PDF: quita {@code ```markdown}, {@code ```} y
+ * {@code **}, convierte cada {@code •} en una viñeta nueva y se salta las líneas vacías
+ * y las filas separadoras de las tablas.
+ */
+final class MarkdownTokenizer {
+
+	/** Una viñeta es par etiqueta/valor si tiene ':' antes de esta posición. */
+	private static final int MAX_LABEL_LENGTH = 40;
+
+	private MarkdownTokenizer() {
+	}
+
+	/**
+	 * Receptor de los bloques en orden de aparición. Las filas de una tabla llegan entre
+	 * {@link #tableHeader} y {@link #tableEnd}; fuera de una tabla no llega ninguna.
+	 */
+	interface Handler {
+
+		/** {@code ## texto} (nivel 2) o {@code ### texto} (nivel 3). */
+		void heading(int level, String text);
+
+		void bullet(String text);
+
+		/** Viñeta {@code - Etiqueta: valor}. */
+		void keyValue(String label, String value);
+
+		/** {@code 1. texto}; {@code number} es lo que hay antes del punto. */
+		void numbered(String number, String text);
+
+		void text(String text);
+
+		/** Primera fila de una tabla, sin celdas vacías. */
+		void tableHeader(List<String> cells);
+
+		/**
+		 * Fila de datos. {@code index} es su posición en la tabla contando la cabecera y la
+		 * fila separadora; sirve para alternar colores.
+		 */
+		void tableRow(int index, List<String> cells);
+
+		void tableEnd();
+	}
+
+	static void tokenize(String content, Handler handler) {
+		int tableRows = 0;
+		int length = content.length();
+		int start = 0;
+		while (start <= length) {
+			int newline = content.indexOf('\n', start);
+			int end = newline < 0 ? length : newline;
+			// "\r\n" termina la línea igual que "\n"
+			int lineEnd = end > start && content.charAt(end - 1) == '\r' ? end - 1 : end;
+			String line = content.substring(start, lineEnd);
+			if (needsNormalizing(line)) {
+				line = normalize(line);
+				int bullet;
+				while ((bullet = line.indexOf('•')) >= 0) {
+					tableRows = line(line.substring(0, bullet), tableRows, handler);
+					line = "- " + line.substring(bullet + 1);
+				}
+			}
+			tableRows = line(line, tableRows, handler);
+			if (newline < 0) {
+				break;
+			}
+			start = newline + 1;
+		}
+		if (tableRows > 0) {
+			handler.tableEnd();
+		}
+	}
+
+	/**
+	 * Procesa una línea y devuelve cuántas filas lleva la tabla abierta (0 si no hay).
+	 */
+	private static int line(String rawLine, int tableRows, Handler handler) {
+		String line = rawLine.trim();
+		if (line.isEmpty()) {
+			return tableRows;
+		}
+		if (line.charAt(0) == '|') {
+			if (tableRows == 0) {
+				handler.tableHeader(headerCells(line));
+			} else if (!isSeparator(line)) {
+				handler.tableRow(tableRows, rowCells(line));
+			}
+			return tableRows + 1;
+		}
+		if (tableRows > 0) {
+			handler.tableEnd();
+		}
+
+		if (line.startsWith("## ")) {
+			handler.heading(2, line.substring(3).trim());
+		} else if (line.startsWith("### ")) {
+			handler.heading(3, line.substring(4).trim());
+		} else if (line.startsWith("- ") || line.startsWith("* ")) {
+			listItem(line.substring(2).trim(), handler);
+		} else if (isNumbered(line)) {
+			int dot = line.indexOf('.');
+			handler.numbered(line.substring(0, dot), line.substring(dot + 1).trim());
+		} else {
+			handler.text(line);
+		}
+		return 0;
+	}
+
+	private static void listItem(String item, Handler handler) {
+		int colon = item.indexOf(':');
+		if (colon > 0 && colon < MAX_LABEL_LENGTH) {
+			handler.keyValue(item.substring(0, colon).trim(), item.substring(colon + 1).trim());
+		} else {
+			handler.bullet(item);
+		}
+	}
+
+	private static boolean needsNormalizing(String line) {
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '`' || c == '*' || c == '•') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Mismas sustituciones y en el mismo orden que el parser original; ninguna cruza un
+	 * salto de línea, así que aplicarlas línea a línea da el mismo resultado.
+	 */
+	private static String normalize(String line) {
+		return line.replace("```markdown", "").replace("```", "").replace("**", "");
+	}
+
+	/** Equivale a {@code ^\d+\.\s.*}: dígitos, punto, espacio y el resto sin saltos de línea. */
+	private static boolean isNumbered(String line) {
+		int i = 0;
+		while (i < line.length() && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+			i++;
+		}
+		if (i == 0 || i + 1 >= line.length() || line.charAt(i) != '.' || !isRegexSpace(line.charAt(i + 1))) {
+			return false;
+		}
+		for (int j = i + 2; j < line.length(); j++) {
+			char c = line.charAt(j);
+			if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isRegexSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/** Fila formada sólo por {@code |}, {@code -}, {@code :} y espacios. */
+	private static boolean isSeparator(String line) {
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c != '|' && c != '-' && c != ':' && !isRegexSpace(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<String> headerCells(String line) {
+		List<String> cells = new ArrayList<>();
+		int from = 0;
+		while (from <= line.length()) {
+			int pipe = line.indexOf('|', from);
+			int to = pipe < 0 ? line.length() : pipe;
+			String cell = line.substring(from, to).trim();
+			if (!cell.isEmpty()) {
+				cells.add(cell);
+			}
+			if (pipe < 0) {
+				break;
+			}
+			from = pipe + 1;
+		}
+		return cells;
+	}
+
+	/**
+	 * Celdas entre los {@code |} de los extremos. Como {@code String.split}, descarta las
+	 * celdas vacías del final (pero no las que sólo tienen espacios).
+	 */
+	private static List<String> rowCells(String line) {
+		int from = 1;
+		int to = line.length() > 1 && line.charAt(line.length() - 1) == '|' ? line.length() - 1 : line.length();
+		List<String> cells = new ArrayList<>();
+		int lastNonEmpty = 0;
+		while (true) {
+			int pipe = line.indexOf('|', from);
+			int cellEnd = pipe < 0 || pipe > to ? to : pipe;
+			cells.add(line.substring(from, cellEnd).trim());
+			if (cellEnd > from) {
+				lastNonEmpty = cells.size();
+			}
+			if (cellEnd == to) {
+				break;
+			}
+			from = cellEnd + 1;
+		}
+		if (lastNonEmpty == 0) {
+			// "".split("\\|") devuelve [""]
+			return to == from && cells.size() == 1 ? cells : List.of();
+		}
+		return cells.subList(0, lastNonEmpty);
+	}
+}
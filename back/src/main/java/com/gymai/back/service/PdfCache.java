@@ -0,0 +1,508 @@
+package com.gymai.back.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caché de PDF ya generados, direccionada por contenido.
+ *
+ * La clave es un SHA-256 de la versión de maquetación ({@link PdfService#RENDER_VERSION}),
+ * el título, la fecha de la cabecera y el texto del plan: mientras no cambien, el PDF es el
+ * mismo y la clave sirve también de ETag. Los PDF viven en memoria en un LRU limitado en
+ * bytes; los que salen de él se guardan en {@code pdf.cache.dir} (otro LRU limitado en
+ * bytes) y vuelven a memoria si se piden de nuevo. Los ficheros de un arranque anterior
+ * se reaprovechan si son de la misma versión de maquetación; los de otra se borran.
+ */
+@Component
+@Slf4j
+public class PdfCache {
+
+	@Value("${pdf.cache.enabled:true}")
+	private boolean enabled;
+
+	@Value("${pdf.cache.max-bytes:16777216}")
+	private long maxBytes;
+
+	@Value("${pdf.cache.dir:}")
+	private String dir;
+
+	@Value("${pdf.cache.max-disk-bytes:268435456}")
+	private long maxDiskBytes;
+
+	private static final String SUFFIX = ".pdf";
+	private static final String VERSION_PREFIX = "v";
+
+	/**
+	 * Contadores de la caché; {@code diskHits} son aciertos leídos de disco.
+	 */
+	public record Stats(long hits, long diskHits, long misses, long spilled, long evictions, int entries, long bytes,
+			int diskEntries, long diskBytes) {}
+
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+	private long diskBytes;
+
+	/** Directorio de desbordamiento, o null si no hay. */
+	private Path directory;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong spilled = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		if (!enabled || dir == null || dir.isBlank()) {
+			return;
+		}
+		Path root = Path.of(dir);
+		// Un subdirectorio por versión de maquetación: los de otras versiones ya no se van a pedir
+		Path path = root.resolve(VERSION_PREFIX + PdfService.RENDER_VERSION);
+		try {
+			Files.createDirectories(path);
+			deleteStaleVersions(root, path);
+			List<Path> existing;
+			try (Stream<Path> files = Files.list(path)) {
+				existing = files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+						.sorted(Comparator.comparingLong(PdfCache::lastModified))
+						.toList();
+			}
+			synchronized (this) {
+				for (Path file : existing) {
+					String name = file.getFileName().toString();
+					long size = Files.size(file);
+					disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+					diskBytes += size;
+				}
+			}
+			directory = path;
+			List<Path> deleted = trimDisk();
+			deleteAll(deleted);
+			log.info("Caché de PDF en disco: {} ({} ficheros)", path, disk.size());
+		} catch (IOException e) {
+			log.warn("Caché de PDF sin disco: no se puede usar {}: {}", path, e.toString());
+		}
+	}
+
+	/**
+	 * Clave de un PDF: SHA-256 de la versión de maquetación, el título, la fecha de la
+	 * cabecera y el contenido tal cual (sin normalizar espacios, porque cambian el PDF).
+	 */
+	public static String keyFor(String title, String content, LocalDate renderDate) {
+		return keyFor(PdfService.RENDER_VERSION, title, content, renderDate);
+	}
+
+	static String keyFor(int renderVersion, String title, String content, LocalDate renderDate) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(Integer.toString(renderVersion).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(String.valueOf(title).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(renderDate.toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(String.valueOf(content).getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 no disponible", e);
+		}
+	}
+
+	/**
+	 * ETag fuerte (entre comillas) de una clave.
+	 */
+	public static String etag(String key) {
+		return "\"" + key + "\"";
+	}
+
+	/**
+	 * PDF cacheado para la clave, de memoria o de disco, o null si no está.
+	 */
+	public byte[] get(String key) {
+		if (!enabled) {
+			return null;
+		}
+		Path file;
+		synchronized (this) {
+			byte[] pdf = memory.get(key);
+			if (pdf != null) {
+				hits.incrementAndGet();
+				return pdf;
+			}
+			file = directory != null && disk.get(key) != null ? fileFor(key) : null;
+		}
+		if (file != null) {
+			try {
+				byte[] pdf = Files.readAllBytes(file);
+				diskHits.incrementAndGet();
+				put(key, pdf);
+				return pdf;
+			} catch (IOException e) {
+				// Borrado entre medias por el LRU de disco: cuenta como fallo
+				log.debug("PDF {} no legible en disco: {}", key, e.toString());
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Guarda un PDF completo. Los que ya no caben en memoria pasan a disco.
+	 */
+	public void put(String key, byte[] pdf) {
+		if (!enabled || pdf == null || pdf.length == 0) {
+			return;
+		}
+		Map<String, byte[]> overflow = new LinkedHashMap<>();
+		if (pdf.length > maxBytes) {
+			overflow.put(key, pdf);
+		} else {
+			synchronized (this) {
+				byte[] previous = memory.put(key, pdf);
+				memoryBytes += pdf.length - (previous == null ? 0 : previous.length);
+				Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+				while (memoryBytes > maxBytes && it.hasNext()) {
+					Map.Entry<String, byte[]> eldest = it.next();
+					memoryBytes -= eldest.getValue().length;
+					it.remove();
+					overflow.put(eldest.getKey(), eldest.getValue());
+				}
+			}
+		}
+		overflow.forEach(this::spill);
+	}
+
+	/**
+	 * Genera el PDF con {@code renderer} escribiéndolo en {@code out} a la vez que se guarda
+	 * una copia, que entra en la caché sólo si la generación termina bien.
+	 *
+	 * Con disco, la copia va directa a un fichero temporal de {@code pdf.cache.dir} que se
+	 * renombra al terminar; el PDF pasa a memoria la primera vez que se pide. Sin disco, la
+	 * copia se hace en memoria y se abandona en cuanto pasa de {@code max-bytes}, porque ya
+	 * no cabría. En ningún caso se tiene el PDF entero duplicado en memoria.
+	 */
+	public void render(String key, OutputStream out, Consumer<OutputStream> renderer) {
+		if (!enabled) {
+			renderer.accept(out);
+			return;
+		}
+		Path tmp = directory != null ? createTempFile(key) : null;
+		if (tmp != null) {
+			renderToDisk(key, tmp, out, renderer);
+			return;
+		}
+		BoundedCopy copy = new BoundedCopy(maxBytes);
+		renderer.accept(new TeeOutputStream(out, copy));
+		byte[] pdf = copy.bytes();
+		if (pdf != null) {
+			put(key, pdf);
+		} else {
+			evictions.incrementAndGet();
+		}
+	}
+
+	public synchronized Stats stats() {
+		return new Stats(hits.get(), diskHits.get(), misses.get(), spilled.get(), evictions.get(), memory.size(),
+				memoryBytes, disk.size(), diskBytes);
+	}
+
+	private void renderToDisk(String key, Path tmp, OutputStream out, Consumer<OutputStream> renderer) {
+		OutputStream file;
+		try {
+			file = new BufferedOutputStream(Files.newOutputStream(tmp));
+		} catch (IOException e) {
+			log.warn("No se pudo guardar el PDF {} en disco: {}", key, e.toString());
+			deleteAll(List.of(tmp));
+			evictions.incrementAndGet();
+			renderer.accept(out);
+			return;
+		}
+		TeeOutputStream tee = new TeeOutputStream(out, file);
+		try {
+			renderer.accept(tee);
+		} catch (RuntimeException e) {
+			closeQuietly(file);
+			deleteAll(List.of(tmp));
+			throw e;
+		}
+		boolean copied = !tee.copyFailed();
+		try {
+			file.close();
+		} catch (IOException e) {
+			copied = false;
+		}
+		if (!copied) {
+			log.warn("No se pudo guardar el PDF {} en disco", key);
+			deleteAll(List.of(tmp));
+			evictions.incrementAndGet();
+			return;
+		}
+		commit(key, tmp);
+	}
+
+	/**
+	 * Pasa a disco un PDF expulsado de memoria; si no hay disco, se pierde.
+	 */
+	private void spill(String key, byte[] pdf) {
+		synchronized (this) {
+			if (directory == null || pdf.length > maxDiskBytes) {
+				evictions.incrementAndGet();
+				return;
+			}
+			if (disk.get(key) != null) {
+				return;
+			}
+		}
+		Path tmp = createTempFile(key);
+		if (tmp == null) {
+			evictions.incrementAndGet();
+			return;
+		}
+		try {
+			Files.write(tmp, pdf);
+		} catch (IOException e) {
+			log.warn("No se pudo guardar el PDF {} en disco: {}", key, e.toString());
+			evictions.incrementAndGet();
+			deleteAll(List.of(tmp));
+			return;
+		}
+		if (commit(key, tmp)) {
+			spilled.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Fichero temporal en el directorio de la caché, o null si no se puede crear. Se escribe
+	 * aparte y se renombra para que nadie lea un fichero a medias.
+	 */
+	private Path createTempFile(String key) {
+		try {
+			return Files.createTempFile(directory, key, ".tmp");
+		} catch (IOException e) {
+			log.warn("No se pudo crear un temporal para el PDF {}: {}", key, e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Mueve a su sitio un PDF ya escrito en {@code tmp} y lo apunta en el LRU de disco.
+	 */
+	private boolean commit(String key, Path tmp) {
+		long size;
+		try {
+			size = Files.size(tmp);
+			if (size > maxDiskBytes) {
+				deleteAll(List.of(tmp));
+				evictions.incrementAndGet();
+				return false;
+			}
+			Files.move(tmp, fileFor(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("No se pudo guardar el PDF {} en disco: {}", key, e.toString());
+			evictions.incrementAndGet();
+			deleteAll(List.of(tmp));
+			return false;
+		}
+		synchronized (this) {
+			Long previous = disk.put(key, size);
+			diskBytes += size - (previous == null ? 0 : previous);
+		}
+		deleteAll(trimDisk());
+		return true;
+	}
+
+	/**
+	 * Borra los PDF de otras versiones de maquetación: los que quedaran en la raíz (de antes
+	 * de versionar) y los de otros subdirectorios {@code v<n>}.
+	 */
+	private void deleteStaleVersions(Path root, Path current) throws IOException {
+		List<Path> stale = new ArrayList<>();
+		try (Stream<Path> entries = Files.list(root)) {
+			for (Path entry : entries.toList()) {
+				String name = entry.getFileName().toString();
+				if (Files.isRegularFile(entry) && name.endsWith(SUFFIX)) {
+					stale.add(entry);
+				} else if (Files.isDirectory(entry) && name.startsWith(VERSION_PREFIX) && !entry.equals(current)) {
+					try (Stream<Path> files = Files.list(entry)) {
+						files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).forEach(stale::add);
+					}
+				}
+			}
+		}
+		if (!stale.isEmpty()) {
+			log.info("Caché de PDF: {} ficheros de otra versión de maquetación borrados", stale.size());
+			deleteAll(stale);
+		}
+	}
+
+	/**
+	 * Saca del LRU de disco lo que sobra y devuelve los ficheros a borrar.
+	 */
+	private synchronized List<Path> trimDisk() {
+		List<Path> deleted = new ArrayList<>();
+		Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+		while (diskBytes > maxDiskBytes && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			diskBytes -= eldest.getValue();
+			it.remove();
+			deleted.add(fileFor(eldest.getKey()));
+			evictions.incrementAndGet();
+		}
+		return deleted;
+	}
+
+	private void deleteAll(List<Path> files) {
+		for (Path file : files) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				log.warn("No se pudo borrar {}: {}", file, e.toString());
+			}
+		}
+	}
+
+	private static void closeQuietly(OutputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException ignored) {
+			// El fichero se borra a continuación
+		}
+	}
+
+	private Path fileFor(String key) {
+		return directory.resolve(key + SUFFIX);
+	}
+
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Escribe en la respuesta y en la copia a la vez. Cerrar o vaciar sólo afecta a la
+	 * respuesta, y un fallo de la copia no corta la respuesta: sólo deja de copiarse.
+	 */
+	private static final class TeeOutputStream extends OutputStream {
+
+		private final OutputStream out;
+		private final OutputStream copy;
+		private boolean copyFailed;
+
+		TeeOutputStream(OutputStream out, OutputStream copy) {
+			this.out = out;
+			this.copy = copy;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (!copyFailed) {
+				try {
+					copy.write(b);
+				} catch (IOException e) {
+					copyFailed = true;
+				}
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if (!copyFailed) {
+				try {
+					copy.write(b, off, len);
+				} catch (IOException e) {
+					copyFailed = true;
+				}
+			}
+		}
+
+		boolean copyFailed() {
+			return copyFailed;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Copia en memoria que se abandona en cuanto pasa de {@code limit} bytes: un PDF así ya
+	 * no entraría en la caché de memoria.
+	 */
+	private static final class BoundedCopy extends OutputStream {
+
+		private final long limit;
+		private byte[] buf = new byte[8192];
+		private int count;
+
+		BoundedCopy(long limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (buf == null) {
+				return;
+			}
+			if (count + (long) len > limit) {
+				buf = null;
+				return;
+			}
+			if (count + len > buf.length) {
+				buf = Arrays.copyOf(buf, (int) Math.min(limit, Math.max(buf.length * 2L, count + (long) len)));
+			}
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		/** Lo copiado, o null si se pasó del límite. */
+		byte[] bytes() {
+			if (buf == null || count == 0) {
+				return null;
+			}
+			return count == buf.length ? buf : Arrays.copyOf(buf, count);
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package com.gymai.back.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exportaciones a PDF en segundo plano ({@code /api/export/jobs}).
+ *
+ * Cada trabajo se genera en {@code pdfExecutor}, un pool pequeño de prioridad mínima con
+ * cola acotada, en vez de en el hilo de la petición. Si el PDF ya está en
+ * {@link PdfCache}, el trabajo nace terminado. Un trabajo terminado no guarda el PDF: sólo
+ * su clave, y los bytes se sirven de {@link PdfCache}. Los trabajos terminados (bien o con
+ * error) se olvidan pasado {@code pdf.jobs.ttl}, y como mucho se guardan
+ * {@code pdf.jobs.max-retained}: si hay más, se olvidan primero los que terminaron antes.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PdfJobService {
+
+	@Value("${pdf.jobs.ttl:PT10M}")
+	private Duration ttl;
+
+	@Value("${pdf.jobs.max-retained:1000}")
+	private int maxRetained;
+
+	@Value("${pdf.jobs.reservation-timeout:PT30S}")
+	private Duration reservationTimeout;
+
+	private final ExecutorService pdfExecutor;
+	private final PdfService pdfService;
+	private final PdfCache pdfCache;
+
+	public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+	/**
+	 * Se rechaza un trabajo porque la cola de generación está llena.
+	 */
+	public static class QueueFullException extends RuntimeException {
+		public QueueFullException() {
+			super("Cola de PDF llena");
+		}
+	}
+
+	/**
+	 * Generación reservada con {@link #reserve(Consumer)}.
+	 */
+	@FunctionalInterface
+	public interface Reservation {
+		/** Escribe el PDF en {@code out} desde el pool y espera a que termine. */
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Estado de un trabajo. {@code key} es la clave de {@link PdfCache}, que sirve de ETag;
+	 * el PDF de un trabajo {@code DONE} se escribe con {@link #writePdf(Job, OutputStream)}.
+	 * Lleva sus datos de origen para poder escribirlo aunque el trabajo se olvide entretanto.
+	 */
+	public record Job(String id, State state, String key, String error, Source source) {}
+
+	/** Lo necesario para volver a generar el PDF si sale de la caché antes de pedirlo. */
+	public record Source(String title, String content, LocalDate renderDate) {}
+
+	/**
+	 * Contadores de los trabajos; {@code evicted} son terminados olvidados antes de su TTL
+	 * por pasar de {@code max-retained} y {@code rerendered} PDF que ya no estaban en la
+	 * caché al pedirlos.
+	 */
+	public record Stats(long submitted, long cached, long rejected, long completed, long failed, long expired,
+			long evicted, long rerendered, int retained) {}
+
+	private record Entry(String sessionId, Job job, long expiresAt) {}
+
+	private final Map<String, Entry> jobs = new ConcurrentHashMap<>();
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong cached = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong rerendered = new AtomicLong();
+
+	/**
+	 * Encola la generación de un plan y devuelve el trabajo.
+	 *
+	 * @throws QueueFullException si la cola está llena
+	 */
+	public Job submit(String sessionId, String title, String content, LocalDate renderDate) {
+		purgeExpired();
+		String key = PdfCache.keyFor(title, content, renderDate);
+		String id = UUID.randomUUID().toString();
+		Source source = new Source(title, content, renderDate);
+		submitted.incrementAndGet();
+
+		if (pdfCache.get(key) != null) {
+			cached.incrementAndGet();
+			return finish(sessionId, new Job(id, State.DONE, key, null, source));
+		}
+
+		Job queued = new Job(id, State.QUEUED, key, null, source);
+		jobs.put(id, new Entry(sessionKey(sessionId), queued, Long.MAX_VALUE));
+		try {
+			pdfExecutor.execute(() -> run(sessionId, queued));
+		} catch (RejectedExecutionException e) {
+			jobs.remove(id);
+			rejected.incrementAndGet();
+			throw new QueueFullException();
+		}
+		return queued;
+	}
+
+	/**
+	 * Trabajo de la sesión con ese id, o null si no existe, es de otra sesión o ha caducado.
+	 */
+	public Job get(String sessionId, String id) {
+		Entry entry = jobs.get(id);
+		if (entry == null || !entry.sessionId().equals(sessionKey(sessionId))) {
+			return null;
+		}
+		if (entry.expiresAt() <= System.currentTimeMillis()) {
+			if (jobs.remove(id, entry)) {
+				expired.incrementAndGet();
+			}
+			return null;
+		}
+		return entry.job();
+	}
+
+	/**
+	 * Reserva en {@code pdfExecutor} la generación de un PDF que se envía en la propia
+	 * respuesta (la conversación entera): la tarea entra ya en el pool, con su prioridad
+	 * mínima y su límite de concurrencia, y espera a que {@link Reservation#writeTo} le dé
+	 * dónde escribir. Así, con la cola llena se falla antes de empezar a responder. Si nadie
+	 * la reclama en {@code pdf.jobs.reservation-timeout}, la reserva se suelta sin generar.
+	 *
+	 * @throws QueueFullException si la cola está llena
+	 */
+	public Reservation reserve(Consumer<OutputStream> renderer) {
+		CompletableFuture<OutputStream> target = new CompletableFuture<>();
+		Future<Void> render;
+		try {
+			render = pdfExecutor.submit(() -> {
+				OutputStream out;
+				try {
+					out = target.get(reservationTimeout.toMillis(), TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					if (target.cancel(false)) {
+						log.warn("Reserva de PDF sin reclamar en {}; se suelta", reservationTimeout);
+						return null;
+					}
+					out = target.join();
+				}
+				renderer.accept(out);
+				return null;
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new QueueFullException();
+		}
+		return out -> {
+			if (!target.complete(out)) {
+				throw new IOException("Reserva de PDF caducada");
+			}
+			awaitRender(render);
+		};
+	}
+
+	private static void awaitRender(Future<?> render) throws IOException {
+		try {
+			render.get();
+		} catch (InterruptedException e) {
+			render.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Exportación a PDF interrumpida");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Escribe el PDF de un trabajo {@code DONE}, leído de {@link PdfCache}. Si ya salió de
+	 * ella (de memoria y de disco) se vuelve a generar al vuelo con los datos del propio
+	 * trabajo, y da el mismo PDF porque la clave no cambia. No depende de que el trabajo siga
+	 * guardado: si caduca o se olvida después de consultarlo, se escribe igual.
+	 */
+	public void writePdf(Job job, OutputStream out) throws IOException {
+		byte[] pdf = pdfCache.get(job.key());
+		if (pdf != null) {
+			out.write(pdf);
+			return;
+		}
+		Source source = job.source();
+		rerendered.incrementAndGet();
+		pdfCache.render(job.key(), out,
+				sink -> pdfService.writePlanPdf(source.title(), source.content(), source.renderDate(), sink));
+	}
+
+	public Stats stats() {
+		purgeExpired();
+		return new Stats(submitted.get(), cached.get(), rejected.get(), completed.get(), failed.get(), expired.get(),
+				evicted.get(), rerendered.get(), jobs.size());
+	}
+
+	private void run(String sessionId, Job queued) {
+		Source source = queued.source();
+		jobs.put(queued.id(), new Entry(sessionKey(sessionId),
+				new Job(queued.id(), State.RUNNING, queued.key(), null, source), Long.MAX_VALUE));
+		try {
+			// Sólo se guarda en la caché; el trabajo se queda con la clave
+			pdfCache.render(queued.key(), OutputStream.nullOutputStream(),
+					sink -> pdfService.writePlanPdf(source.title(), source.content(), source.renderDate(), sink));
+			completed.incrementAndGet();
+			finish(sessionId, new Job(queued.id(), State.DONE, queued.key(), null, source));
+		} catch (RuntimeException e) {
+			log.warn("Fallo generando el PDF del trabajo {}", queued.id(), e);
+			failed.incrementAndGet();
+			finish(sessionId, new Job(queued.id(), State.FAILED, queued.key(), "No se pudo generar el PDF", source));
+		}
+	}
+
+	private Job finish(String sessionId, Job job) {
+		jobs.put(job.id(), new Entry(sessionKey(sessionId), job, System.currentTimeMillis() + ttl.toMillis()));
+		evictOldest();
+		return job;
+	}
+
+	/**
+	 * Si hay más trabajos guardados de la cuenta, olvida los terminados más antiguos. Los
+	 * pendientes no cuentan para elegir: ya los acota la cola de {@code pdfExecutor}.
+	 */
+	private void evictOldest() {
+		int excess = jobs.size() - maxRetained;
+		if (excess <= 0) {
+			return;
+		}
+		jobs.entrySet().stream()
+				.filter(e -> e.getValue().expiresAt() != Long.MAX_VALUE)
+				.sorted(Comparator.comparingLong(e -> e.getValue().expiresAt()))
+				.limit(excess)
+				.toList()
+				.forEach(e -> {
+					if (jobs.remove(e.getKey(), e.getValue())) {
+						evicted.incrementAndGet();
+					}
+				});
+	}
+
+	private void purgeExpired() {
+		long now = System.currentTimeMillis();
+		jobs.entrySet().removeIf(e -> {
+			boolean old = e.getValue().expiresAt() <= now;
+			if (old) {
+				expired.incrementAndGet();
+			}
+			return old;
+		});
+	}
+
+	private static String sessionKey(String sessionId) {
+		return sessionId == null ? "" : sessionId;
+	}
+}
@@ -1,24 +1,30 @@
 package com.gymai.back.service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.awt.Color;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import org.springframework.stereotype.Service;
 
+import com.gymai.back.model.ChatMessage;
+
+import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.Element;
-import com.lowagie.text.Font;
-import com.lowagie.text.FontFactory;
+import com.lowagie.text.ExceptionConverter;
 import com.lowagie.text.PageSize;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.Phrase;
 import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfAction;
+import com.lowagie.text.pdf.PdfOutline;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
@@ -26,57 +32,57 @@ import com.lowagie.text.pdf.PdfWriter;
 @Service
 public class PdfService {
 
-    // Colores del tema
-    private static final Color PRIMARY_COLOR = new Color(37, 99, 235);      // Azul
-    private static final Color SECONDARY_COLOR = new Color(59, 130, 246);   // Azul claro
-    private static final Color ACCENT_COLOR = new Color(16, 185, 129);      // Verde
-    private static final Color HEADER_BG = new Color(30, 41, 59);           // Slate oscuro
-    private static final Color SECTION_BG = new Color(241, 245, 249);       // Slate claro
-    private static final Color TEXT_DARK = new Color(30, 41, 59);
-    private static final Color TEXT_MUTED = new Color(100, 116, 139);
-
-    // Fuentes
-    private Font getTitleFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA_BOLD, 24, Font.BOLD, Color.WHITE);
-    }
-
-    private Font getSubtitleFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA, 12, Font.NORMAL, new Color(148, 163, 184));
-    }
+    /** Título de los planes exportados. */
+    public static final String PLAN_TITLE = "Plan GymAI";
 
-    private Font getSectionFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16, Font.BOLD, PRIMARY_COLOR);
-    }
+    /**
+     * Versión de la maquetación. Forma parte de la clave de {@link PdfCache}: hay que
+     * subirla con cualquier cambio que altere el PDF generado para un mismo plan, o se
+     * seguirían sirviendo los PDF cacheados con la maquetación anterior.
+     */
+    public static final int RENDER_VERSION = 1;
 
-    private Font getSubsectionFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA_BOLD, 13, Font.BOLD, TEXT_DARK);
-    }
+    private static final String CONVERSATION_SUBTITLE = "Conversación completa";
+    private static final int SNIPPET_LENGTH = 70;
+    private static final DateTimeFormatter MESSAGE_TIME = DateTimeFormatter.ofPattern("dd/MM HH:mm");
 
-    private Font getBodyFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA, 10, Font.NORMAL, TEXT_DARK);
-    }
+    /** Estilos y celdas prototipo, compartidos por todas las exportaciones. */
+    private final PdfStyles styles = new PdfStyles();
 
-    private Font getBoldBodyFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Font.BOLD, TEXT_DARK);
-    }
-    
-    private Font getTableHeaderFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Font.BOLD, Color.WHITE);
+    /**
+     * Genera el PDF completo en memoria. Para enviarlo en una respuesta HTTP es mejor
+     * {@link #writePlanPdf(String, String, OutputStream)}, que no guarda ninguna copia.
+     */
+    public byte[] generatePlanPdf(String title, String content) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writePlanPdf(title, content, baos);
+        return baos.toByteArray();
     }
 
-    private Font getSmallFont() {
-        return FontFactory.getFont(FontFactory.HELVETICA, 9, Font.NORMAL, TEXT_MUTED);
+    /**
+     * Escribe el PDF directamente en {@code out} a medida que se genera cada página, sin
+     * acumularlo en memoria. No cierra {@code out}: eso le corresponde a quien lo abrió.
+     *
+     * @throws RuntimeException si falla la generación; lo ya escrito queda incompleto
+     */
+    public void writePlanPdf(String title, String content, OutputStream out) {
+        writePlanPdf(title, content, LocalDate.now(), out);
     }
 
-    public byte[] generatePlanPdf(String title, String content) {
+    /**
+     * Igual que {@link #writePlanPdf(String, String, OutputStream)} con la fecha de la
+     * cabecera fijada: con el mismo título, contenido y fecha el PDF es el mismo, así que
+     * se puede cachear.
+     */
+    public void writePlanPdf(String title, String content, LocalDate renderDate, OutputStream out) {
         Document document = new Document(PageSize.A4, 40, 40, 40, 40);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         
         try {
-            PdfWriter.getInstance(document, baos);
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
             document.open();
 
-            addHeader(document, title);
+            addHeader(document, planSubtitle(title), renderDate);
 
             if (content != null) {
                 parseAndAddContent(document, content);
@@ -89,33 +95,163 @@ public class PdfService {
         } finally {
             document.close();
         }
-        return baos.toByteArray();
     }
 
-    private void addHeader(Document document, String title) throws DocumentException {
+    /**
+     * Fecha de cabecera para exportar un mensaje: el día en que se generó, en la zona del
+     * servidor, u hoy si no tiene fecha.
+     */
+    public LocalDate renderDateOf(ChatMessage message) {
+        Instant instant = instantOf(message);
+        return instant == null ? LocalDate.now() : LocalDate.ofInstant(instant, ZoneId.systemDefault());
+    }
+
+    /**
+     * Escribe toda la conversación en {@code out}, mensaje a mensaje, con un índice al final
+     * (y como marcadores del PDF) que enlaza a cada mensaje.
+     *
+     * Cada mensaje se renderiza y se vuelca a {@code out} antes de leer el siguiente, y del
+     * índice sólo se guarda una línea corta por mensaje: la memoria no crece con la longitud
+     * de las respuestas. No cierra {@code out}.
+     *
+     * @throws RuntimeException si falla la generación; lo ya escrito queda incompleto
+     */
+    public void writeConversationPdf(Iterable<ChatMessage> messages, LocalDate renderDate, OutputStream out) {
+        Document document = new Document(PageSize.A4, 40, 40, 40, 40);
+
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
+            document.open();
+
+            addHeader(document, CONVERSATION_SUBTITLE, renderDate);
+
+            List<TocEntry> toc = new ArrayList<>();
+            for (ChatMessage message : messages) {
+                String anchor = "mensaje-" + (toc.size() + 1);
+                String label = messageLabel(message);
+                addMessageHeader(document, label, anchor);
+                toc.add(new TocEntry(label, snippet(message.getContent()), anchor, writer.getPageNumber()));
+                new PdfOutline(writer.getRootOutline(), PdfAction.gotoLocalPage(anchor, false), label);
+
+                if (message.getContent() != null) {
+                    parseAndAddContent(document, message.getContent());
+                }
+                // Las páginas ya cerradas salen hacia el cliente sin esperar al final
+                writer.flush();
+            }
+
+            addTableOfContents(document, toc);
+            addFooter(document);
+
+        } catch (DocumentException e) {
+            throw new RuntimeException("Error generating PDF", e);
+        } finally {
+            document.close();
+        }
+    }
+
+    /** Línea del índice: quién y cuándo, comienzo del texto, ancla y página. */
+    private record TocEntry(String label, String snippet, String anchor, int page) {}
+
+    private static Instant instantOf(ChatMessage message) {
+        if (message.getTimestamp() != null) {
+            try {
+                return Instant.parse(message.getTimestamp());
+            } catch (DateTimeParseException e) {
+                // Mensajes antiguos del historial con otro formato
+            }
+        }
+        return null;
+    }
+
+    private static String messageLabel(ChatMessage message) {
+        String who = "bot".equals(message.getSender()) ? "GymAI" : "Tú";
+        Instant instant = instantOf(message);
+        return instant == null ? who : who + " · " + MESSAGE_TIME.format(instant.atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * Primera línea con texto del mensaje, sin marcas de Markdown y recortada.
+     */
+    private static String snippet(String content) {
+        if (content == null) return "";
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) end = content.length();
+            // Sólo hace falta el principio de la línea
+            String text = content.substring(start, Math.min(end, start + 4 * SNIPPET_LENGTH))
+                .replace("**", "").replace("`", "");
+            int from = 0;
+            while (from < text.length() && (text.charAt(from) <= ' ' || "#|*-•".indexOf(text.charAt(from)) >= 0)) {
+                from++;
+            }
+            text = text.substring(from).trim();
+            if (!text.isEmpty()) {
+                return text.length() <= SNIPPET_LENGTH ? text : text.substring(0, SNIPPET_LENGTH).trim() + "…";
+            }
+            start = end + 1;
+        }
+        return "";
+    }
+
+    private static String planSubtitle(String title) {
+        return title != null && title.toLowerCase().contains("dieta")
+            ? "Plan de Alimentación Personalizado"
+            : "Plan de Entrenamiento Personalizado";
+    }
+
+    private void addMessageHeader(Document document, String label, String anchor) throws DocumentException {
+        Paragraph header = new Paragraph();
+        header.add(new Chunk(label, styles.subsection).setLocalDestination(anchor));
+        header.setSpacingBefore(16f);
+        header.setSpacingAfter(6f);
+        document.add(header);
+    }
+
+    private void addTableOfContents(Document document, List<TocEntry> toc) throws DocumentException {
+        if (toc.isEmpty()) return;
+
+        document.newPage();
+        addSectionHeader(document, "Índice");
+
+        PdfPTable table = new PdfPTable(new float[]{88f, 12f});
+        table.setWidthPercentage(100);
+        for (TocEntry entry : toc) {
+            Paragraph text = new Paragraph();
+            text.add(new Chunk(entry.label(), styles.boldBody).setLocalGoto(entry.anchor()));
+            if (!entry.snippet().isEmpty()) {
+                text.add(new Chunk("  " + entry.snippet(), styles.small).setLocalGoto(entry.anchor()));
+            }
+            table.addCell(PdfStyles.cell(styles.tocCell, text));
+            table.addCell(PdfStyles.cell(styles.tocPageCell,
+                new Phrase(new Chunk(String.valueOf(entry.page()), styles.body).setLocalGoto(entry.anchor()))));
+        }
+        document.add(table);
+    }
+
+    private void addHeader(Document document, String subtitle, LocalDate renderDate) throws DocumentException {
         PdfPTable headerTable = new PdfPTable(1);
         headerTable.setWidthPercentage(100);
         
         PdfPCell headerCell = new PdfPCell();
-        headerCell.setBackgroundColor(HEADER_BG);
+        headerCell.setBackgroundColor(styles.headerBg);
         headerCell.setPadding(20f);
         headerCell.setBorder(Rectangle.NO_BORDER);
         
         Paragraph titleP = new Paragraph();
-        titleP.add(new Phrase("🏋️ GymAI", getTitleFont()));
+        titleP.add(new Phrase("🏋️ GymAI", styles.title));
         titleP.setAlignment(Element.ALIGN_CENTER);
         headerCell.addElement(titleP);
         
-        String subtitle = title != null && title.toLowerCase().contains("dieta") 
-            ? "Plan de Alimentación Personalizado" 
-            : "Plan de Entrenamiento Personalizado";
-        Paragraph subtitleP = new Paragraph(subtitle, getSubtitleFont());
+        Paragraph subtitleP = new Paragraph(subtitle, styles.subtitleFont);
         subtitleP.setAlignment(Element.ALIGN_CENTER);
         subtitleP.setSpacingBefore(8f);
         headerCell.addElement(subtitleP);
         
-        String fecha = LocalDate.now().format(DateTimeFormatter.ofPattern("dd 'de' MMMM 'de' yyyy"));
-        Paragraph fechaP = new Paragraph("Generado el " + fecha, getSmallFont());
+        String fecha = renderDate.format(DateTimeFormatter.ofPattern("dd 'de' MMMM 'de' yyyy"));
+        Paragraph fechaP = new Paragraph("Generado el " + fecha, styles.small);
         fechaP.setAlignment(Element.ALIGN_CENTER);
         fechaP.setSpacingBefore(10f);
         headerCell.addElement(fechaP);
@@ -126,144 +262,131 @@ public class PdfService {
     }
 
     private void parseAndAddContent(Document document, String content) throws DocumentException {
-        String normalized = normalizeContent(content);
-        String[] lines = normalized.split("\r?\n");
-        
-        List<String> tableBuffer = new ArrayList<>();
-        boolean inTable = false;
-        
-        for (String rawLine : lines) {
-            String line = rawLine.trim();
-            
-            if (line.isEmpty()) continue;
-            
-            // Manejo de tablas
-            if (line.startsWith("|")) {
-                inTable = true;
-                tableBuffer.add(line);
-                continue;
-            } else if (inTable) {
-                renderTable(document, tableBuffer);
-                tableBuffer.clear();
-                inTable = false;
+        PlanRenderer renderer = new PlanRenderer(document);
+        try {
+            MarkdownTokenizer.tokenize(content, renderer);
+        } catch (ExceptionConverter e) {
+            if (e.getException() instanceof DocumentException de) {
+                throw de;
             }
-            
-            // Procesar línea individual
-            processLine(document, line);
-        }
-        
-        // Tabla pendiente al final
-        if (inTable && !tableBuffer.isEmpty()) {
-            renderTable(document, tableBuffer);
+            throw e;
         }
     }
-    
-    private String normalizeContent(String content) {
-        return content
-            .replace("```markdown", "")
-            .replace("```", "")
-            .replace("**", "")
-            .replace("•", "\n- ");
-    }
-    
-    private void processLine(Document document, String line) throws DocumentException {
-        if (line.startsWith("## ")) {
-            String headingText = line.substring(3).trim();
-            addSectionHeader(document, headingText);
-        } else if (line.startsWith("### ")) {
-            String subheadingText = line.substring(4).trim();
-            addSubsectionHeader(document, subheadingText);
-        } else if (line.startsWith("- ") || line.startsWith("* ")) {
-            String itemText = line.substring(2).trim();
-            addListItem(document, itemText);
-        } else if (line.matches("^\\d+\\.\\s.*")) {
-            int dotIndex = line.indexOf(".");
-            String itemText = line.substring(dotIndex + 1).trim();
-            String number = line.substring(0, dotIndex);
-            addNumberedItem(document, number, itemText);
-        } else {
-            addNormalText(document, line);
+
+    /**
+     * Convierte los bloques del {@link MarkdownTokenizer} en elementos del documento. Es
+     * estado de una exportación, no del servicio. Cada viñeta o par etiqueta/valor va en
+     * su propia tabla, copiada de un prototipo, como siempre se han maquetado.
+     */
+    private final class PlanRenderer implements MarkdownTokenizer.Handler {
+
+        private final Document document;
+        private PdfPTable table;
+
+        PlanRenderer(Document document) {
+            this.document = document;
         }
-    }
-    
-    private void addSubsectionHeader(Document document, String text) throws DocumentException {
-        Paragraph subheading = new Paragraph(text, getSubsectionFont());
-        subheading.setSpacingBefore(12f);
-        subheading.setSpacingAfter(6f);
-        document.add(subheading);
-    }
-    
-    private void addNormalText(Document document, String text) throws DocumentException {
-        Paragraph p = new Paragraph(text, getBodyFont());
-        p.setSpacingAfter(6f);
-        document.add(p);
-    }
 
-    private void renderTable(Document document, List<String> markdownLines) throws DocumentException {
-        if (markdownLines.isEmpty()) return;
+        @Override
+        public void heading(int level, String text) {
+            try {
+                if (level == 2) {
+                    addSectionHeader(document, text);
+                } else {
+                    addSubsectionHeader(document, text);
+                }
+            } catch (DocumentException e) {
+                throw new ExceptionConverter(e);
+            }
+        }
 
-        // Analizar cabecera para saber número de columnas
-        String headerLine = markdownLines.get(0);
-        // | Col 1 | Col 2 | -> ["", " Col 1 ", " Col 2 ", ""]
-        String[] headers = Arrays.stream(headerLine.split("\\|"))
-                                 .map(String::trim)
-                                 .filter(s -> !s.isEmpty())
-                                 .toArray(String[]::new);
-        
-        int numCols = headers.length;
-        if (numCols == 0) return;
+        @Override
+        public void bullet(String text) {
+            PdfPTable bullet = new PdfPTable(styles.bulletTable);
+            bullet.addCell(styles.bulletCell);
+            bullet.addCell(PdfStyles.cell(styles.bulletTextCell, new Phrase(text, styles.body)));
+            add(bullet);
+        }
 
-        PdfPTable table = new PdfPTable(numCols);
-        table.setWidthPercentage(100);
-        table.setSpacingBefore(10f);
-        table.setSpacingAfter(10f);
-
-        // Renderizar Headers
-        for (String h : headers) {
-            PdfPCell cell = new PdfPCell(new Phrase(h, getTableHeaderFont()));
-            cell.setBackgroundColor(PRIMARY_COLOR);
-            cell.setPadding(8f);
-            cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            table.addCell(cell);
+        @Override
+        public void keyValue(String label, String value) {
+            PdfPTable row = new PdfPTable(styles.labelTable);
+            row.addCell(PdfStyles.cell(styles.labelCell, new Phrase(label, styles.boldBody)));
+            row.addCell(PdfStyles.cell(styles.valueCell, new Phrase(value, styles.body)));
+            add(row);
         }
 
-        // Procesar filas (saltando la segunda línea si es separador |---|)
-        for (int i = 1; i < markdownLines.size(); i++) {
-            String rowLine = markdownLines.get(i);
-            if (rowLine.replaceAll("[|\\-\\s:]", "").isEmpty()) {
-                continue; // Es la línea separadora
+        @Override
+        public void numbered(String number, String text) {
+            try {
+                addNumberedItem(document, number, text);
+            } catch (DocumentException e) {
+                throw new ExceptionConverter(e);
             }
+        }
 
-            String[] cells = Arrays.stream(rowLine.split("\\|"))
-                                   // Nota: split("|") deja un string vacío al inicio si la línea empieza por |
-                                   // así que filtramos con cuidado o usamos lógica manual si es complejo
-                                   .map(String::trim)
-                                   .toArray(String[]::new);
-            
-            // Reconstrucción manual simple para evitar líos con split
-            List<String> cellValues = new ArrayList<>();
-            String temp = rowLine;
-            if (temp.startsWith("|")) temp = temp.substring(1);
-            if (temp.endsWith("|")) temp = temp.substring(0, temp.length() - 1);
-            
-            String[] rawValues = temp.split("\\|");
-            for (String val : rawValues) {
-                cellValues.add(val.trim());
+        @Override
+        public void text(String text) {
+            try {
+                addNormalText(document, text);
+            } catch (DocumentException e) {
+                throw new ExceptionConverter(e);
             }
-            
-            // Rellenar celdas
-            for (int c = 0; c < numCols; c++) {
-                String text = (c < cellValues.size()) ? cellValues.get(c) : "";
-                PdfPCell cell = new PdfPCell(new Phrase(text, getBodyFont()));
-                cell.setPadding(6f);
-                if (i % 2 == 0) {
-                    cell.setBackgroundColor(new Color(248, 250, 252));
-                }
-                table.addCell(cell);
+        }
+
+        @Override
+        public void tableHeader(List<String> cells) {
+            // Sin cabecera no se sabe cuántas columnas hay: la tabla se descarta
+            if (cells.isEmpty()) return;
+
+            table = new PdfPTable(cells.size());
+            table.setWidthPercentage(100);
+            table.setSpacingBefore(10f);
+            table.setSpacingAfter(10f);
+            for (String h : cells) {
+                table.addCell(PdfStyles.cell(styles.tableHeaderCell, new Phrase(h, styles.tableHeader)));
             }
         }
 
-        document.add(table);
+        @Override
+        public void tableRow(int index, List<String> cells) {
+            if (table == null) return;
+
+            PdfPCell prototype = index % 2 == 0 ? styles.tableAltCell : styles.tableCell;
+            for (int c = 0; c < table.getNumberOfColumns(); c++) {
+                String text = (c < cells.size()) ? cells.get(c) : "";
+                table.addCell(PdfStyles.cell(prototype, new Phrase(text, styles.body)));
+            }
+        }
+
+        @Override
+        public void tableEnd() {
+            if (table == null) return;
+
+            add(table);
+            table = null;
+        }
+
+        private void add(Element element) {
+            try {
+                document.add(element);
+            } catch (DocumentException e) {
+                throw new ExceptionConverter(e);
+            }
+        }
+    }
+
+    private void addSubsectionHeader(Document document, String text) throws DocumentException {
+        Paragraph subheading = new Paragraph(text, styles.subsection);
+        subheading.setSpacingBefore(12f);
+        subheading.setSpacingAfter(6f);
+        document.add(subheading);
+    }
+    
+    private void addNormalText(Document document, String text) throws DocumentException {
+        Paragraph p = new Paragraph(text, styles.body);
+        p.setSpacingAfter(6f);
+        document.add(p);
     }
 
     private void addSectionHeader(Document document, String text) throws DocumentException {
@@ -273,86 +396,31 @@ public class PdfService {
         sectionTable.setSpacingAfter(10f);
         
         PdfPCell cell = new PdfPCell();
-        cell.setBackgroundColor(SECTION_BG);
+        cell.setBackgroundColor(styles.sectionBg);
         cell.setPadding(12f);
         cell.setBorderWidth(0);
         cell.setBorderWidthLeft(4f);
-        cell.setBorderColorLeft(PRIMARY_COLOR);
+        cell.setBorderColorLeft(styles.primary);
         
-        Paragraph p = new Paragraph(text, getSectionFont());
+        Paragraph p = new Paragraph(text, styles.section);
         cell.addElement(p);
         sectionTable.addCell(cell);
         
         document.add(sectionTable);
     }
 
-    private void addListItem(Document document, String itemText) throws DocumentException {
-        int colonIndex = itemText.indexOf(":");
-        if (colonIndex > 0 && colonIndex < 40) {
-            String label = itemText.substring(0, colonIndex).trim();
-            String value = itemText.substring(colonIndex + 1).trim();
-            
-            PdfPTable table = new PdfPTable(new float[]{35f, 65f});
-            table.setWidthPercentage(100);
-            table.setSpacingAfter(4f);
-            
-            PdfPCell labelCell = new PdfPCell(new Phrase(label, getBoldBodyFont()));
-            labelCell.setBackgroundColor(new Color(249, 250, 251));
-            labelCell.setPadding(8f);
-            labelCell.setBorderWidth(0.5f);
-            labelCell.setBorderColor(new Color(229, 231, 235));
-            
-            PdfPCell valueCell = new PdfPCell(new Phrase(value, getBodyFont()));
-            valueCell.setPadding(8f);
-            valueCell.setBorderWidth(0.5f);
-            valueCell.setBorderColor(new Color(229, 231, 235));
-            
-            table.addCell(labelCell);
-            table.addCell(valueCell);
-            document.add(table);
-        } else {
-            PdfPTable bulletTable = new PdfPTable(new float[]{5f, 95f});
-            bulletTable.setWidthPercentage(100);
-            bulletTable.setSpacingAfter(3f);
-            
-            PdfPCell bulletCell = new PdfPCell(new Phrase("●", FontFactory.getFont(FontFactory.HELVETICA, 8, ACCENT_COLOR)));
-            bulletCell.setBorder(Rectangle.NO_BORDER);
-            bulletCell.setPaddingTop(3f);
-            bulletCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            
-            PdfPCell textCell = new PdfPCell(new Phrase(itemText, getBodyFont()));
-            textCell.setBorder(Rectangle.NO_BORDER);
-            textCell.setPaddingLeft(5f);
-            
-            bulletTable.addCell(bulletCell);
-            bulletTable.addCell(textCell);
-            document.add(bulletTable);
-        }
-    }
-
     private void addNumberedItem(Document document, String number, String itemText) throws DocumentException {
         PdfPTable table = new PdfPTable(new float[]{8f, 92f});
         table.setWidthPercentage(100);
         table.setSpacingAfter(4f);
         
-        PdfPCell numCell = new PdfPCell();
-        numCell.setBackgroundColor(PRIMARY_COLOR);
-        numCell.setPadding(6f);
-        numCell.setBorder(Rectangle.NO_BORDER);
-        numCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-        numCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-        
-        Paragraph numP = new Paragraph(number, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Color.WHITE));
+        PdfPCell numCell = new PdfPCell(styles.numberCell);
+        Paragraph numP = new Paragraph(number, styles.number);
         numP.setAlignment(Element.ALIGN_CENTER);
         numCell.addElement(numP);
         
-        PdfPCell textCell = new PdfPCell(new Phrase(itemText, getBodyFont()));
-        textCell.setBorder(Rectangle.NO_BORDER);
-        textCell.setPaddingLeft(10f);
-        textCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-        
         table.addCell(numCell);
-        table.addCell(textCell);
+        table.addCell(PdfStyles.cell(styles.numberTextCell, new Phrase(itemText, styles.body)));
         document.add(table);
     }
 
@@ -365,7 +433,7 @@ public class PdfService {
         line.setWidthPercentage(60);
         PdfPCell lineCell = new PdfPCell();
         lineCell.setBorder(Rectangle.TOP);
-        lineCell.setBorderColorTop(new Color(203, 213, 225));
+        lineCell.setBorderColorTop(styles.footerLine);
         lineCell.setBorderWidthTop(1f);
         lineCell.setFixedHeight(1f);
         line.addCell(lineCell);
@@ -375,7 +443,7 @@ public class PdfService {
         Paragraph footerText = new Paragraph(
             "Generado por GymAI - Tu asistente de entrenamiento con IA\n" +
             "Este plan es orientativo. Consulta con un profesional antes de iniciar cualquier programa.",
-            getSmallFont()
+            styles.small
         );
         footerText.setAlignment(Element.ALIGN_CENTER);
         document.add(footerText);
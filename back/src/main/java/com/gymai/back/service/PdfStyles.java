@@ -0,0 +1,125 @@
+package com.gymai.back.service;
+
+import java.awt.Color;
+
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+
+/**
+ * Estilos de los PDF de planes: colores, fuentes y celdas prototipo, creados una sola vez.
+ *
+ * Nada de lo que hay aquí se modifica después de construirlo, así que se comparte entre
+ * todas las exportaciones (también las concurrentes). Las celdas prototipo no se añaden
+ * tal cual a un documento: {@code PdfPTable.addCell(PdfPCell)} trabaja sobre una copia, y
+ * las que llevan texto se copian con {@link #cell(PdfPCell, Phrase)}. Las tablas prototipo
+ * se copian con {@code new PdfPTable(prototipo)} antes de añadirles celdas.
+ */
+final class PdfStyles {
+
+    // Colores del tema
+    final Color primary = new Color(37, 99, 235);          // Azul
+    final Color accent = new Color(16, 185, 129);          // Verde
+    final Color headerBg = new Color(30, 41, 59);          // Slate oscuro
+    final Color sectionBg = new Color(241, 245, 249);      // Slate claro
+    final Color textDark = new Color(30, 41, 59);
+    final Color textMuted = new Color(100, 116, 139);
+    final Color subtitle = new Color(148, 163, 184);
+    final Color altRowBg = new Color(248, 250, 252);
+    final Color labelBg = new Color(249, 250, 251);
+    final Color border = new Color(229, 231, 235);
+    final Color footerLine = new Color(203, 213, 225);
+
+    // Fuentes
+    final Font title = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 24, Font.BOLD, Color.WHITE);
+    final Font subtitleFont = FontFactory.getFont(FontFactory.HELVETICA, 12, Font.NORMAL, subtitle);
+    final Font section = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16, Font.BOLD, primary);
+    final Font subsection = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 13, Font.BOLD, textDark);
+    final Font body = FontFactory.getFont(FontFactory.HELVETICA, 10, Font.NORMAL, textDark);
+    final Font boldBody = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Font.BOLD, textDark);
+    final Font tableHeader = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Font.BOLD, Color.WHITE);
+    final Font small = FontFactory.getFont(FontFactory.HELVETICA, 9, Font.NORMAL, textMuted);
+    final Font bullet = FontFactory.getFont(FontFactory.HELVETICA, 8, accent);
+    final Font number = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Color.WHITE);
+
+    // Celdas prototipo
+    final PdfPCell tableHeaderCell = new PdfPCell();
+    final PdfPCell tableCell = new PdfPCell();
+    final PdfPCell tableAltCell = new PdfPCell();
+    final PdfPCell labelCell = new PdfPCell();
+    final PdfPCell valueCell = new PdfPCell();
+    final PdfPCell bulletCell = new PdfPCell(new Phrase("●", bullet));
+    final PdfPCell bulletTextCell = new PdfPCell();
+    final PdfPCell numberCell = new PdfPCell();
+    final PdfPCell numberTextCell = new PdfPCell();
+    final PdfPCell tocCell = new PdfPCell();
+    final PdfPCell tocPageCell = new PdfPCell();
+
+    // Tablas prototipo (vacías) de una fila de etiqueta/valor y de una viñeta
+    final PdfPTable labelTable = new PdfPTable(new float[]{35f, 65f});
+    final PdfPTable bulletTable = new PdfPTable(new float[]{5f, 95f});
+
+    PdfStyles() {
+        tableHeaderCell.setBackgroundColor(primary);
+        tableHeaderCell.setPadding(8f);
+        tableHeaderCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+
+        tableCell.setPadding(6f);
+        tableAltCell.setPadding(6f);
+        tableAltCell.setBackgroundColor(altRowBg);
+
+        labelCell.setBackgroundColor(labelBg);
+        labelCell.setPadding(8f);
+        labelCell.setBorderWidth(0.5f);
+        labelCell.setBorderColor(border);
+
+        valueCell.setPadding(8f);
+        valueCell.setBorderWidth(0.5f);
+        valueCell.setBorderColor(border);
+
+        bulletCell.setBorder(Rectangle.NO_BORDER);
+        bulletCell.setPaddingTop(3f);
+        bulletCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+
+        bulletTextCell.setBorder(Rectangle.NO_BORDER);
+        bulletTextCell.setPaddingLeft(5f);
+
+        labelTable.setWidthPercentage(100);
+        labelTable.setSpacingAfter(4f);
+
+        bulletTable.setWidthPercentage(100);
+        bulletTable.setSpacingAfter(3f);
+
+        numberCell.setBackgroundColor(primary);
+        numberCell.setPadding(6f);
+        numberCell.setBorder(Rectangle.NO_BORDER);
+        numberCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+        numberCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+
+        numberTextCell.setBorder(Rectangle.NO_BORDER);
+        numberTextCell.setPaddingLeft(10f);
+        numberTextCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+
+        tocCell.setBorder(Rectangle.BOTTOM);
+        tocCell.setBorderColor(border);
+        tocCell.setPadding(6f);
+
+        tocPageCell.setBorder(Rectangle.BOTTOM);
+        tocPageCell.setBorderColor(border);
+        tocPageCell.setPadding(6f);
+        tocPageCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+    }
+
+    /**
+     * Copia del prototipo con el texto dado, lista para {@code PdfPTable.addCell}.
+     */
+    static PdfPCell cell(PdfPCell prototype, Phrase phrase) {
+        PdfPCell cell = new PdfPCell(prototype);
+        cell.setPhrase(phrase);
+        return cell;
+    }
+}
@@ -0,0 +1,110 @@
+package com.gymai.back.service;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.gymai.back.model.UserProfile;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Perfiles registrados por el front con {@code PUT /api/profile}.
+ *
+ * Cada perfil se renderiza una sola vez al registrarlo: el prefijo del prompt (sistema y
+ * perfil) queda listo para reutilizarse en cada turno y su hash de contenido es lo único
+ * que el cliente envía después. Perfiles iguales de sesiones distintas comparten entrada.
+ * Cada sesión lleva además un número de versión que sólo sube cuando su perfil cambia.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProfileRegistry {
+
+	@Value("${chat.profile.max-entries:10000}")
+	private int maxEntries;
+
+	private final PromptBuilder promptBuilder;
+
+	/**
+	 * Perfil registrado: hash de contenido, versión dentro de su sesión, datos y prefijo
+	 * del prompt ya renderizado.
+	 */
+	public record StoredProfile(String hash, long version, UserProfile profile, String prefix) {}
+
+	/**
+	 * Contadores del registro.
+	 */
+	public record Stats(int profiles, int sessions, long stored, long hits, long misses) {}
+
+	private record Rendered(UserProfile profile, String prefix) {}
+
+	private final LinkedHashMap<String, Rendered> byHash = new LinkedHashMap<>(64, 0.75f, true);
+	private final LinkedHashMap<String, StoredProfile> bySession = new LinkedHashMap<>(64, 0.75f, true);
+
+	private final AtomicLong stored = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Registra el perfil de una sesión y devuelve su hash y versión. Volver a registrar el
+	 * mismo contenido no cambia la versión.
+	 *
+	 * @throws ChatService.InvalidSessionIdException si la sesión falta o no es válida
+	 */
+	public StoredProfile put(String sessionId, UserProfile profile) {
+		String session = ChatService.resolveSessionId(sessionId);
+		String prefix = promptBuilder.profilePrefix(promptBuilder.renderProfile(profile));
+		String hash = ResponseCache.keyFor(prefix);
+		synchronized (this) {
+			byHash.put(hash, new Rendered(profile, prefix));
+			evictOverflow(byHash);
+			StoredProfile previous = bySession.get(session);
+			if (previous != null && previous.hash().equals(hash)) {
+				return previous;
+			}
+			StoredProfile current = new StoredProfile(hash, previous == null ? 1 : previous.version() + 1, profile, prefix);
+			bySession.put(session, current);
+			evictOverflow(bySession);
+			stored.incrementAndGet();
+			return current;
+		}
+	}
+
+	/**
+	 * Perfil registrado con ese hash, o null si no existe (p. ej. tras reiniciar el
+	 * servidor): el cliente debe volver a registrarlo.
+	 *
+	 * @throws ChatService.InvalidSessionIdException si la sesión falta o no es válida
+	 */
+	public StoredProfile get(String sessionId, String hash) {
+		String session = ChatService.resolveSessionId(sessionId);
+		synchronized (this) {
+			StoredProfile own = bySession.get(session);
+			if (own != null && own.hash().equals(hash)) {
+				hits.incrementAndGet();
+				return own;
+			}
+			Rendered shared = byHash.get(hash);
+			if (shared == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return new StoredProfile(hash, 0, shared.profile(), shared.prefix());
+		}
+	}
+
+	public synchronized Stats stats() {
+		return new Stats(byHash.size(), bySession.size(), stored.get(), hits.get(), misses.get());
+	}
+
+	private void evictOverflow(LinkedHashMap<String, ?> map) {
+		var it = map.entrySet().iterator();
+		while (map.size() > maxEntries && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package com.gymai.back.service;
 
-import com.gymai.back.model.ChatMessage;
-import org.springframework.stereotype.Component;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.gymai.back.model.ConversationContext;
+import com.gymai.back.model.UserProfile;
+import org.springframework.stereotype.Component;
+
 /**
  * Builder para construir prompts de manera consistente.
  */
@@ -11,29 +14,106 @@ import java.util.List;
 public class PromptBuilder {
     
     private static final String SYSTEM_PROMPT = "Eres GymAI, un asistente experto en rutina de entrenamientos y dietas. Mantén el tema en rutinas de gimnasio y dietas y guía al usuario si se desvía. Elabora respuestas cortas y concisas que mantengan la conversación fluida.\n";
+    private static final String SUMMARY_HEADER = "Resumen de la conversación anterior:\n";
+    private static final String USER_MESSAGE_MARKER = "Mensaje del usuario:";
+    private static final String PROFILE_HEADER = "Perfil del usuario para entreno y dieta: ";
     
     /**
-     * Construye un prompt completo con contexto y mensaje del usuario.
+     * Prompt separado en un prefijo estable (instrucciones del sistema y perfil), que
+     * puede cachearse en Gemini, y la parte que cambia en cada turno.
+     */
+    public record Prompt(String prefix, String suffix) {
+
+        /**
+         * Prompt sin prefijo estable: todo el texto es la parte variable.
+         */
+        public static Prompt of(String text) {
+            return new Prompt("", text);
+        }
+
+        /**
+         * Texto completo, tal y como se envía cuando el prefijo no está cacheado.
+         */
+        public String full() {
+            return prefix.isEmpty() ? suffix : prefix + suffix;
+        }
+    }
+
+    /**
+     * Construye el prompt con contexto y mensaje del usuario.
      * 
-     * @param context Lista de mensajes de contexto
+     * @param context Contexto de conversación (resumen opcional y mensajes recientes)
      * @param userMessage Mensaje completo del usuario (puede incluir perfil)
-     * @return Prompt formateado para Gemini
+     * @return Prompt para Gemini: el perfil va en el prefijo, junto al prompt del sistema
+     */
+    public Prompt buildPrompt(ConversationContext context, String userMessage) {
+        return buildPrompt(context, profilePrefix(extractProfile(userMessage)), extractUserMessage(userMessage));
+    }
+
+    /**
+     * Construye el prompt con un prefijo ya renderizado (ver {@link #profilePrefix(String)}),
+     * p. ej. el de un perfil registrado, y el texto del usuario sin perfil.
+     *
+     * @param context Contexto de conversación (resumen opcional y mensajes recientes)
+     * @param prefix Prefijo estable: prompt del sistema y perfil
+     * @param userText Sólo el mensaje del usuario
      */
-    public String buildPrompt(List<ChatMessage> context, String userMessage) {
-        StringBuilder prompt = new StringBuilder(SYSTEM_PROMPT);
+    public Prompt buildPrompt(ConversationContext context, String prefix, String userText) {
+        StringBuilder suffix = new StringBuilder();
+        
+        // Añadir resumen de turnos antiguos que no caben en el presupuesto
+        if (context.summary() != null && !context.summary().isEmpty()) {
+            suffix.append(SUMMARY_HEADER).append(context.summary());
+        }
         
         // Añadir contexto de conversación
-        context.forEach(message ->
-            prompt.append(message.getSender())
+        context.messages().forEach(message ->
+            suffix.append(message.getSender())
                   .append(": ")
                   .append(message.getContent())
                   .append("\n")
         );
         
-        // Añadir mensaje actual del usuario
-        prompt.append("user: ").append(userMessage).append("\n");
+        // Añadir mensaje actual del usuario (el perfil ya va en el prefijo)
+        suffix.append("user: ").append(userText).append("\n");
         
-        return prompt.toString();
+        return new Prompt(prefix, suffix.toString());
+    }
+
+    /**
+     * Prefijo estable del prompt: instrucciones del sistema seguidas del perfil, si lo hay.
+     */
+    public String profilePrefix(String profileText) {
+        return profileText == null || profileText.isEmpty() ? SYSTEM_PROMPT : SYSTEM_PROMPT + profileText + "\n";
+    }
+
+    /**
+     * Texto del perfil con el mismo formato que enviaba el front dentro de cada mensaje,
+     * o cadena vacía si no tiene ningún dato.
+     */
+    public String renderProfile(UserProfile profile) {
+        if (profile == null) return "";
+
+        List<String> parts = new ArrayList<>();
+        if (profile.age() != null) parts.add("edad: " + profile.age() + " años");
+        if (profile.height() != null) parts.add("altura: " + number(profile.height()) + " cm");
+        if (profile.weight() != null) parts.add("peso: " + number(profile.weight()) + " kg");
+        if (hasText(profile.goal())) parts.add("objetivo: " + profile.goal().trim());
+        if (hasText(profile.activity())) parts.add("actividad diaria: " + profile.activity().trim());
+        if (hasText(profile.medicalNotes())) parts.add("datos médicos: " + profile.medicalNotes().trim());
+
+        return parts.isEmpty() ? "" : PROFILE_HEADER + String.join(", ", parts) + ".";
+    }
+    
+    /**
+     * Extrae el bloque de perfil que precede a "Mensaje del usuario:", o cadena vacía
+     * si el texto no lo incluye.
+     */
+    public String extractProfile(String rawMessage) {
+        if (rawMessage == null) return "";
+        
+        int idx = rawMessage.indexOf(USER_MESSAGE_MARKER);
+        return idx == -1 ? "" : rawMessage.substring(0, idx).trim();
     }
     
     /**
@@ -47,13 +127,20 @@ public class PromptBuilder {
     public String extractUserMessage(String rawMessage) {
         if (rawMessage == null) return "";
         
-        String marker = "Mensaje del usuario:";
-        int idx = rawMessage.indexOf(marker);
+        int idx = rawMessage.indexOf(USER_MESSAGE_MARKER);
         
         if (idx == -1) {
             return rawMessage;
         }
         
-        return rawMessage.substring(idx + marker.length()).trim();
+        return rawMessage.substring(idx + USER_MESSAGE_MARKER.length()).trim();
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
     }
 }
@@ -0,0 +1,164 @@
+package com.gymai.back.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Caché de respuestas de Gemini por coincidencia exacta del prompt final.
+ *
+ * La clave es un hash SHA-256 del prompt normalizado (espacios colapsados). Es un LRU
+ * con caducidad por entrada y límite en bytes estimados, no en número de entradas, para
+ * que unas pocas respuestas largas no desborden la memoria.
+ */
+@Component
+public class ResponseCache {
+
+	@Value("${gemini.cache.enabled:true}")
+	private boolean enabled;
+
+	@Value("${gemini.cache.max-bytes:8388608}")
+	private long maxBytes;
+
+	@Value("${gemini.cache.ttl:PT30M}")
+	private Duration ttl;
+
+	@Value("${gemini.cache.replay-chunk-size:64}")
+	private int replayChunkSize;
+
+	private record Entry(String reply, long bytes, long expiresAt) {}
+
+	/**
+	 * Contadores de la caché.
+	 */
+	public record Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {}
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private long bytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Calcula la clave de caché de un prompt: SHA-256 del texto con los espacios
+	 * normalizados, para que diferencias de formato no provoquen fallos.
+	 */
+	public static String keyFor(String prompt) {
+		StringBuilder normalized = new StringBuilder(prompt.length());
+		boolean space = false;
+		for (int i = 0; i < prompt.length(); i++) {
+			char c = prompt.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = normalized.length() > 0;
+			} else {
+				if (space) {
+					normalized.append(' ');
+					space = false;
+				}
+				normalized.append(c);
+			}
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(normalized.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 no disponible", e);
+		}
+	}
+
+	/**
+	 * Devuelve la respuesta cacheada para la clave, o null si no existe o ha caducado.
+	 */
+	public String get(String key) {
+		if (!enabled) {
+			return null;
+		}
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+				remove(key);
+				evictions.incrementAndGet();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return entry.reply();
+		}
+	}
+
+	/**
+	 * Guarda una respuesta completa, expulsando las menos usadas hasta respetar el límite.
+	 */
+	public void put(String key, String reply) {
+		if (!enabled || reply == null || reply.isEmpty()) {
+			return;
+		}
+		long size = estimateBytes(key, reply);
+		if (size > maxBytes) {
+			return;
+		}
+		synchronized (entries) {
+			remove(key);
+			entries.put(key, new Entry(reply, size, System.currentTimeMillis() + ttl.toMillis()));
+			bytes += size;
+			Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				bytes -= it.next().getValue().bytes();
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Reproduce una respuesta cacheada como flujo troceado, igual que llegaría de Gemini.
+	 * No corta nunca un par suplente (emojis) entre dos trozos.
+	 */
+	public Flux<String> replay(String reply) {
+		List<String> chunks = new ArrayList<>(reply.length() / replayChunkSize + 1);
+		int start = 0;
+		while (start < reply.length()) {
+			int end = Math.min(start + replayChunkSize, reply.length());
+			if (end < reply.length() && Character.isHighSurrogate(reply.charAt(end - 1))) {
+				end++;
+			}
+			chunks.add(reply.substring(start, end));
+			start = end;
+		}
+		return Flux.fromIterable(chunks);
+	}
+
+	public Stats stats() {
+		synchronized (entries) {
+			return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), bytes, maxBytes);
+		}
+	}
+
+	private void remove(String key) {
+		Entry previous = entries.remove(key);
+		if (previous != null) {
+			bytes -= previous.bytes();
+		}
+	}
+
+	private static long estimateBytes(String key, String reply) {
+		return 96L + 2L * key.length() + 2L * reply.length();
+	}
+}
@@ -0,0 +1,93 @@
+package com.gymai.back.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Agrupa llamadas idénticas en curso para que sólo una llegue a Gemini.
+ *
+ * Mientras una llamada con la misma clave esté pendiente, los demás llamantes reciben
+ * el mismo {@link Mono} compartido o se suscriben al mismo {@link Flux} multicast, que
+ * reproduce desde el principio los fragmentos ya emitidos a quien llega tarde. La
+ * entrada se retira en cuanto la llamada termina, falla o todos los suscriptores cancelan;
+ * en el caso del {@link Mono}, antes de entregar el resultado.
+ */
+@Component
+public class SingleFlight {
+
+	private final Map<String, Mono<?>> monos = new ConcurrentHashMap<>();
+	private final Map<String, Flux<?>> fluxes = new ConcurrentHashMap<>();
+
+	private final AtomicLong leaders = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Contadores de agrupación: llamadas reales, llamadas agrupadas y llamadas en curso.
+	 */
+	public record Stats(long leaders, long coalesced, int inFlight) {}
+
+	/**
+	 * Devuelve la llamada en curso para la clave o inicia una nueva con {@code call}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Mono<T> mono(String key, Supplier<Mono<T>> call) {
+		return Mono.defer(() -> {
+			AtomicBoolean leader = new AtomicBoolean();
+			Mono<T> shared = (Mono<T>) monos.computeIfAbsent(key, k -> {
+				leader.set(true);
+				AtomicReference<Mono<T>> self = new AtomicReference<>();
+				// Se retira antes de entregar el resultado o el error, para que quien lo reciba y
+				// vuelva a llamar no encuentre todavía la entrada ya resuelta; doFinally cubre la
+				// cancelación.
+				Mono<T> created = Mono.defer(call)
+						.doOnTerminate(() -> monos.remove(k, self.get()))
+						.doFinally(signal -> monos.remove(k, self.get()))
+						.cache();
+				self.set(created);
+				return created;
+			});
+			count(leader.get());
+			return shared;
+		});
+	}
+
+	/**
+	 * Devuelve el flujo en curso para la clave o inicia uno nuevo con {@code call}.
+	 * La llamada se cancela cuando se cancelan todos sus suscriptores.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Flux<T> flux(String key, Supplier<Flux<T>> call) {
+		return Flux.defer(() -> {
+			AtomicBoolean leader = new AtomicBoolean();
+			Flux<T> shared = (Flux<T>) fluxes.computeIfAbsent(key, k -> {
+				leader.set(true);
+				AtomicReference<Flux<T>> self = new AtomicReference<>();
+				Flux<T> created = Flux.defer(call)
+						.doFinally(signal -> fluxes.remove(k, self.get()))
+						.replay()
+						.refCount();
+				self.set(created);
+				return created;
+			});
+			count(leader.get());
+			return shared;
+		});
+	}
+
+	public Stats stats() {
+		return new Stats(leaders.get(), coalesced.get(), monos.size() + fluxes.size());
+	}
+
+	private void count(boolean leader) {
+		(leader ? leaders : coalesced).incrementAndGet();
+	}
+}
@@ -0,0 +1,181 @@
+package com.gymai.back.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Convierte los fragmentos de texto de Gemini en eventos SSE para {@code /chat/stream}.
+ *
+ * El primer fragmento sale al momento; los siguientes se agrupan hasta reunir
+ * {@code max-bytes} o hasta que pasa {@code window} desde el primero pendiente, lo que
+ * ocurra antes. Así se envían menos eventos sin retrasar la primera respuesta. Mientras
+ * no hay datos se envía cada {@code heartbeat} un comentario SSE para que proxies y
+ * balanceadores no den la conexión por muerta.
+ */
+@Component
+public class SseFraming {
+
+	@Value("${chat.stream.coalesce.enabled:true}")
+	private boolean coalesceEnabled;
+
+	@Value("${chat.stream.coalesce.max-bytes:64}")
+	private int maxBytes;
+
+	@Value("${chat.stream.coalesce.window:30ms}")
+	private Duration window;
+
+	@Value("${chat.stream.heartbeat:PT15S}")
+	private Duration heartbeat;
+
+	private static final String HEARTBEAT_COMMENT = "keepalive";
+	private static final String DONE_EVENT = "done";
+	private static final String DONE_DATA = "[DONE]";
+	private static final String DEADLINE_EVENT = "deadline";
+	private static final String DEADLINE_NOTICE = "⏱️ Respuesta recortada: se alcanzó el tiempo máximo de generación.";
+
+	/**
+	 * Eventos SSE de datos (agrupados) intercalados con latidos de comentario.
+	 */
+	public Flux<ServerSentEvent<String>> frames(Flux<String> fragments) {
+		return withHeartbeat(coalesce(fragments).map(text -> ServerSentEvent.<String>builder().data(text).build()));
+	}
+
+	/**
+	 * Eventos SSE de una respuesta reanudable: un evento sin datos que sólo fija el id
+	 * (para que el navegador pueda reanudar aunque se corte antes del primer fragmento),
+	 * un evento por fragmento con su id y un evento {@code done} al terminar, que indica
+	 * al cliente que no debe reconectar. Si la generación se cortó por plazo, antes de
+	 * {@code done} va un evento {@code deadline} con el aviso, aparte del texto.
+	 */
+	public Flux<ServerSentEvent<String>> events(String streamId, Flux<StreamRegistry.Chunk> chunks) {
+		Flux<ServerSentEvent<String>> data = chunks
+				.map(chunk -> ServerSentEvent.<String>builder().id(chunk.eventId()).data(chunk.text()).build())
+				.onErrorResume(GenerationBudgets.DeadlineExceededException.class, e -> Mono.just(
+						ServerSentEvent.<String>builder().event(DEADLINE_EVENT).data(DEADLINE_NOTICE).build()))
+				.concatWith(Mono.fromSupplier(() -> ServerSentEvent.<String>builder().event(DONE_EVENT).data(DONE_DATA).build()));
+		if (streamId != null) {
+			data = data.startWith(ServerSentEvent.<String>builder().id(StreamRegistry.eventId(streamId, -1)).build());
+		}
+		return withHeartbeat(data);
+	}
+
+	private Flux<ServerSentEvent<String>> withHeartbeat(Flux<ServerSentEvent<String>> data) {
+		if (heartbeat.isZero() || heartbeat.isNegative()) {
+			return data;
+		}
+		return data.publish(shared -> Flux.merge(shared,
+				Flux.interval(heartbeat, heartbeat)
+						.map(tick -> ServerSentEvent.<String>builder().comment(HEARTBEAT_COMMENT).build())
+						.takeUntilOther(shared.then())));
+	}
+
+	/**
+	 * Agrupa fragmentos por tamaño o ventana de tiempo sin alterar el texto resultante.
+	 * Cancelar el resultado cancela también el flujo de origen.
+	 */
+	public Flux<String> coalesce(Flux<String> fragments) {
+		if (!coalesceEnabled) {
+			return fragments;
+		}
+		return Flux.create(sink -> {
+			Batch batch = new Batch(sink);
+			Disposable upstream = fragments.subscribe(batch::add, batch::error, batch::complete);
+			sink.onDispose(() -> {
+				upstream.dispose();
+				batch.cancelTimer();
+			});
+		});
+	}
+
+	/**
+	 * Texto pendiente de un flujo. Los fragmentos llegan en serie, pero el vaciado por
+	 * tiempo corre en otro hilo, de ahí el bloqueo.
+	 */
+	private final class Batch {
+
+		private final FluxSink<String> sink;
+		private final StringBuilder pending = new StringBuilder();
+		private int pendingBytes;
+		private boolean first = true;
+		private Disposable timer;
+
+		Batch(FluxSink<String> sink) {
+			this.sink = sink;
+		}
+
+		synchronized void add(String fragment) {
+			if (first) {
+				first = false;
+				sink.next(fragment);
+				return;
+			}
+			pending.append(fragment);
+			pendingBytes += utf8Length(fragment);
+			if (pendingBytes >= maxBytes) {
+				flush();
+			} else if (timer == null) {
+				timer = Schedulers.parallel().schedule(this::flushOnTimer, window.toNanos(), TimeUnit.NANOSECONDS);
+			}
+		}
+
+		synchronized void complete() {
+			flush();
+			sink.complete();
+		}
+
+		synchronized void error(Throwable error) {
+			flush();
+			sink.error(error);
+		}
+
+		synchronized void cancelTimer() {
+			if (timer != null) {
+				timer.dispose();
+				timer = null;
+			}
+		}
+
+		private synchronized void flushOnTimer() {
+			timer = null;
+			flush();
+		}
+
+		private void flush() {
+			cancelTimer();
+			if (pending.isEmpty()) {
+				return;
+			}
+			sink.next(pending.toString());
+			pending.setLength(0);
+			pendingBytes = 0;
+		}
+	}
+
+	private static int utf8Length(String text) {
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes++;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				bytes += 4;
+				i++;
+			} else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+}
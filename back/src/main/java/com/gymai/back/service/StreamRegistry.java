@@ -0,0 +1,302 @@
+package com.gymai.back.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Respuestas en curso de {@code /chat/stream} que se pueden reanudar.
+ *
+ * Cada respuesta recibe un id y sus fragmentos se numeran. La generación se suscribe aquí
+ * y no en la conexión del cliente, así que sigue avanzando aunque éste se desconecte; los
+ * últimos {@code max-events} fragmentos se guardan para que una reconexión con
+ * {@code Last-Event-ID} continúe justo después del último recibido, sin volver a llamar a
+ * Gemini. Una respuesta terminada sigue disponible durante {@code ttl}.
+ *
+ * Si pasa {@code detach-grace} sin ningún cliente conectado, la generación se cancela (lo
+ * que cierra la llamada a Gemini y libera su conexión) y el texto recibido hasta entonces
+ * se entrega marcado como truncado.
+ */
+@Component
+@Slf4j
+public class StreamRegistry {
+
+	@Value("${chat.stream.replay.max-events:256}")
+	private int maxEvents;
+
+	@Value("${chat.stream.replay.ttl:PT2M}")
+	private Duration ttl;
+
+	@Value("${chat.stream.detach-grace:PT10S}")
+	private Duration detachGrace;
+
+	/**
+	 * Destino del texto de una respuesta al terminar: completo, o parcial y truncado si la
+	 * generación se canceló por falta de clientes o se cortó al cumplirse su plazo.
+	 */
+	@FunctionalInterface
+	public interface ReplyHandler {
+		void accept(String text, boolean truncated);
+	}
+
+	/**
+	 * Fragmento numerado de una respuesta. El primero tiene {@code seq} 0.
+	 */
+	public record Chunk(String streamId, long seq, String text) {
+		public String eventId() {
+			return StreamRegistry.eventId(streamId, seq);
+		}
+	}
+
+	/**
+	 * La respuesta pedida ya no existe, es de otra sesión o ya no conserva los fragmentos
+	 * que faltan al cliente.
+	 */
+	public static class StreamExpiredException extends RuntimeException {
+		public StreamExpiredException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Contadores: respuestas guardadas ahora mismo, iniciadas, reanudadas, no reanudables y
+	 * canceladas por quedarse sin clientes.
+	 */
+	public record Stats(int streams, long started, long resumed, long expired, long cancelled) {}
+
+	/**
+	 * Estado de una respuesta. La generación, los clientes y el temporizador de abandono
+	 * llegan desde hilos distintos; {@code finished} garantiza que sólo uno de ellos la cierra.
+	 */
+	private final class Entry {
+		final String id;
+		final String sessionId;
+		final ReplyHandler onFinish;
+		final Sinks.Many<Chunk> chunks = Sinks.many().replay().limit(maxEvents);
+		final StringBuilder reply = new StringBuilder();
+		long nextSeq;
+		int clients;
+		boolean finished;
+		Disposable detachTimer;
+		volatile Disposable upstream;
+
+		Entry(String id, String sessionId, ReplyHandler onFinish) {
+			this.id = id;
+			this.sessionId = sessionId;
+			this.onFinish = onFinish;
+		}
+
+		synchronized void next(String text) {
+			if (finished) {
+				return;
+			}
+			reply.append(text);
+			chunks.tryEmitNext(new Chunk(id, nextSeq++, text));
+		}
+
+		void complete() {
+			if (!finish()) {
+				return;
+			}
+			onFinish.accept(reply.toString(), false);
+			chunks.tryEmitComplete();
+			retire(this);
+		}
+
+		void fail(Throwable error) {
+			if (!finish()) {
+				return;
+			}
+			if (error instanceof GenerationBudgets.DeadlineExceededException && !reply.isEmpty()) {
+				// Cortada por plazo: lo recibido se guarda como truncado y los clientes reciben el aviso
+				onFinish.accept(reply.toString(), true);
+			}
+			chunks.tryEmitError(error);
+			retire(this);
+		}
+
+		synchronized void attach() {
+			clients++;
+			cancelDetachTimer();
+		}
+
+		synchronized void detach() {
+			if (--clients > 0 || finished) {
+				return;
+			}
+			armDetachTimer();
+		}
+
+		void armDetachTimer() {
+			detachTimer = Schedulers.parallel().schedule(this::cancelIfAbandoned,
+					detachGrace.toMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		private void cancelIfAbandoned() {
+			synchronized (this) {
+				if (finished || clients > 0) {
+					return;
+				}
+				finished = true;
+				detachTimer = null;
+			}
+			if (upstream != null) {
+				upstream.dispose();
+			}
+			cancelled.incrementAndGet();
+			log.info("Respuesta {} cancelada: sin clientes durante {}", id, detachGrace);
+			if (!reply.isEmpty()) {
+				onFinish.accept(reply.toString(), true);
+			}
+			chunks.tryEmitError(new StreamExpiredException("Respuesta cancelada: " + id));
+			retire(this);
+		}
+
+		synchronized boolean isFinished() {
+			return finished;
+		}
+
+		private synchronized boolean finish() {
+			if (finished) {
+				return false;
+			}
+			finished = true;
+			cancelDetachTimer();
+			return true;
+		}
+
+		private void cancelDetachTimer() {
+			if (detachTimer != null) {
+				detachTimer.dispose();
+				detachTimer = null;
+			}
+		}
+	}
+
+	private final Map<String, Entry> streams = new ConcurrentHashMap<>();
+
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong resumed = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+
+	/**
+	 * Arranca una respuesta y devuelve su id. {@code onFinish} recibe el texto cuando la
+	 * generación termina bien, haya o no un cliente conectado, o el parcial si se cancela.
+	 * El plazo de abandono empieza ya, por si el cliente nunca llega a suscribirse.
+	 */
+	public String start(String sessionId, Flux<String> fragments, ReplyHandler onFinish) {
+		Entry entry = new Entry(UUID.randomUUID().toString(), sessionId, onFinish);
+		streams.put(entry.id, entry);
+		started.incrementAndGet();
+		synchronized (entry) {
+			entry.armDetachTimer();
+		}
+		entry.upstream = fragments.subscribe(entry::next, entry::fail, entry::complete);
+		if (entry.isFinished()) {
+			// Terminó o se canceló antes de tener la suscripción: no debe quedar nada en curso.
+			entry.upstream.dispose();
+		}
+		return entry.id;
+	}
+
+	/**
+	 * Fragmentos de la respuesta posteriores a {@code lastEventId} (ids de
+	 * {@link #eventId(String, long)}), seguidos de los que aún se generen. Falla con
+	 * {@link StreamExpiredException} si no se puede continuar sin huecos.
+	 */
+	public Flux<Chunk> resume(String sessionId, String lastEventId) {
+		Entry entry = null;
+		long lastSeq = -1;
+		int colon = lastEventId == null ? -1 : lastEventId.lastIndexOf(':');
+		if (colon > 0) {
+			try {
+				lastSeq = Long.parseLong(lastEventId.substring(colon + 1));
+				entry = streams.get(lastEventId.substring(0, colon));
+			} catch (NumberFormatException ignored) {
+				// Id ajeno a este servidor: se trata como respuesta desconocida.
+			}
+		}
+		if (entry == null || !Objects.equals(entry.sessionId, sessionId)) {
+			expired.incrementAndGet();
+			return Flux.error(new StreamExpiredException("Respuesta no disponible: " + lastEventId));
+		}
+		resumed.incrementAndGet();
+		return replay(entry, lastSeq);
+	}
+
+	/**
+	 * Todos los fragmentos de una respuesta recién arrancada.
+	 */
+	public Flux<Chunk> chunks(String streamId) {
+		Entry entry = streams.get(streamId);
+		return entry == null ? Flux.error(new StreamExpiredException("Respuesta no disponible: " + streamId))
+				: replay(entry, -1);
+	}
+
+	/**
+	 * Id de evento SSE: id de la respuesta y número del último fragmento entregado
+	 * (-1 antes del primero).
+	 */
+	public static String eventId(String streamId, long seq) {
+		return streamId + ":" + seq;
+	}
+
+	public Stats stats() {
+		return new Stats(streams.size(), started.get(), resumed.get(), expired.get(), cancelled.get());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		streams.values().forEach(entry -> {
+			if (entry.upstream != null) {
+				entry.upstream.dispose();
+			}
+		});
+		streams.clear();
+	}
+
+	/**
+	 * El búfer sólo guarda los últimos fragmentos: si el primero que queda no es el
+	 * siguiente al que tiene el cliente, no se puede continuar.
+	 */
+	private Flux<Chunk> replay(Entry entry, long lastSeq) {
+		return Flux.defer(() -> {
+			AtomicLong expected = new AtomicLong(lastSeq + 1);
+			return entry.chunks.asFlux()
+					.filter(chunk -> chunk.seq() > lastSeq)
+					.<Chunk>handle((chunk, sink) -> {
+						if (chunk.seq() != expected.getAndIncrement()) {
+							expired.incrementAndGet();
+							sink.error(new StreamExpiredException("Fragmentos ya descartados de " + entry.id));
+						} else {
+							sink.next(chunk);
+						}
+					})
+					.doOnSubscribe(subscription -> entry.attach())
+					.doFinally(signal -> entry.detach());
+		});
+	}
+
+	private void retire(Entry entry) {
+		Schedulers.parallel().schedule(() -> {
+			streams.remove(entry.id, entry);
+			log.debug("Respuesta {} retirada", entry.id);
+		}, ttl.toMillis(), TimeUnit.MILLISECONDS);
+	}
+}
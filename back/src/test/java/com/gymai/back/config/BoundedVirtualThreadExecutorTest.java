@@ -0,0 +1,53 @@
+package com.gymai.back.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedVirtualThreadExecutorTest {
+
+	@Test
+	void boundsConcurrencyQueuesAsPermitWaitsAndRejectsOverflow() throws Exception {
+		BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor(Thread.ofVirtual().factory(), 2, 3);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(5);
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		AtomicInteger onVirtual = new AtomicInteger();
+
+		for (int i = 0; i < 5; i++) {
+			executor.execute(() -> {
+				if (Thread.currentThread().isVirtual()) {
+					onVirtual.incrementAndGet();
+				}
+				peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				active.decrementAndGet();
+				finished.countDown();
+			});
+		}
+		assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}),
+				"2 en curso + 3 esperando: la sexta se rechaza");
+
+		Thread.sleep(100);
+		assertEquals(2, active.get());
+		release.countDown();
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertEquals(2, peak.get());
+		assertEquals(5, onVirtual.get());
+
+		CountDownLatch again = new CountDownLatch(1);
+		executor.execute(again::countDown);
+		assertTrue(again.await(5, TimeUnit.SECONDS), "los permisos se devuelven al terminar");
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,31 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class BulkheadTest {
+
+	@Test
+	void fullBulkheadRejectsWithoutAffectingTheOther() {
+		Bulkhead chat = new Bulkhead("chat", 2);
+		Bulkhead stream = new Bulkhead("stream", 2);
+		Disposable first = chat.run(Mono.never()).subscribe();
+		Disposable second = chat.run(Mono.never()).subscribe();
+
+		assertThrows(Bulkhead.BulkheadFullException.class, () -> chat.run(Mono.just("x")).block());
+		assertEquals("ok", String.join("", stream.run(Flux.just("o", "k")).collectList().block()));
+		assertEquals(1, chat.stats().rejected());
+
+		first.dispose();
+		second.dispose();
+		assertEquals(0, chat.stats().active());
+		assertEquals("x", chat.run(Mono.just("x")).block(Duration.ofSeconds(1)));
+	}
+}
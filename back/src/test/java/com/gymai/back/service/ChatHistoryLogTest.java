@@ -0,0 +1,60 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.gymai.back.model.ChatMessage;
+
+class ChatHistoryLogTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void recoversLastMessagesPerSessionAcrossSegments() throws Exception {
+		ChatHistoryLog writer = newLog(4096);
+		writer.init();
+		for (int i = 0; i < 120; i++) {
+			ChatMessage m = new ChatMessage(i % 2 == 0 ? "user" : "bot", "mensaje " + i + " ".repeat(40));
+			m.setTimestamp("2026-01-01T00:00:" + (i % 60) + "Z");
+			writer.append("s-" + (i % 3), m);
+		}
+		writer.append("borrada", new ChatMessage("user", "hola"));
+		writer.appendClear("borrada");
+		writer.shutdown();
+
+		ChatHistoryLog reader = newLog(4096);
+		reader.init();
+		Map<String, List<ChatMessage>> recovered = reader.recover(10).stream()
+				.collect(Collectors.toMap(ChatHistoryLog.RecoveredSession::sessionId,
+						ChatHistoryLog.RecoveredSession::messages));
+		reader.shutdown();
+
+		assertEquals(3, recovered.size(), "la sesión borrada no debe recuperarse");
+		List<ChatMessage> s0 = recovered.get("s-0");
+		assertEquals(10, s0.size());
+		assertTrue(s0.get(0).getContent().startsWith("mensaje 90 "));
+		assertTrue(s0.get(9).getContent().startsWith("mensaje 117 "));
+		assertEquals("user", s0.get(0).getSender());
+		assertNotNull(s0.get(0).getTimestamp());
+	}
+
+	private ChatHistoryLog newLog(int segmentSize) {
+		ChatHistoryLog historyLog = new ChatHistoryLog();
+		ReflectionTestUtils.setField(historyLog, "enabled", true);
+		ReflectionTestUtils.setField(historyLog, "dir", dir);
+		ReflectionTestUtils.setField(historyLog, "segmentSize", segmentSize);
+		ReflectionTestUtils.setField(historyLog, "queueCapacity", 1000);
+		ReflectionTestUtils.setField(historyLog, "retention", Duration.ofMinutes(30));
+		return historyLog;
+	}
+}
@@ -0,0 +1,127 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.gymai.back.model.ChatMessage;
+
+class ChatHistoryTest {
+
+	private static final int CAPACITY = 50;
+
+	@Test
+	void keepsLastMessagesInOrder() {
+		ChatHistory history = new ChatHistory(CAPACITY);
+		List<ChatMessage> appended = new ArrayList<>();
+		for (int i = 0; i < 120; i++) {
+			ChatMessage m = new ChatMessage(i % 2 == 0 ? "user" : "bot", "m-" + i);
+			appended.add(m);
+			history.append(m);
+		}
+
+		List<ChatMessage> all = history.last(CAPACITY);
+		assertEquals(CAPACITY, all.size());
+		for (int i = 0; i < CAPACITY; i++) {
+			assertEquals("m-" + (70 + i), all.get(i).getContent());
+		}
+		assertEquals("m-119", history.latestBot().getContent());
+		assertSame(appended.get(100), history.byId(appended.get(100).getId()));
+		assertNull(history.byId(appended.get(10).getId()), "un mensaje expulsado no debe encontrarse por id");
+		assertEquals(List.of("m-117", "m-118", "m-119"),
+				history.last(3).stream().map(ChatMessage::getContent).toList());
+		assertThrows(UnsupportedOperationException.class, () -> all.add(new ChatMessage()));
+	}
+
+	@Test
+	void concurrentWritersAndReadersSeeNoLostOrTornMessages() throws Exception {
+		int writers = 8;
+		int perWriter = 20_000;
+		ChatHistory history = new ChatHistory(CAPACITY);
+		ExecutorService pool = Executors.newFixedThreadPool(writers + 4);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicReference<String> failure = new AtomicReference<>();
+
+		List<Future<?>> writerTasks = new ArrayList<>();
+		for (int w = 0; w < writers; w++) {
+			int writer = w;
+			writerTasks.add(pool.submit(() -> {
+				start.await();
+				for (int i = 0; i < perWriter; i++) {
+					ChatMessage m = new ChatMessage("w" + writer, writer + ":" + i);
+					m.setId(writer + ":" + i);
+					history.append(m);
+				}
+				return null;
+			}));
+		}
+
+		List<Future<?>> readerTasks = new ArrayList<>();
+		for (int r = 0; r < 4; r++) {
+			readerTasks.add(pool.submit(() -> {
+				start.await();
+				while (writing.get()) {
+					String problem = checkSnapshot(history.last(CAPACITY));
+					if (problem != null) {
+						failure.compareAndSet(null, problem);
+					}
+				}
+				return null;
+			}));
+		}
+
+		start.countDown();
+		for (Future<?> f : writerTasks) {
+			f.get(60, TimeUnit.SECONDS);
+		}
+		writing.set(false);
+		for (Future<?> f : readerTasks) {
+			f.get(60, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+
+		assertNull(failure.get());
+		List<ChatMessage> last = history.last(CAPACITY);
+		assertEquals(CAPACITY, last.size(), "tras terminar todos los escritores no puede faltar ningún mensaje");
+		assertNull(checkSnapshot(last));
+	}
+
+	/**
+	 * Un snapshot es válido si no hay huecos nulos, cada mensaje es coherente consigo mismo
+	 * (id == contenido, remitente acorde) y los mensajes de un mismo escritor aparecen en orden.
+	 */
+	private static String checkSnapshot(List<ChatMessage> snapshot) {
+		if (snapshot.size() > CAPACITY) {
+			return "snapshot demasiado grande: " + snapshot.size();
+		}
+		Map<String, Integer> lastIndexByWriter = new HashMap<>();
+		Set<String> seen = new HashSet<>();
+		for (ChatMessage m : snapshot) {
+			if (m == null) {
+				return "mensaje nulo";
+			}
+			if (!m.getContent().equals(m.getId())) {
+				return "mensaje incoherente: " + m.getId() + " / " + m.getContent();
+			}
+			String[] parts = m.getContent().split(":");
+			if (!m.getSender().equals("w" + parts[0])) {
+				return "remitente incoherente: " + m.getSender() + " / " + m.getContent();
+			}
+			if (!seen.add(m.getId())) {
+				return "mensaje duplicado: " + m.getId();
+			}
+			int index = Integer.parseInt(parts[1]);
+			Integer previous = lastIndexByWriter.put(parts[0], index);
+			if (previous != null && previous >= index) {
+				return "orden incorrecto para escritor " + parts[0];
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,93 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.gymai.back.model.ChatMessage;
+
+class ChatServiceTest {
+
+	@Test
+	void sessionsDoNotSeeEachOther() {
+		ChatService service = newService(Duration.ofMinutes(30), Long.MAX_VALUE);
+		service.addMessage("ana", new ChatMessage("user", "soy ana"));
+		service.addMessage("luis", new ChatMessage("user", "soy luis"));
+		ChatMessage reply = new ChatMessage("bot", "hola ana");
+		service.addMessage("ana", reply);
+
+		assertEquals(2, service.getAllMessages("ana").size());
+		assertEquals("soy luis", service.getAllMessages("luis").get(0).getContent());
+		assertEquals(1, service.getContext("luis").messages().size());
+		assertNull(service.getLastBotMessage("luis"));
+		assertNull(service.getMessage("luis", reply.getId()), "un id de otra sesión no se encuentra");
+
+		service.clearMessages("ana");
+		assertTrue(service.getAllMessages("ana").isEmpty());
+		assertEquals(1, service.getAllMessages("luis").size());
+	}
+
+	@Test
+	void missingOrInvalidSessionIdIsRejected() {
+		ChatService service = newService(Duration.ofMinutes(30), Long.MAX_VALUE);
+		service.addMessage("default", new ChatMessage("user", "privado"));
+
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> service.getAllMessages(null));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> service.getAllMessages(" "));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> service.getAllMessages("a/b"));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> service.getAllMessages("año"));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> service.getAllMessages("١٢٣"));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> service.getAllMessages("会话"));
+		assertThrows(ChatService.InvalidSessionIdException.class,
+				() -> service.addMessage("x".repeat(65), new ChatMessage("user", "hola")));
+		assertEquals("abc-123_X", ChatService.resolveSessionId("abc-123_X"));
+		assertEquals(1, service.getSessionCount());
+	}
+
+	@Test
+	void idleSessionsAreSwept() throws InterruptedException {
+		ChatService service = newService(Duration.ofMillis(50), Long.MAX_VALUE);
+		service.addMessage("vieja", new ChatMessage("user", "hola"));
+		Thread.sleep(100);
+		service.addMessage("nueva", new ChatMessage("user", "hola"));
+
+		service.evictIdleSessions();
+
+		assertEquals(1, service.getSessionCount());
+		assertTrue(service.getAllMessages("vieja").isEmpty());
+		assertEquals(1, service.getAllMessages("nueva").size());
+	}
+
+	@Test
+	void leastRecentSessionsAreEvictedOverTheMemoryBound() throws InterruptedException {
+		ChatMessage sample = new ChatMessage("user", "x".repeat(100));
+		long perSession = ChatSession.estimateBytes(sample);
+		ChatService service = newService(Duration.ofMinutes(30), 2 * perSession);
+
+		service.addMessage("s1", new ChatMessage("user", "x".repeat(100)));
+		Thread.sleep(5);
+		service.addMessage("s2", new ChatMessage("user", "x".repeat(100)));
+		Thread.sleep(5);
+		service.getAllMessages("s1");
+		Thread.sleep(5);
+		service.addMessage("s3", new ChatMessage("user", "x".repeat(100)));
+
+		assertEquals(2, service.getSessionCount());
+		assertTrue(service.getAllMessages("s2").isEmpty(), "s2 es la de acceso más antiguo");
+		assertEquals(1, service.getAllMessages("s1").size());
+		assertEquals(1, service.getAllMessages("s3").size());
+	}
+
+	private static ChatService newService(Duration idleTimeout, long maxTotalBytes) {
+		ContextWindow window = new ContextWindow();
+		ReflectionTestUtils.setField(window, "tokenBudget", 1200);
+		ReflectionTestUtils.setField(window, "summaryTokenBudget", 300);
+		ChatService service = new ChatService(new ChatHistoryLog(), window);
+		ReflectionTestUtils.setField(service, "idleTimeout", idleTimeout);
+		ReflectionTestUtils.setField(service, "maxTotalBytes", maxTotalBytes);
+		return service;
+	}
+}
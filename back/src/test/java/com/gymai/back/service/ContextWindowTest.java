@@ -0,0 +1,64 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.gymai.back.model.ChatMessage;
+
+class ContextWindowTest {
+
+	private final ContextWindow window = newWindow(200, 50);
+
+	@Test
+	void keepsEverythingWhenItFitsTheBudget() {
+		List<ChatMessage> history = messages(4, 20);
+		ContextWindow.Selection selection = window.select(history, null);
+
+		assertNull(selection.context().summary());
+		assertEquals(4, selection.context().messages().size());
+	}
+
+	@Test
+	void foldsOverflowIntoSummaryAndReusesIt() {
+		List<ChatMessage> history = messages(10, 200);
+		ContextWindow.Selection first = window.select(history, null);
+
+		int tokens = first.context().messages().stream().mapToInt(ChatMessage::estimatedTokens).sum();
+		assertTrue(tokens <= 150, "los mensajes recientes deben caber en el presupuesto");
+		assertNotNull(first.context().summary());
+		int lastFolded = history.size() - first.context().messages().size() - 1;
+		assertTrue(first.context().summary().contains("mensaje " + lastFolded + " "));
+		assertTrue(first.context().summary().length() <= 50 * 4, "el resumen respeta su presupuesto");
+
+		ContextWindow.Selection again = window.select(history, first.summary());
+		assertSame(first.summary(), again.summary(), "sin mensajes nuevos el resumen se reutiliza");
+
+		List<ChatMessage> longer = new ArrayList<>(history);
+		longer.addAll(messages(2, 200));
+		ContextWindow.Selection next = window.select(longer, first.summary());
+		assertNotSame(first.summary(), next.summary());
+		assertEquals(longer.get(longer.size() - next.context().messages().size() - 1).getId(),
+				next.summary().lastFoldedId());
+	}
+
+	private static List<ChatMessage> messages(int count, int length) {
+		List<ChatMessage> list = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String text = "mensaje " + i + " ";
+			list.add(new ChatMessage(i % 2 == 0 ? "user" : "bot", text + "x".repeat(Math.max(0, length - text.length()))));
+		}
+		return list;
+	}
+
+	private static ContextWindow newWindow(int budget, int summaryBudget) {
+		ContextWindow window = new ContextWindow();
+		ReflectionTestUtils.setField(window, "tokenBudget", budget);
+		ReflectionTestUtils.setField(window, "summaryTokenBudget", summaryBudget);
+		return window;
+	}
+}
@@ -0,0 +1,92 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.publisher.Mono;
+
+class GeminiCircuitBreakerTest {
+
+	static GeminiCircuitBreaker newBreaker(int window, int minCalls, Duration openDuration, int probes) {
+		GeminiCircuitBreaker breaker = new GeminiCircuitBreaker();
+		ReflectionTestUtils.setField(breaker, "window", window);
+		ReflectionTestUtils.setField(breaker, "minCalls", minCalls);
+		ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+		ReflectionTestUtils.setField(breaker, "openDuration", openDuration);
+		ReflectionTestUtils.setField(breaker, "halfOpenProbes", probes);
+		breaker.init();
+		return breaker;
+	}
+
+	private static final WebClientResponseException UNAVAILABLE = WebClientResponseException.create(503,
+			"Service Unavailable", new HttpHeaders(), "{\"error\":{\"message\":\"overloaded\"}}".getBytes(StandardCharsets.UTF_8),
+			StandardCharsets.UTF_8);
+
+	@Test
+	void opensAfterFailureRateAndRejectsWithLastError() {
+		GeminiCircuitBreaker breaker = newBreaker(10, 4, Duration.ofSeconds(30), 1);
+		breaker.protect(Mono.just("ok")).block();
+		breaker.protect(Mono.just("ok")).block();
+		for (int i = 0; i < 2; i++) {
+			assertThrows(WebClientResponseException.class, () -> breaker.protect(Mono.error(UNAVAILABLE)).block());
+		}
+		assertEquals(GeminiCircuitBreaker.State.OPEN, breaker.state());
+
+		long start = System.nanoTime();
+		GeminiCircuitBreaker.CircuitOpenException open = assertThrows(GeminiCircuitBreaker.CircuitOpenException.class,
+				() -> breaker.protect(Mono.fromCallable(() -> fail("no debe llamar a Gemini"))).block());
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 50);
+		assertSame(UNAVAILABLE, open.lastFailure());
+		assertEquals(1, breaker.stats().rejected());
+	}
+
+	@Test
+	void clientErrorsDoNotOpenCircuit() {
+		GeminiCircuitBreaker breaker = newBreaker(10, 2, Duration.ofSeconds(30), 1);
+		WebClientResponseException badRequest = WebClientResponseException.create(400, "Bad Request", new HttpHeaders(),
+				new byte[0], StandardCharsets.UTF_8);
+		for (int i = 0; i < 5; i++) {
+			assertThrows(WebClientResponseException.class, () -> breaker.protect(Mono.error(badRequest)).block());
+		}
+		assertEquals(GeminiCircuitBreaker.State.CLOSED, breaker.state());
+	}
+
+	@Test
+	void halfOpenProbesCloseOrReopenCircuit() throws Exception {
+		GeminiCircuitBreaker breaker = newBreaker(4, 2, Duration.ofMillis(100), 2);
+		for (int i = 0; i < 2; i++) {
+			assertThrows(WebClientResponseException.class, () -> breaker.protect(Mono.error(UNAVAILABLE)).block());
+		}
+		Thread.sleep(150);
+		assertEquals(GeminiCircuitBreaker.State.HALF_OPEN, breaker.state());
+
+		assertThrows(WebClientResponseException.class, () -> breaker.protect(Mono.error(UNAVAILABLE)).block());
+		assertEquals(GeminiCircuitBreaker.State.OPEN, breaker.state());
+
+		Thread.sleep(150);
+		assertEquals("ok", breaker.protect(Mono.just("ok")).block());
+		assertEquals(GeminiCircuitBreaker.State.HALF_OPEN, breaker.state());
+		assertEquals("ok", breaker.protect(Mono.just("ok")).block());
+		assertEquals(GeminiCircuitBreaker.State.CLOSED, breaker.state());
+		assertEquals(2, breaker.stats().opened());
+	}
+
+	@Test
+	void halfOpenLetsOnlyConfiguredProbesThrough() throws Exception {
+		GeminiCircuitBreaker breaker = newBreaker(4, 2, Duration.ofMillis(100), 1);
+		for (int i = 0; i < 2; i++) {
+			assertThrows(WebClientResponseException.class, () -> breaker.protect(Mono.error(UNAVAILABLE)).block());
+		}
+		Thread.sleep(150);
+
+		breaker.protect(Mono.delay(Duration.ofMillis(300))).subscribe();
+		assertThrows(GeminiCircuitBreaker.CircuitOpenException.class, () -> breaker.protect(Mono.just("x")).block());
+	}
+}
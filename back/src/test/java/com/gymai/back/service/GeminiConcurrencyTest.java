@@ -0,0 +1,77 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.gymai.back.support.GeminiStubServer;
+
+/**
+ * Cientos de llamadas lentas simultáneas a Gemini deben completarse sin agotar hilos:
+ * cada una ocupa un hilo virtual, no un hilo de plataforma.
+ */
+@SpringBootTest
+class GeminiConcurrencyTest {
+
+	private static final int CALLS = 300;
+	private static final long UPSTREAM_DELAY_MS = 1000;
+
+	private static GeminiStubServer stub;
+
+	@Autowired
+	private GeminiChatService geminiChatService;
+
+	@DynamicPropertySource
+	static void geminiProperties(DynamicPropertyRegistry registry) throws Exception {
+		stub = new GeminiStubServer();
+		stub.setDelayMillis(UPSTREAM_DELAY_MS);
+		registry.add("gemini.base-url", stub::baseUrl);
+		registry.add("gemini.executor.max-concurrency", () -> CALLS);
+		registry.add("gemini.http.warmup", () -> false);
+		registry.add("gemini.limiter.initial-concurrency", () -> CALLS);
+		registry.add("gemini.limiter.max-concurrency", () -> CALLS);
+		registry.add("gemini.bulkhead.chat.max-concurrent", () -> CALLS);
+	}
+
+	@AfterAll
+	static void stopStub() {
+		stub.close();
+	}
+
+	@Test
+	void hundredsOfSlowUpstreamCallsCompleteWithoutExhaustingThreads() throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int platformThreadsBefore = threads.getThreadCount();
+		threads.resetPeakThreadCount();
+
+		long start = System.nanoTime();
+		List<CompletableFuture<String>> replies = new ArrayList<>();
+		for (int i = 0; i < CALLS; i++) {
+			replies.add(geminiChatService.getChatbotResponseAsync("prompt distinto " + i));
+		}
+		CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		for (CompletableFuture<String> reply : replies) {
+			assertEquals("ok", reply.get());
+		}
+		assertEquals(CALLS, stub.requestCount());
+		assertTrue(elapsedMs < 15 * UPSTREAM_DELAY_MS,
+				"las llamadas deben solaparse (tardaron " + elapsedMs + " ms)");
+		int extraPlatformThreads = threads.getPeakThreadCount() - platformThreadsBefore;
+		assertTrue(extraPlatformThreads < 64,
+				"no debe crearse un hilo de plataforma por llamada (+" + extraPlatformThreads + ")");
+	}
+}
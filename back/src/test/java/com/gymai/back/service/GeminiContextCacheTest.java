@@ -0,0 +1,133 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.gymai.back.support.GeminiStubServer;
+
+/**
+ * El prefijo estable se registra una vez en la API cachedContents del stub y las llamadas
+ * siguientes sólo envían la parte variable junto al nombre del contenido cacheado.
+ */
+@SpringBootTest
+class GeminiContextCacheTest {
+
+	private static final String CACHE_NAME = "cachedContents/perfil-123";
+
+	private static GeminiStubServer stub;
+	private static final AtomicInteger creates = new AtomicInteger();
+	private static final AtomicInteger refreshes = new AtomicInteger();
+	private static final AtomicReference<String> lastBody = new AtomicReference<>();
+	private static final AtomicBoolean rejectCachedContent = new AtomicBoolean();
+
+	@Autowired
+	private GeminiChatService geminiChatService;
+
+	@Autowired
+	private GeminiContextCache contextCache;
+
+	@DynamicPropertySource
+	static void geminiProperties(DynamicPropertyRegistry registry) throws Exception {
+		stub = new GeminiStubServer();
+		stub.handle("/v1beta/cachedContents", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			if ("PATCH".equals(exchange.getRequestMethod())) {
+				refreshes.incrementAndGet();
+			} else {
+				creates.incrementAndGet();
+			}
+			GeminiStubServer.respond(exchange, 200, "application/json", "{\"name\":\"" + CACHE_NAME + "\"}");
+		});
+		stub.handle("/v1beta/models/", exchange -> {
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			lastBody.set(body);
+			if (body.contains("cachedContent") && rejectCachedContent.getAndSet(false)) {
+				GeminiStubServer.respond(exchange, 404, "application/json", "{\"error\":{\"message\":\"not found\"}}");
+				return;
+			}
+			GeminiStubServer.respond(exchange, 200, "application/json", GeminiStubServer.generateContentJson("ok"));
+		});
+		registry.add("gemini.base-url", stub::baseUrl);
+		registry.add("gemini.http.warmup", () -> false);
+		registry.add("gemini.context-cache.min-tokens", () -> 50);
+		registry.add("gemini.context-cache.ttl", () -> "PT2S");
+		registry.add("gemini.context-cache.refresh-margin", () -> "PT1.5S");
+	}
+
+	@AfterAll
+	static void stopStub() {
+		stub.close();
+	}
+
+	private static PromptBuilder.Prompt prompt(String profile, String turn) {
+		return new PromptBuilder.Prompt("Eres GymAI.\n" + profile + "\n", "user: " + turn + "\n");
+	}
+
+	@Test
+	void stablePrefixIsRegisteredOnceAndReferencedByName() {
+		String profile = "Perfil del usuario A: " + "objetivo hipertrofia, 4 días, sin lesiones. ".repeat(10);
+		int before = creates.get();
+
+		assertEquals("ok", geminiChatService.getChatbotResponse(prompt(profile, "primera pregunta")));
+		assertEquals("ok", geminiChatService.getChatbotResponse(prompt(profile, "segunda pregunta")));
+
+		assertEquals(before + 1, creates.get());
+		assertTrue(lastBody.get().contains(CACHE_NAME));
+		assertTrue(lastBody.get().contains("segunda pregunta"));
+		assertFalse(lastBody.get().contains("hipertrofia"), "el perfil no debe reenviarse en línea");
+	}
+
+	@Test
+	void shortPrefixIsSentInline() {
+		int before = creates.get();
+
+		assertEquals("ok", geminiChatService.getChatbotResponse(prompt("Perfil corto.", "hola")));
+
+		assertEquals(before, creates.get());
+		assertFalse(lastBody.get().contains("cachedContent"));
+		assertTrue(lastBody.get().contains("Perfil corto."));
+	}
+
+	@Test
+	void handleIsRefreshedBeforeItExpires() throws Exception {
+		String profile = "Perfil del usuario B: " + "objetivo fuerza, 3 días, lesión de hombro. ".repeat(10);
+		geminiChatService.getChatbotResponse(prompt(profile, "uno"));
+		int before = refreshes.get();
+
+		Thread.sleep(700);
+		geminiChatService.getChatbotResponse(prompt(profile, "dos"));
+
+		long deadline = System.currentTimeMillis() + 2000;
+		while (refreshes.get() == before && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(before + 1, refreshes.get());
+		assertTrue(contextCache.stats().refreshed() >= 1);
+	}
+
+	@Test
+	void unknownHandleFallsBackInlineAndIsRecreated() {
+		String profile = "Perfil del usuario C: " + "objetivo resistencia, 5 días, corredor. ".repeat(10);
+		geminiChatService.getChatbotResponse(prompt(profile, "antes"));
+		int before = creates.get();
+
+		rejectCachedContent.set(true);
+		assertEquals("ok", geminiChatService.getChatbotResponse(prompt(profile, "tras caducar")));
+		assertTrue(lastBody.get().contains("resistencia"), "el reintento lleva el prefijo en línea");
+
+		geminiChatService.getChatbotResponse(prompt(profile, "después"));
+		assertEquals(before + 1, creates.get());
+		assertTrue(lastBody.get().contains(CACHE_NAME));
+	}
+}
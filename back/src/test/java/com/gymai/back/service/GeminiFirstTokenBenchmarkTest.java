@@ -0,0 +1,133 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.gymai.back.support.GeminiStubServer;
+
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Tiempo hasta el primer fragmento (TTFT) antes y después de pasar a {@code alt=sse}.
+ *
+ * El stub responde igual en los dos formatos: un primer trozo, una pausa y el resto. La
+ * línea base repite el decodificador anterior ({@code bodyToFlux(Map.class)} sobre el array
+ * JSON de {@code streamGenerateContent}); la versión nueva es {@link GeminiChatService}.
+ * Se ejecuta con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class GeminiFirstTokenBenchmarkTest {
+
+	private static final long PAUSE_MS = 300;
+	private static final int WARMUP = 10;
+	private static final int RUNS = 40;
+
+	private GeminiStubServer stub;
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		stub = new GeminiStubServer();
+		stub.handle("/v1beta/models/", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			boolean sse = String.valueOf(exchange.getRequestURI().getQuery()).contains("alt=sse");
+			exchange.getResponseHeaders().set("Content-Type", sse ? "text/event-stream" : "application/json");
+			exchange.sendResponseHeaders(200, 0);
+			String first = GeminiStubServer.generateContentJson("Primer ");
+			String second = GeminiStubServer.generateContentJson("trozo");
+			try (OutputStream out = exchange.getResponseBody()) {
+				// Mismo encuadre que Gemini: "[{...}\r\n" ... ",\r\n{...}]" frente a eventos "data: {...}"
+				out.write((sse ? GeminiStreamingTest.event("Primer ") : "[" + first + "\r\n").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				GeminiStubServer.sleep(PAUSE_MS);
+				out.write((sse ? GeminiStreamingTest.event("trozo") : ",\r\n" + second + "]").getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@AfterEach
+	void tearDown() {
+		stub.close();
+		executor.shutdown();
+	}
+
+	@Test
+	void jsonArrayBaselineVersusSse() {
+		WebClient baselineClient = WebClient.builder().build();
+		long[] baseline = measure(i -> legacyArrayStream(baselineClient, "hola " + i));
+
+		GeminiChatService service = GeminiStreamingTest.newService(stub.baseUrl(), executor, HttpClient.create());
+		long[] sse = measure(i -> service.streamChatbotResponse("hola " + i));
+
+		System.out.printf("TTFT array JSON (antes): p50=%.1f ms p95=%.1f ms%n", p(baseline, 0.50), p(baseline, 0.95));
+		System.out.printf("TTFT alt=sse (ahora):    p50=%.1f ms p95=%.1f ms%n", p(sse, 0.50), p(sse, 0.95));
+		assertTrue(p(sse, 0.50) < PAUSE_MS / 2.0, "con SSE el primer fragmento no espera al resto");
+	}
+
+	/**
+	 * TTFT de cada ejecución tras el calentamiento, en microsegundos y ordenados.
+	 */
+	private static long[] measure(IntFunction<Flux<String>> call) {
+		for (int i = 0; i < WARMUP; i++) {
+			call.apply(-1 - i).blockLast(Duration.ofSeconds(10));
+		}
+		long[] micros = new long[RUNS];
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			List<String> fragments = call.apply(i)
+					.take(1)
+					.collectList()
+					.block(Duration.ofSeconds(10));
+			micros[i] = (System.nanoTime() - start) / 1000;
+			assertEquals(List.of("Primer "), fragments);
+			// Se deja terminar la respuesta para no solapar la siguiente con la pausa del stub
+			GeminiStubServer.sleep(PAUSE_MS + 50);
+		}
+		Arrays.sort(micros);
+		return micros;
+	}
+
+	private static double p(long[] sortedMicros, double percentile) {
+		int index = (int) Math.ceil(percentile * sortedMicros.length) - 1;
+		return sortedMicros[Math.max(0, index)] / 1000.0;
+	}
+
+	/**
+	 * Decodificación anterior a {@code alt=sse}: cada elemento del array JSON como
+	 * {@code Map} y recorrido con conversiones sin comprobar.
+	 */
+	@SuppressWarnings("unchecked")
+	private Flux<String> legacyArrayStream(WebClient webClient, String prompt) {
+		Map<String, Object> body = Map.of("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))));
+		return webClient.post()
+				.uri(stub.baseUrl() + "/v1beta/models/gemini-test:streamGenerateContent?key=test-key")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(body)
+				.retrieve()
+				.bodyToFlux(Map.class)
+				.flatMap(chunk -> {
+					List<Map<String, Object>> candidates = (List<Map<String, Object>>) chunk.get("candidates");
+					Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
+					List<Map<String, Object>> parts = (List<Map<String, Object>>) content.get("parts");
+					return Flux.fromIterable(parts).map(part -> String.valueOf(part.get("text")));
+				});
+	}
+}
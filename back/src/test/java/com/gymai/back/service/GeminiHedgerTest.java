@@ -0,0 +1,128 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class GeminiHedgerTest {
+
+	private final LatencyTracker latency = new LatencyTracker(64);
+
+	private GeminiHedger newHedger(Duration minDelay) {
+		GeminiHedger hedger = new GeminiHedger();
+		ReflectionTestUtils.setField(hedger, "enabled", true);
+		ReflectionTestUtils.setField(hedger, "percentile", 0.95);
+		ReflectionTestUtils.setField(hedger, "minDelay", minDelay);
+		ReflectionTestUtils.setField(hedger, "minSamples", 5);
+		return hedger;
+	}
+
+	@Test
+	void slowPrimaryIsHedgedAndCancelled() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(100));
+		AtomicBoolean primaryCancelled = new AtomicBoolean();
+		Mono<String> primary = Mono.delay(Duration.ofSeconds(2)).map(t -> "principal")
+				.doOnCancel(() -> primaryCancelled.set(true));
+
+		long start = System.nanoTime();
+		String reply = hedger.hedge(primary, () -> Mono.just("respaldo"), latency).block();
+
+		assertEquals("respaldo", reply);
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+		assertTrue(primaryCancelled.get());
+		assertEquals(1, hedger.stats().sent());
+		assertEquals(1, hedger.stats().won());
+	}
+
+	@Test
+	void fastPrimaryDoesNotHedge() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(300));
+
+		String reply = hedger.hedge(Mono.just("principal"), () -> fail("no debe cubrirse"), latency).block();
+
+		assertEquals("principal", reply);
+		assertEquals(0, hedger.stats().sent());
+	}
+
+	@Test
+	void streamKeepsWinnerFragmentsOnly() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(100));
+		Flux<String> primary = Flux.just("p1", "p2").delaySubscription(Duration.ofSeconds(2));
+		Flux<String> backup = Flux.just("r1", "r2", "r3");
+
+		List<String> fragments = hedger.hedge(primary, () -> backup, latency).collectList().block();
+
+		assertEquals(List.of("r1", "r2", "r3"), fragments);
+		assertEquals(1, hedger.stats().won());
+	}
+
+	@Test
+	void bothFailingPropagatesOriginalError() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(50));
+		IllegalStateException failure = new IllegalStateException("caído");
+
+		IllegalStateException error = assertThrows(IllegalStateException.class, () -> hedger
+				.hedge(Mono.<String>error(failure).delaySubscription(Duration.ofMillis(100)),
+						() -> Mono.error(new IllegalStateException("respaldo caído")), latency)
+				.block());
+
+		assertSame(failure, error);
+	}
+
+	@Test
+	void primaryFailureIsNotHeldForTheHedgeDelay() {
+		GeminiHedger hedger = newHedger(Duration.ofSeconds(1));
+		IllegalStateException failure = new IllegalStateException("400");
+
+		long start = System.nanoTime();
+		IllegalStateException error = assertThrows(IllegalStateException.class,
+				() -> hedger.hedge(Mono.<String>error(failure), () -> fail("no debe cubrirse"), latency).block());
+		IllegalStateException streamError = assertThrows(IllegalStateException.class,
+				() -> hedger.hedge(Flux.<String>error(failure), () -> fail("no debe cubrirse"), latency).blockLast());
+
+		assertSame(failure, error);
+		assertSame(failure, streamError);
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 500, "el error debe llegar al momento");
+		assertEquals(0, hedger.stats().sent());
+	}
+
+	@Test
+	void primaryFailureWaitsForAnAlreadySentBackup() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(50));
+
+		String reply = hedger.hedge(Mono.<String>error(new IllegalStateException("caído")).delaySubscription(Duration.ofMillis(100)),
+				() -> Mono.just("respaldo").delayElement(Duration.ofMillis(200)), latency).block();
+
+		assertEquals("respaldo", reply);
+		assertEquals(1, hedger.stats().won());
+	}
+
+	@Test
+	void emptyStreamsStayEmpty() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(50));
+
+		List<String> fragments = hedger.hedge(Flux.<String>empty().delaySubscription(Duration.ofMillis(100)),
+				Flux::empty, latency).collectList().block();
+
+		assertTrue(fragments.isEmpty());
+	}
+
+	@Test
+	void delayFollowsObservedPercentile() {
+		GeminiHedger hedger = newHedger(Duration.ofMillis(100));
+		assertEquals(Duration.ofMillis(100), hedger.delay(latency));
+
+		for (int i = 1; i <= 20; i++) {
+			latency.record(Duration.ofMillis(i * 50L).toNanos());
+		}
+		assertEquals(Duration.ofMillis(950), hedger.delay(latency));
+	}
+}
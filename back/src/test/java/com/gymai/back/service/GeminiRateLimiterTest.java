@@ -0,0 +1,157 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class GeminiRateLimiterTest {
+
+	static GeminiRateLimiter newLimiter(int concurrency, int maxQueue, Duration maxWait) {
+		GeminiRateLimiter limiter = new GeminiRateLimiter();
+		ReflectionTestUtils.setField(limiter, "initialConcurrency", concurrency);
+		ReflectionTestUtils.setField(limiter, "minConcurrency", 1);
+		ReflectionTestUtils.setField(limiter, "maxConcurrency", 100);
+		ReflectionTestUtils.setField(limiter, "maxQueue", maxQueue);
+		ReflectionTestUtils.setField(limiter, "maxWait", maxWait);
+		ReflectionTestUtils.setField(limiter, "defaultPause", Duration.ofSeconds(2));
+		limiter.init();
+		return limiter;
+	}
+
+	@Test
+	void queuedCallersRunWithinConcurrencyLimit() {
+		GeminiRateLimiter limiter = newLimiter(2, 10, Duration.ofSeconds(5));
+		ReflectionTestUtils.setField(limiter, "maxConcurrency", 2);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		Mono<String> call = Mono.defer(() -> {
+			peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+			return Mono.delay(Duration.ofMillis(100)).map(t -> "ok").doOnTerminate(running::decrementAndGet);
+		});
+
+		List<String> replies = Flux.range(0, 6).flatMap(i -> limiter.limit(call)).collectList().block();
+
+		assertEquals(6, replies.size());
+		assertEquals(2, peak.get());
+		assertEquals(0, limiter.stats().inFlight());
+	}
+
+	@Test
+	void fullQueueFailsFast() {
+		GeminiRateLimiter limiter = newLimiter(1, 1, Duration.ofSeconds(5));
+		Mono<String> slow = Mono.delay(Duration.ofMillis(300)).map(t -> "ok");
+
+		limiter.limit(slow).subscribe();
+		limiter.limit(slow).subscribe();
+		long start = System.nanoTime();
+		assertThrows(GeminiRateLimiter.RateLimitedException.class, () -> limiter.limit(slow).block());
+
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 100);
+		assertEquals(1, limiter.stats().rejected());
+		assertEquals(1, limiter.stats().queued());
+	}
+
+	@Test
+	void waitIsBoundedAndReleasesNothing() {
+		GeminiRateLimiter limiter = newLimiter(1, 10, Duration.ofMillis(200));
+		limiter.limit(Mono.delay(Duration.ofMillis(600))).subscribe();
+
+		assertThrows(GeminiRateLimiter.RateLimitedException.class, () -> limiter.limit(Mono.just("x")).block());
+		assertEquals(1, limiter.stats().timedOut());
+		assertEquals(0, limiter.stats().queued());
+
+		Mono.delay(Duration.ofMillis(500)).block();
+		assertEquals(0, limiter.stats().inFlight());
+	}
+
+	@Test
+	void cancelBeforeGrantIsDeliveredReturnsThePermit() {
+		GeminiRateLimiter limiter = newLimiter(1, 10, Duration.ofSeconds(5));
+		AtomicInteger started = new AtomicInteger();
+
+		// Cancela antes de que el permiso concedido al momento llegue al suscriptor
+		limiter.limit(Mono.fromCallable(started::incrementAndGet)).subscribe(new BaseSubscriber<>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				cancel();
+			}
+		});
+
+		assertEquals(0, started.get());
+		assertEquals(0, limiter.stats().inFlight());
+		assertEquals("ok", limiter.limit(Mono.just("ok")).block(Duration.ofSeconds(1)));
+	}
+
+	@Test
+	void cancelWhileQueuedPermitIsBeingGrantedReturnsIt() throws Exception {
+		GeminiRateLimiter limiter = newLimiter(4, 10, Duration.ofSeconds(5));
+		assertThrows(WebClientResponseException.class, () -> limiter.limit(Mono.error(tooManyRequests("1"))).block());
+
+		// Durante la pausa esperan dos; al acabar, un mismo reparto concede permiso a los dos y
+		// la llamada del primero cancela al segundo antes de que le llegue el suyo
+		AtomicReference<Disposable> second = new AtomicReference<>();
+		AtomicInteger secondStarted = new AtomicInteger();
+		CompletableFuture<List<String>> first = limiter.limit(Mono.fromCallable(() -> {
+			second.get().dispose();
+			return "ok";
+		})).flux().collectList().toFuture();
+		second.set(limiter.limit(Mono.fromCallable(secondStarted::incrementAndGet)).subscribe());
+
+		assertEquals(List.of("ok"), first.get(5, TimeUnit.SECONDS));
+		assertEquals(0, secondStarted.get());
+		assertEquals(0, limiter.stats().inFlight());
+		assertEquals(0, limiter.stats().queued());
+	}
+
+	@Test
+	void tooManyRequestsHalvesLimitAndPausesForRetryAfter() {
+		GeminiRateLimiter limiter = newLimiter(4, 10, Duration.ofSeconds(5));
+		WebClientResponseException tooMany = tooManyRequests("1");
+
+		assertThrows(WebClientResponseException.class, () -> limiter.limit(Mono.error(tooMany)).block());
+		assertEquals(2.0, limiter.stats().limit());
+
+		long start = System.nanoTime();
+		assertEquals("ok", limiter.limit(Mono.just("ok")).block());
+		long waitedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+		assertTrue(waitedMs >= 900, "debe esperar la pausa de Retry-After (esperó " + waitedMs + " ms)");
+		assertEquals(1, limiter.stats().throttled());
+	}
+
+	@Test
+	void readsRetryInfoFromErrorBody() {
+		GeminiRateLimiter limiter = newLimiter(1, 1, Duration.ofSeconds(1));
+		String body = """
+				{"error":{"code":429,"status":"RESOURCE_EXHAUSTED","details":[
+				  {"@type":"type.googleapis.com/google.rpc.QuotaFailure"},
+				  {"@type":"type.googleapis.com/google.rpc.RetryInfo","retryDelay":"7.5s"}]}}
+				""";
+		WebClientResponseException ex = WebClientResponseException.create(429, "Too Many Requests", new HttpHeaders(),
+				body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+
+		assertEquals(Duration.ofMillis(7500), limiter.retryDelay(ex));
+	}
+
+	private static WebClientResponseException tooManyRequests(String retryAfter) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+		return WebClientResponseException.create(429, "Too Many Requests", headers, new byte[0], StandardCharsets.UTF_8);
+	}
+}
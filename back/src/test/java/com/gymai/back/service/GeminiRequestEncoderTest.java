@@ -0,0 +1,51 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class GeminiRequestEncoderTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void encodesSameJsonAsMapSerialization() throws Exception {
+		for (String prompt : List.of("", "hola", "línea 1\nlínea 2\t\"citas\" \\ barra", "emoji 💪 y control \u0001", "x".repeat(10_000))) {
+			Map<String, Object> body = Map.of("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))));
+
+			DataBuffer buffer = GeminiRequestEncoder.encode(DefaultDataBufferFactory.sharedInstance, prompt);
+			String encoded = buffer.toString(StandardCharsets.UTF_8);
+			DataBufferUtils.release(buffer);
+
+			assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(body)), objectMapper.readTree(encoded));
+			assertEquals(prompt, objectMapper.readTree(encoded).at("/contents/0/parts/0/text").asText());
+		}
+	}
+
+	@Test
+	void budgetAddsGenerationConfig() throws Exception {
+		GenerationBudgets.Budget budget = new GenerationBudgets.Budget("plan", 4096, 0.4, List.of("FIN", "\"###\""),
+				Duration.ofSeconds(30));
+
+		DataBuffer buffer = GeminiRequestEncoder.encode(DefaultDataBufferFactory.sharedInstance, "cachedContents/abc", "hola", budget);
+		JsonNode body = objectMapper.readTree(buffer.toString(StandardCharsets.UTF_8));
+		DataBufferUtils.release(buffer);
+
+		assertEquals("cachedContents/abc", body.get("cachedContent").asText());
+		assertEquals("hola", body.at("/contents/0/parts/0/text").asText());
+		assertEquals(4096, body.at("/generationConfig/maxOutputTokens").asInt());
+		assertEquals(0.4, body.at("/generationConfig/temperature").asDouble());
+		assertEquals("\"###\"", body.at("/generationConfig/stopSequences/1").asText());
+	}
+}
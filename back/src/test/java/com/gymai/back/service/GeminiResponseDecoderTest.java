@@ -0,0 +1,46 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GeminiResponseDecoderTest {
+
+	@Test
+	void extractsOnlyFirstCandidatePartTexts() throws Exception {
+		String json = """
+				{"usageMetadata":{"promptTokenCount":12,"details":[{"a":1}]},
+				 "candidates":[
+				   {"finishReason":null,"safetyRatings":[{"category":"X","probability":"LOW"}],
+				    "content":{"role":"model","parts":[{"text":"Hola, "},{"inlineData":{"data":"…"}},{"text":"\\"atleta\\"\\n"}]}},
+				   {"content":{"parts":[{"text":"otra candidata"}]}}
+				 ],
+				 "modelVersion":"gemini-2.0-flash"}
+				""";
+
+		List<String> texts = new ArrayList<>();
+		GeminiResponseDecoder.readTexts(json, texts::add);
+
+		assertEquals(List.of("Hola, ", "\"atleta\"\n"), texts);
+	}
+
+	@Test
+	void ignoresChunksWithoutTextAndSkipsEmptyParts() throws Exception {
+		List<String> texts = new ArrayList<>();
+		GeminiResponseDecoder.readTexts("{\"candidates\":[]}", texts::add);
+		GeminiResponseDecoder.readTexts("{\"candidates\":[{\"finishReason\":\"STOP\"}]}", texts::add);
+		GeminiResponseDecoder.readTexts("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"\"}]}}]}", texts::add);
+		GeminiResponseDecoder.readTexts("{\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}", texts::add);
+
+		assertTrue(texts.isEmpty());
+	}
+
+	@Test
+	void malformedChunkFails() {
+		assertThrows(Exception.class,
+				() -> GeminiResponseDecoder.readTexts("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":", t -> {}));
+	}
+}
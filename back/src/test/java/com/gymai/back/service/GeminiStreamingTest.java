@@ -0,0 +1,214 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.gymai.back.support.GeminiStubServer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * El streaming debe reenviar cada evento SSE de Gemini en cuanto llega, no al terminar
+ * la respuesta completa.
+ */
+class GeminiStreamingTest {
+
+	private static final long PAUSE_MS = 800;
+
+	private GeminiStubServer stub;
+	private ExecutorService executor;
+	private GeminiChatService service;
+	private final AtomicReference<String> query = new AtomicReference<>();
+	private final AtomicReference<String> body = new AtomicReference<>();
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		stub = new GeminiStubServer();
+		stub.handle("/v1beta/models/", exchange -> {
+			query.set(exchange.getRequestURI().getQuery());
+			body.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(event("Primer ").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				GeminiStubServer.sleep(PAUSE_MS);
+				out.write(event("trozo").getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		executor = Executors.newSingleThreadExecutor();
+		HttpClient httpClient = HttpClient.create()
+				.doOnConnected(connection -> connection.addHandlerFirst("countBytes", new ChannelInboundHandlerAdapter() {
+					@Override
+					public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+						if (msg instanceof ByteBuf buf) {
+							bytesRead.addAndGet(buf.readableBytes());
+						} else if (msg instanceof ByteBufHolder holder) {
+							bytesRead.addAndGet(holder.content().readableBytes());
+						}
+						super.channelRead(ctx, msg);
+					}
+				}));
+		service = newService(stub.baseUrl(), executor, httpClient);
+	}
+
+	@AfterEach
+	void tearDown() {
+		stub.close();
+		executor.shutdown();
+	}
+
+	@Test
+	void firstFragmentArrivesBeforeUpstreamFinishes() {
+		long start = System.nanoTime();
+		List<Long> arrivals = service.streamChatbotResponse("hola")
+				.map(fragment -> System.nanoTime() - start)
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		assertEquals(2, arrivals.size());
+		long firstMs = Duration.ofNanos(arrivals.get(0)).toMillis();
+		assertTrue(firstMs < PAUSE_MS / 2, "el primer fragmento llegó a los " + firstMs + " ms");
+		assertTrue(arrivals.get(1) - arrivals.get(0) >= Duration.ofMillis(PAUSE_MS / 2).toNanos());
+		assertTrue(query.get().contains("alt=sse"));
+		assertEquals(1, service.firstTokenStats().count());
+	}
+
+	@Test
+	void fragmentsAreDecodedInOrder() {
+		String reply = String.join("", service.streamChatbotResponse("hola").collectList().block(Duration.ofSeconds(10)));
+
+		assertEquals("Primer trozo", reply);
+	}
+
+	@Test
+	void deadlineEndsStreamCleanlyAndSkipsCache() {
+		GenerationBudgets.Budget budget = new GenerationBudgets.Budget("chat", 256, 1.0, List.of(),
+				Duration.ofMillis(PAUSE_MS / 2));
+
+		AtomicBoolean cut = new AtomicBoolean();
+		List<String> fragments = service.streamChatbotResponse(PromptBuilder.Prompt.of("hola"), budget)
+				.onErrorResume(GenerationBudgets.DeadlineExceededException.class, e -> {
+					cut.set(true);
+					return Flux.empty();
+				})
+				.collectList().block(Duration.ofSeconds(5));
+
+		// El corte se señala aparte: el texto es sólo lo que llegó de Gemini.
+		assertEquals(List.of("Primer "), fragments);
+		assertTrue(cut.get());
+		assertTrue(body.get().contains("\"maxOutputTokens\":256"));
+		// Sin caché: la siguiente llamada vuelve a ir a Gemini.
+		String full = String.join("", service.streamChatbotResponse(PromptBuilder.Prompt.of("hola"))
+				.collectList().block(Duration.ofSeconds(10)));
+		assertEquals("Primer trozo", full);
+	}
+
+	@Test
+	void abandonedStreamCancelsUpstreamAndKeepsTruncatedReply() throws Exception {
+		AtomicInteger written = new AtomicInteger();
+		stub.handle("/v1beta/models/", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				for (int i = 0; i < 20; i++) {
+					out.write(event("trozo" + i + " ").getBytes(StandardCharsets.UTF_8));
+					out.flush();
+					written.incrementAndGet();
+					GeminiStubServer.sleep(100);
+				}
+			} catch (IOException clientGone) {
+				// El cliente cerró la conexión: es lo que se espera.
+			}
+		});
+		// Plazo largo mientras arranca la llamada (la primera en una JVM fría tarda), para
+		// que no se cancele antes de que el cliente llegue a conectarse
+		StreamRegistry registry = StreamRegistryTest.newRegistry(16, Duration.ofMinutes(1));
+		AtomicReference<String> stored = new AtomicReference<>();
+		AtomicBoolean truncated = new AtomicBoolean();
+
+		// Se anota lo leído en cuanto la cancelación del registro ha llegado a la llamada a Gemini
+		CountDownLatch upstreamCancelled = new CountDownLatch(1);
+		AtomicLong bytesAfterCancel = new AtomicLong(-1);
+		AtomicInteger writtenAfterCancel = new AtomicInteger(-1);
+		Flux<String> upstream = service.streamChatbotResponse("hola").doFinally(signal -> {
+			if (signal == SignalType.CANCEL) {
+				bytesAfterCancel.set(bytesRead.get());
+				writtenAfterCancel.set(written.get());
+				upstreamCancelled.countDown();
+			}
+		});
+
+		String id = registry.start("s1", upstream, (reply, cut) -> {
+			stored.set(reply);
+			truncated.set(cut);
+		});
+		// El cliente lee el primer fragmento y se va: el abandono se mide desde ahí con un plazo corto
+		ReflectionTestUtils.setField(registry, "detachGrace", Duration.ofMillis(100));
+		registry.chunks(id).take(1).blockLast(Duration.ofSeconds(10));
+		assertTrue(upstreamCancelled.await(5, TimeUnit.SECONDS), "el registro debe cancelar la llamada");
+		Thread.sleep(1000);
+
+		// Un evento que ya estaba en el bucle de Netty puede leerse aún tras la cancelación, pero no más
+		// (holgura para el encuadre chunked de cada trozo)
+		long oneEvent = event("trozo19 ").getBytes(StandardCharsets.UTF_8).length + 16;
+		assertTrue(bytesRead.get() - bytesAfterCancel.get() <= oneEvent,
+				"se siguieron leyendo bytes de Gemini tras cancelar: " + bytesAfterCancel.get() + " -> " + bytesRead.get());
+		assertTrue(written.get() <= writtenAfterCancel.get() + 2, "el servidor siguió escribiendo: " + written.get());
+		assertTrue(written.get() < 20);
+		assertTrue(truncated.get());
+		assertTrue(stored.get().startsWith("trozo0 "));
+		assertEquals(1, registry.stats().cancelled());
+		assertEquals(0, service.bulkheadStats().get("stream").active());
+	}
+
+	/**
+	 * Servicio sin caché de contexto ni peticiones cubiertas que llama a {@code baseUrl}.
+	 */
+	static GeminiChatService newService(String baseUrl, ExecutorService executor, HttpClient httpClient) {
+		GeminiChatService service = new GeminiChatService(new ResponseCache(), new SingleFlight(),
+				GeminiRateLimiterTest.newLimiter(4, 10, Duration.ofSeconds(5)),
+				GeminiCircuitBreakerTest.newBreaker(20, 10, Duration.ofSeconds(30), 3), executor,
+				WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build(), httpClient,
+				new GeminiHedger(), new GeminiContextCache(null));
+		ReflectionTestUtils.setField(service, "apiKey", "test-key");
+		ReflectionTestUtils.setField(service, "modelName", "gemini-test");
+		ReflectionTestUtils.setField(service, "baseUrl", baseUrl);
+		ReflectionTestUtils.setField(service, "chatMaxConcurrent", 10);
+		ReflectionTestUtils.setField(service, "streamMaxConcurrent", 10);
+		service.init();
+		return service;
+	}
+
+	static String event(String text) {
+		return "data: " + GeminiStubServer.generateContentJson(text) + "\r\n\r\n";
+	}
+}
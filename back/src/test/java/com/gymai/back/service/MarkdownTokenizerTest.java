@@ -0,0 +1,169 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MarkdownTokenizerTest {
+
+	/** Respuestas de Gemini guardadas tal cual, más un fichero de casos límite. */
+	private static final List<String> CORPUS = List.of("rutina-fuerza.md", "plan-hipertrofia.md", "dieta-crlf.md",
+			"respuesta-corta.md", "casos-limite.md", "separadores.md");
+
+	@Test
+	void matchesTheLegacyParserOnTheCorpus() throws IOException {
+		for (String name : CORPUS) {
+			String reply = load(name);
+
+			assertEquals(legacyEvents(reply), events(reply), name);
+		}
+	}
+
+	@Test
+	void emitsBlocksInOrder() {
+		String reply = "## Rutina\n**Objetivo:** fuerza\n| Ejercicio | Series |\n|---|---|\n| Sentadilla | 4 |\n"
+				+ "| Press | 3 |\n- Descanso: 2 min\n- Calienta bien\n1. Apunta los pesos\n### Notas\n";
+
+		assertEquals(List.of("h2 Rutina", "text Objetivo: fuerza", "header [Ejercicio, Series]",
+				"row 2 [Sentadilla, 4]", "row 3 [Press, 3]", "end", "kv Descanso = 2 min", "bullet Calienta bien",
+				"num 1 Apunta los pesos", "h3 Notas"), events(reply));
+	}
+
+	@Test
+	void splitsInlineBulletsIntoItems() {
+		assertEquals(List.of("text Macros", "kv Proteína = 140 g", "kv Grasas = 60 g"),
+				events("Macros • Proteína: 140 g • Grasas: 60 g"));
+	}
+
+	@Test
+	void closesATableLeftOpenAtTheEnd() {
+		assertEquals(List.of("header [a, b]", "row 2 [1, 2]", "end"), events("| a | b |\r\n|--|--|\r\n| 1 | 2 |"));
+	}
+
+	private static List<String> events(String content) {
+		Recorder recorder = new Recorder();
+		MarkdownTokenizer.tokenize(content, recorder);
+		return recorder.events;
+	}
+
+	private static String load(String name) throws IOException {
+		try (InputStream in = MarkdownTokenizerTest.class.getResourceAsStream("/gemini-replies/" + name)) {
+			assertNotNull(in, name);
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static final class Recorder implements MarkdownTokenizer.Handler {
+
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		public void heading(int level, String text) {
+			events.add("h" + level + " " + text);
+		}
+
+		@Override
+		public void bullet(String text) {
+			events.add("bullet " + text);
+		}
+
+		@Override
+		public void keyValue(String label, String value) {
+			events.add("kv " + label + " = " + value);
+		}
+
+		@Override
+		public void numbered(String number, String text) {
+			events.add("num " + number + " " + text);
+		}
+
+		@Override
+		public void text(String text) {
+			events.add("text " + text);
+		}
+
+		@Override
+		public void tableHeader(List<String> cells) {
+			events.add("header " + cells);
+		}
+
+		@Override
+		public void tableRow(int index, List<String> cells) {
+			events.add("row " + index + " " + cells);
+		}
+
+		@Override
+		public void tableEnd() {
+			events.add("end");
+		}
+	}
+
+	/**
+	 * El parser que tenía {@code PdfService} antes del tokenizador, con las mismas
+	 * expresiones regulares y la misma normalización, emitiendo los mismos eventos.
+	 */
+	private static List<String> legacyEvents(String content) {
+		Recorder out = new Recorder();
+		String normalized = content.replace("```markdown", "").replace("```", "").replace("**", "").replace("•", "\n- ");
+		List<String> tableBuffer = new ArrayList<>();
+		boolean inTable = false;
+		for (String rawLine : normalized.split("\r?\n")) {
+			String line = rawLine.trim();
+			if (line.isEmpty()) continue;
+			if (line.startsWith("|")) {
+				inTable = true;
+				tableBuffer.add(line);
+				continue;
+			} else if (inTable) {
+				legacyTable(tableBuffer, out);
+				tableBuffer.clear();
+				inTable = false;
+			}
+			if (line.startsWith("## ")) {
+				out.heading(2, line.substring(3).trim());
+			} else if (line.startsWith("### ")) {
+				out.heading(3, line.substring(4).trim());
+			} else if (line.startsWith("- ") || line.startsWith("* ")) {
+				String itemText = line.substring(2).trim();
+				int colonIndex = itemText.indexOf(":");
+				if (colonIndex > 0 && colonIndex < 40) {
+					out.keyValue(itemText.substring(0, colonIndex).trim(), itemText.substring(colonIndex + 1).trim());
+				} else {
+					out.bullet(itemText);
+				}
+			} else if (line.matches("^\\d+\\.\\s.*")) {
+				int dotIndex = line.indexOf(".");
+				out.numbered(line.substring(0, dotIndex), line.substring(dotIndex + 1).trim());
+			} else {
+				out.text(line);
+			}
+		}
+		if (inTable && !tableBuffer.isEmpty()) {
+			legacyTable(tableBuffer, out);
+		}
+		return out.events;
+	}
+
+	private static void legacyTable(List<String> markdownLines, Recorder out) {
+		out.tableHeader(Arrays.stream(markdownLines.get(0).split("\\|")).map(String::trim).filter(s -> !s.isEmpty())
+				.toList());
+		for (int i = 1; i < markdownLines.size(); i++) {
+			String rowLine = markdownLines.get(i);
+			if (rowLine.replaceAll("[|\\-\\s:]", "").isEmpty()) {
+				continue;
+			}
+			String temp = rowLine;
+			if (temp.startsWith("|")) temp = temp.substring(1);
+			if (temp.endsWith("|")) temp = temp.substring(0, temp.length() - 1);
+			out.tableRow(i, Arrays.stream(temp.split("\\|")).map(String::trim).toList());
+		}
+		out.tableEnd();
+	}
+}
@@ -0,0 +1,158 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class PdfCacheTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void keyCoversTitleDateAndExactContent() {
+		LocalDate day = LocalDate.of(2025, 3, 14);
+		String key = PdfCache.keyFor("Plan GymAI", "## Día 1", day);
+
+		assertEquals(key, PdfCache.keyFor("Plan GymAI", "## Día 1", day));
+		assertNotEquals(key, PdfCache.keyFor("Plan GymAI", "## Día 1", day.plusDays(1)));
+		assertNotEquals(key, PdfCache.keyFor("Plan GymAI", "## Día  1", day));
+		assertNotEquals(key, PdfCache.keyFor("Plan", "## Día 1", day));
+		assertNotEquals(key, PdfCache.keyFor(PdfService.RENDER_VERSION + 1, "Plan GymAI", "## Día 1", day),
+				"otra maquetación es otro PDF");
+		assertEquals("\"" + key + "\"", PdfCache.etag(key));
+	}
+
+	@Test
+	void renderWritesThroughAndCachesTheSameBytes() {
+		PdfCache cache = newCache(1 << 20, null, 0);
+		PdfService pdfService = new PdfService();
+		LocalDate day = LocalDate.of(2025, 3, 14);
+		String key = PdfCache.keyFor("Plan GymAI", PdfServiceTest.samplePlan(2), day);
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+		assertNull(cache.get(key));
+		cache.render(key, response, out -> pdfService.writePlanPdf("Plan GymAI", PdfServiceTest.samplePlan(2), day, out));
+
+		assertArrayEquals(response.toByteArray(), cache.get(key));
+		assertEquals(1, cache.stats().hits());
+		assertEquals(1, cache.stats().misses());
+	}
+
+	@Test
+	void renderWithDiskStreamsTheCopyToAFile() throws IOException {
+		PdfCache cache = newCache(1 << 20, dir, 1 << 20);
+		PdfService pdfService = new PdfService();
+		LocalDate day = LocalDate.of(2025, 3, 14);
+		String key = PdfCache.keyFor("Plan GymAI", PdfServiceTest.samplePlan(2), day);
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+		cache.render(key, response, out -> pdfService.writePlanPdf("Plan GymAI", PdfServiceTest.samplePlan(2), day, out));
+
+		assertArrayEquals(response.toByteArray(), Files.readAllBytes(versionDir().resolve(key + ".pdf")));
+		assertEquals(0, cache.stats().entries(), "la copia va a disco, no a memoria");
+		assertArrayEquals(response.toByteArray(), cache.get(key));
+		assertEquals(1, cache.stats().diskHits());
+		try (var files = Files.list(versionDir())) {
+			assertEquals(1, files.count(), "no quedan temporales");
+		}
+	}
+
+	@Test
+	void renderWithoutDiskStopsCopyingPastTheMemoryLimit() {
+		PdfCache cache = newCache(1000, null, 0);
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+		cache.render("k", response, out -> new PdfService().writePlanPdf("Plan GymAI", PdfServiceTest.samplePlan(2), out));
+
+		assertTrue(response.size() > 1000, "la respuesta sale entera");
+		assertNull(cache.get("k"));
+		assertEquals(1, cache.stats().evictions());
+	}
+
+	@Test
+	void filesOfOtherRenderVersionsAreDeletedOnStart() throws IOException {
+		Path old = Files.createDirectories(dir.resolve("v" + (PdfService.RENDER_VERSION - 1)));
+		Files.write(old.resolve("a.pdf"), pdf('a', 100));
+		Files.write(dir.resolve("b.pdf"), pdf('b', 100));
+
+		PdfCache cache = newCache(1 << 20, dir, 1 << 20);
+
+		assertFalse(Files.exists(old.resolve("a.pdf")));
+		assertFalse(Files.exists(dir.resolve("b.pdf")));
+		assertEquals(0, cache.stats().diskEntries());
+	}
+
+	@Test
+	void failedRenderIsNotCached() {
+		PdfCache cache = newCache(1 << 20, null, 0);
+
+		assertThrows(RuntimeException.class, () -> cache.render("k", new ByteArrayOutputStream(), out -> {
+			throw new RuntimeException("Error generating PDF");
+		}));
+
+		assertNull(cache.get("k"));
+	}
+
+	@Test
+	void evictedPdfsSpillToDiskAndComeBack() throws IOException {
+		PdfCache cache = newCache(250, dir, 1 << 20);
+		cache.put("a", pdf('a', 100));
+		cache.put("b", pdf('b', 100));
+		cache.put("c", pdf('c', 100));
+
+		assertTrue(Files.exists(versionDir().resolve("a.pdf")), "a es la menos usada y debe pasar a disco");
+		assertEquals(1, cache.stats().spilled());
+		assertEquals(2, cache.stats().entries());
+
+		assertArrayEquals(pdf('a', 100), cache.get("a"));
+		assertEquals(1, cache.stats().diskHits());
+		assertEquals(2, cache.stats().entries(), "a vuelve a memoria y expulsa a b");
+		assertArrayEquals(pdf('b', 100), cache.get("b"));
+	}
+
+	@Test
+	void diskIsBoundedAndReusedAfterRestart() {
+		PdfCache cache = newCache(0, dir, 250);
+		cache.put("a", pdf('a', 100));
+		cache.put("b", pdf('b', 100));
+		cache.put("c", pdf('c', 100));
+
+		assertFalse(Files.exists(versionDir().resolve("a.pdf")), "el disco también es un LRU por bytes");
+		assertEquals(2, cache.stats().diskEntries());
+		assertEquals(200, cache.stats().diskBytes());
+
+		PdfCache restarted = newCache(1 << 20, dir, 250);
+		assertArrayEquals(pdf('c', 100), restarted.get("c"));
+		assertNull(restarted.get("a"));
+	}
+
+	private Path versionDir() {
+		return dir.resolve("v" + PdfService.RENDER_VERSION);
+	}
+
+	private static byte[] pdf(char fill, int size) {
+		byte[] bytes = new byte[size];
+		Arrays.fill(bytes, (byte) fill);
+		return bytes;
+	}
+
+	static PdfCache newCache(long maxBytes, Path dir, long maxDiskBytes) {
+		PdfCache cache = new PdfCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+		ReflectionTestUtils.setField(cache, "dir", dir == null ? "" : dir.toString());
+		ReflectionTestUtils.setField(cache, "maxDiskBytes", maxDiskBytes);
+		cache.init();
+		return cache;
+	}
+}
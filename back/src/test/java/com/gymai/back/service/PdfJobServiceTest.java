@@ -0,0 +1,214 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class PdfJobServiceTest {
+
+	private static final LocalDate DAY = LocalDate.of(2025, 3, 14);
+
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(1));
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void jobRendersInTheBackgroundForItsSessionOnly() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+
+		PdfJobService.Job job = jobs.submit("s1", "Plan GymAI", PdfServiceTest.samplePlan(2), DAY);
+		PdfJobService.Job done = await(jobs, "s1", job.id());
+
+		assertEquals(PdfJobService.State.DONE, done.state());
+		assertEquals("%PDF-", new String(pdfOf(jobs, done), 0, 5, StandardCharsets.US_ASCII));
+		assertEquals(PdfCache.keyFor("Plan GymAI", PdfServiceTest.samplePlan(2), DAY), done.key());
+		assertNull(jobs.get("s2", job.id()), "otra sesión no ve el trabajo");
+	}
+
+	@Test
+	void cachedPlansAreDoneImmediately() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+		await(jobs, "s1", jobs.submit("s1", "Plan GymAI", "## Día 1", DAY).id());
+
+		PdfJobService.Job again = jobs.submit("s1", "Plan GymAI", "## Día 1", DAY);
+
+		assertEquals(PdfJobService.State.DONE, again.state());
+		assertEquals(1, jobs.stats().cached());
+	}
+
+	@Test
+	void rejectsJobsWhenTheQueueIsFull() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+		CountDownLatch busy = new CountDownLatch(1);
+		executor.execute(() -> {
+			try {
+				busy.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		PdfJobService.Job queued = jobs.submit("s1", "Plan GymAI", "## Día 1", DAY);
+		assertThrows(PdfJobService.QueueFullException.class, () -> jobs.submit("s1", "Plan GymAI", "## Día 2", DAY));
+
+		assertEquals(PdfJobService.State.QUEUED, jobs.get("s1", queued.id()).state());
+		assertEquals(1, jobs.stats().rejected());
+		busy.countDown();
+		assertEquals(PdfJobService.State.DONE, await(jobs, "s1", queued.id()).state());
+	}
+
+	@Test
+	void finishedJobsExpire() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMillis(50));
+		String id = jobs.submit("s1", "Plan GymAI", "## Día 1", DAY).id();
+		await(jobs, "s1", id);
+
+		Thread.sleep(100);
+
+		assertNull(jobs.get("s1", id));
+		assertEquals(1, jobs.stats().expired());
+	}
+
+	@Test
+	void retainedJobsAreCappedOldestFirst() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+		ReflectionTestUtils.setField(jobs, "maxRetained", 2);
+		String first = jobs.submit("s1", "Plan GymAI", "## Día 1", DAY).id();
+		await(jobs, "s1", first);
+		Thread.sleep(5);
+		String second = jobs.submit("s1", "Plan GymAI", "## Día 1", DAY).id();
+		Thread.sleep(5);
+		String third = jobs.submit("s1", "Plan GymAI", "## Día 1", DAY).id();
+
+		assertNull(jobs.get("s1", first), "el más antiguo se olvida");
+		assertNotNull(jobs.get("s1", second));
+		assertNotNull(jobs.get("s1", third));
+		assertEquals(1, jobs.stats().evicted());
+		assertEquals(2, jobs.stats().retained());
+	}
+
+	@Test
+	void pdfOutOfTheCacheIsRenderedAgain() throws Exception {
+		// Sin memoria ni disco: nada llega a quedarse en la caché
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5), PdfCacheTest.newCache(0, null, 0));
+		PdfJobService.Job done = await(jobs, "s1", jobs.submit("s1", "Plan GymAI", PdfServiceTest.samplePlan(1), DAY).id());
+
+		byte[] pdf = pdfOf(jobs, done);
+
+		assertEquals("%PDF-", new String(pdf, 0, 5, StandardCharsets.US_ASCII));
+		assertEquals(1, jobs.stats().rerendered());
+	}
+
+	@Test
+	void jobDoneAtLookupIsWrittenEvenIfForgottenAfterwards() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMillis(50), PdfCacheTest.newCache(0, null, 0));
+		PdfJobService.Job done = await(jobs, "s1", jobs.submit("s1", "Plan GymAI", PdfServiceTest.samplePlan(1), DAY).id());
+
+		Thread.sleep(100);
+		assertEquals(0, jobs.stats().retained(), "el trabajo ya caducó");
+
+		assertEquals("%PDF-", new String(pdfOf(jobs, done), 0, 5, StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void reservedRenderRunsOnThePdfPoolAndWaits() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+		AtomicReference<String> thread = new AtomicReference<>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		jobs.reserve(sink -> {
+			thread.set(Thread.currentThread().getName());
+			new PdfService().writePlanPdf("Plan GymAI", "## Día 1", DAY, sink);
+		}).writeTo(out);
+
+		assertNotEquals(Thread.currentThread().getName(), thread.get());
+		assertEquals("%PDF-", new String(out.toByteArray(), 0, 5, StandardCharsets.US_ASCII));
+		PdfJobService.Reservation broken = jobs.reserve(sink -> {
+			throw new IllegalStateException("roto");
+		});
+		IllegalStateException failure = assertThrows(IllegalStateException.class,
+				() -> broken.writeTo(new ByteArrayOutputStream()));
+		assertEquals("roto", failure.getMessage());
+	}
+
+	@Test
+	void reserveIsRejectedWhenTheQueueIsFull() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+		CountDownLatch busy = new CountDownLatch(1);
+		for (int i = 0; i < 2; i++) {
+			executor.execute(() -> {
+				try {
+					busy.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+		assertThrows(PdfJobService.QueueFullException.class, () -> jobs.reserve(sink -> fail("no debe generarse")));
+		assertEquals(1, jobs.stats().rejected());
+		busy.countDown();
+	}
+
+	@Test
+	void unclaimedReservationIsReleased() throws Exception {
+		PdfJobService jobs = newJobs(Duration.ofMinutes(5));
+		ReflectionTestUtils.setField(jobs, "reservationTimeout", Duration.ofMillis(50));
+
+		PdfJobService.Reservation render = jobs.reserve(sink -> fail("no debe generarse"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (executor.getCompletedTaskCount() < 1 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(1, executor.getCompletedTaskCount(), "el hilo del pool queda libre");
+		assertThrows(IOException.class, () -> render.writeTo(new ByteArrayOutputStream()));
+	}
+
+	private PdfJobService newJobs(Duration ttl) {
+		return newJobs(ttl, PdfCacheTest.newCache(1 << 20, null, 0));
+	}
+
+	private PdfJobService newJobs(Duration ttl, PdfCache cache) {
+		PdfJobService jobs = new PdfJobService(executor, new PdfService(), cache);
+		ReflectionTestUtils.setField(jobs, "ttl", ttl);
+		ReflectionTestUtils.setField(jobs, "maxRetained", 1000);
+		ReflectionTestUtils.setField(jobs, "reservationTimeout", Duration.ofSeconds(30));
+		return jobs;
+	}
+
+	private static byte[] pdfOf(PdfJobService jobs, PdfJobService.Job job) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		jobs.writePdf(job, out);
+		return out.toByteArray();
+	}
+
+	private static PdfJobService.Job await(PdfJobService jobs, String sessionId, String id) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		PdfJobService.Job job = jobs.get(sessionId, id);
+		while (job != null && (job.state() == PdfJobService.State.QUEUED || job.state() == PdfJobService.State.RUNNING)
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(10);
+			job = jobs.get(sessionId, id);
+		}
+		assertNotNull(job);
+		return job;
+	}
+}
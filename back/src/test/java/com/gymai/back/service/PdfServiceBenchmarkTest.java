@@ -0,0 +1,48 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.OutputStream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.lowagie.text.pdf.PdfReader;
+
+/**
+ * Rendimiento de la exportación de planes a PDF. Se ejecuta con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class PdfServiceBenchmarkTest {
+
+	private final PdfService pdfService = new PdfService();
+
+	/**
+	 * Páginas por segundo al renderizar un plan de dieta de unas diez páginas.
+	 */
+	@Test
+	void tenPageDietPlanThroughput() throws Exception {
+		String plan = PdfServiceTest.sampleDietPlan(10);
+		int pages;
+		try (PdfReader reader = new PdfReader(pdfService.generatePlanPdf("Plan de dieta", plan))) {
+			pages = reader.getNumberOfPages();
+		}
+		for (int i = 0; i < 30; i++) {
+			pdfService.writePlanPdf("Plan de dieta", plan, OutputStream.nullOutputStream());
+		}
+
+		int renders = 0;
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < 2_000_000_000L) {
+			pdfService.writePlanPdf("Plan de dieta", plan, OutputStream.nullOutputStream());
+			renders++;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long allocated = PdfServiceTest.allocatedBy(
+				() -> pdfService.writePlanPdf("Plan de dieta", plan, OutputStream.nullOutputStream()));
+
+		System.out.printf("Plan de %d páginas: %.1f PDF/s, %.0f páginas/s, %d KB reservados por PDF%n", pages,
+				renders / seconds, renders * pages / seconds, allocated / 1024);
+		assertTrue(pages >= 8 && pages <= 12, "el plan de ejemplo debería ocupar unas diez páginas: " + pages);
+	}
+}
@@ -0,0 +1,226 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.gymai.back.model.ChatMessage;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.SimpleBookmark;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+
+class PdfServiceTest {
+
+	private final PdfService pdfService = new PdfService();
+
+	/**
+	 * Plan largo de ejemplo con todo lo que entiende el parser: secciones, tablas, listas
+	 * con y sin etiqueta, numeradas y texto normal.
+	 */
+	static String samplePlan(int weeks) {
+		StringBuilder plan = new StringBuilder("## Plan de entrenamiento\n");
+		for (int w = 1; w <= weeks; w++) {
+			plan.append("### Semana ").append(w).append('\n')
+					.append("| Día | Ejercicio | Series | Repeticiones |\n")
+					.append("|-----|-----------|--------|--------------|\n");
+			for (int d = 1; d <= 5; d++) {
+				plan.append("| Día ").append(d).append(" | Sentadilla con barra | 4 | 8-10 |\n");
+			}
+			plan.append("- Descanso: 90 segundos entre series\n")
+					.append("- Calienta siempre antes de empezar la sesión principal\n")
+					.append("1. Mantén la espalda recta durante todo el movimiento\n")
+					.append("Progresa la carga un 2,5 % cuando completes todas las series.\n");
+		}
+		return plan.toString();
+	}
+
+	/**
+	 * Plan de dieta realista de unas diez páginas: por día, tabla de comidas, macros como
+	 * pares etiqueta/valor, consejos en viñetas y pasos numerados.
+	 */
+	static String sampleDietPlan(int days) {
+		StringBuilder plan = new StringBuilder("## Plan de alimentación\n")
+				.append("Objetivo: déficit moderado manteniendo la proteína alta.\n");
+		for (int d = 1; d <= days; d++) {
+			plan.append("## Día ").append(d).append('\n')
+					.append("| Comida | Opción 1 | Opción 2 | Calorías aprox. |\n")
+					.append("|---|---|---|---|\n")
+					.append("| Desayuno | Avena con yogur y fruta | Tostadas integrales con huevo | 450 |\n")
+					.append("| Media mañana | Puñado de nueces | Queso fresco batido | 200 |\n")
+					.append("| Comida | Pollo con arroz y verduras | Lentejas con verduras | 650 |\n")
+					.append("| Merienda | Fruta y almendras | Yogur griego | 200 |\n")
+					.append("| Cena | Salmón con patata | Tortilla con ensalada | 550 |\n")
+					.append("### Macros del día\n")
+					.append("- Proteína: 150 g\n")
+					.append("- Carbohidratos: 220 g\n")
+					.append("- Grasas: 70 g\n")
+					.append("- Agua: 2,5 litros\n")
+					.append("### Consejos\n")
+					.append("- Prepara las comidas del día siguiente por la noche\n")
+					.append("- Prioriza alimentos poco procesados y ricos en fibra\n")
+					.append("- Ajusta las raciones si el peso se estanca dos semanas\n")
+					.append("1. Pesa los alimentos en crudo la primera semana\n")
+					.append("2. Registra lo que comes en una app\n")
+					.append("Recuerda que la constancia importa más que la perfección.\n");
+		}
+		return plan.toString();
+	}
+
+	@Test
+	void streamingWritesTheSamePdfAsTheBufferedPath() {
+		String plan = samplePlan(4);
+		byte[] buffered = pdfService.generatePlanPdf("Plan GymAI", plan);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+
+		pdfService.writePlanPdf("Plan GymAI", plan, streamed);
+
+		assertTrue(new String(streamed.toByteArray(), 0, 5, StandardCharsets.US_ASCII).startsWith("%PDF-"));
+		// Sólo cambian el id del documento y la fecha de creación.
+		assertEquals(buffered.length, streamed.size(), 64);
+	}
+
+	@Test
+	void streamingDoesNotCloseTheResponseStream() {
+		AtomicLong written = new AtomicLong();
+		boolean[] closed = {false};
+		OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) {
+				written.incrementAndGet();
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				written.addAndGet(len);
+			}
+
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		pdfService.writePlanPdf("Plan GymAI", samplePlan(1), out);
+
+		assertTrue(written.get() > 0);
+		assertFalse(closed[0]);
+	}
+
+	/**
+	 * Memoria reservada por exportación escribiendo a un destino que descarta los bytes
+	 * (como el socket de la respuesta) frente a generar el byte[] completo.
+	 */
+	@Test
+	void streamingExportAllocatesLessThanBuffering() {
+		String plan = samplePlan(40);
+		int pdfSize = pdfService.generatePlanPdf("Plan GymAI", plan).length;
+
+		long buffered = Long.MAX_VALUE;
+		long streamed = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			buffered = Math.min(buffered, allocatedBy(() -> pdfService.generatePlanPdf("Plan GymAI", plan)));
+			streamed = Math.min(streamed, allocatedBy(() -> pdfService.writePlanPdf("Plan GymAI", plan, OutputStream.nullOutputStream())));
+		}
+
+		assertTrue(buffered - streamed >= pdfSize,
+				"se esperaba ahorrar al menos el tamaño del PDF: " + buffered + " frente a " + streamed);
+	}
+
+	/**
+	 * Cada viñeta y cada par etiqueta/valor va en su propia tabla, con su separación: el
+	 * plan de dieta de ejemplo ocupa lo mismo que con la maquetación original.
+	 */
+	@Test
+	void dietPlanKeepsItsOriginalLayout() throws Exception {
+		try (PdfReader reader = new PdfReader(pdfService.generatePlanPdf("Plan de dieta", sampleDietPlan(10)))) {
+			assertEquals(9, reader.getNumberOfPages());
+		}
+	}
+
+	@Test
+	void conversationExportHasATableOfContentsAndBookmarks() throws Exception {
+		List<ChatMessage> messages = conversation(3, 1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		pdfService.writeConversationPdf(messages, LocalDate.of(2025, 3, 14), out);
+
+		try (PdfReader reader = new PdfReader(out.toByteArray())) {
+			assertEquals(6, SimpleBookmark.getBookmarkList(reader).size());
+			String lastPage = new PdfTextExtractor(reader).getTextFromPage(reader.getNumberOfPages());
+			assertTrue(lastPage.contains("Índice"), lastPage);
+			assertTrue(lastPage.contains("Plan de entrenamiento"), "el índice muestra el comienzo de cada mensaje");
+		}
+	}
+
+	/**
+	 * La conversación sale hacia el cliente a medida que se genera: lo escrito al pedir el
+	 * mensaje de la mitad y al pedir el último crece con el número de mensajes, en vez de
+	 * quedarse a cero hasta cerrar el documento.
+	 */
+	@Test
+	void conversationExportStreamsMessageByMessage() {
+		List<ChatMessage> messages = conversation(25, 4);
+		AtomicLong written = new AtomicLong();
+		long[] writtenAt = new long[messages.size()];
+		Iterable<ChatMessage> tracked = () -> new Iterator<>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < messages.size();
+			}
+
+			@Override
+			public ChatMessage next() {
+				writtenAt[next] = written.get();
+				return messages.get(next++);
+			}
+		};
+		OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) {
+				written.incrementAndGet();
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				written.addAndGet(len);
+			}
+		};
+
+		pdfService.writeConversationPdf(tracked, LocalDate.of(2025, 3, 14), out);
+
+		long half = writtenAt[messages.size() / 2];
+		long last = writtenAt[messages.size() - 1];
+		assertTrue(half > 0.35 * last && last > 0.5 * written.get(),
+				"se esperaba enviar el PDF a medida que avanza: " + half + ", " + last + " de " + written.get());
+	}
+
+	private static List<ChatMessage> conversation(int replies, int weeks) {
+		List<ChatMessage> messages = new ArrayList<>();
+		for (int i = 0; i < replies; i++) {
+			ChatMessage question = new ChatMessage("user", "Hazme una rutina de " + weeks + " semanas");
+			question.setTimestamp("2025-03-14T10:" + String.format("%02d", i % 60) + ":00Z");
+			messages.add(question);
+			messages.add(new ChatMessage("bot", samplePlan(weeks)));
+		}
+		return messages;
+	}
+
+	static long allocatedBy(Runnable export) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long before = threads.getCurrentThreadAllocatedBytes();
+		export.run();
+		return threads.getCurrentThreadAllocatedBytes() - before;
+	}
+}
@@ -0,0 +1,70 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.gymai.back.model.UserProfile;
+
+class ProfileRegistryTest {
+
+	private static ProfileRegistry newRegistry(int maxEntries) {
+		ProfileRegistry registry = new ProfileRegistry(new PromptBuilder());
+		ReflectionTestUtils.setField(registry, "maxEntries", maxEntries);
+		return registry;
+	}
+
+	@Test
+	void versionOnlyChangesWhenContentChanges() {
+		ProfileRegistry registry = newRegistry(100);
+		UserProfile profile = new UserProfile(30, 180.0, 80.0, "definir", null, null);
+
+		ProfileRegistry.StoredProfile first = registry.put("s1", profile);
+		ProfileRegistry.StoredProfile again = registry.put("s1", profile);
+		ProfileRegistry.StoredProfile changed = registry.put("s1", new UserProfile(30, 180.0, 79.0, "definir", null, null));
+
+		assertEquals(1, first.version());
+		assertEquals(first, again);
+		assertEquals(2, changed.version());
+		assertNotEquals(first.hash(), changed.hash());
+		assertTrue(changed.prefix().startsWith("Eres GymAI"));
+		assertTrue(changed.prefix().contains("peso: 79 kg"));
+	}
+
+	@Test
+	void sameProfileFromAnotherSessionSharesTheRenderedPrefix() {
+		ProfileRegistry registry = newRegistry(100);
+		UserProfile profile = new UserProfile(25, null, null, "mantener", null, null);
+		String hash = registry.put("s1", profile).hash();
+
+		ProfileRegistry.StoredProfile found = registry.get("s2", hash);
+
+		assertNotNull(found);
+		assertSame(registry.get("s1", hash).prefix(), found.prefix());
+		assertEquals(hash, registry.put("s2", profile).hash());
+	}
+
+	@Test
+	void unknownOrEvictedHashesAreMisses() {
+		ProfileRegistry registry = newRegistry(1);
+		String oldHash = registry.put("s1", new UserProfile(20, null, null, null, null, null)).hash();
+		registry.put("s2", new UserProfile(40, null, null, null, null, null));
+
+		assertNull(registry.get("s3", "desconocido"));
+		assertNull(registry.get("s3", oldHash));
+		assertEquals(2, registry.stats().misses());
+	}
+
+	@Test
+	void missingOrInvalidSessionIdIsRejected() {
+		ProfileRegistry registry = newRegistry(100);
+		UserProfile profile = new UserProfile(30, null, null, null, null, null);
+		String hash = registry.put("s1", profile).hash();
+
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> registry.put(null, profile));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> registry.put("a/b", profile));
+		assertThrows(ChatService.InvalidSessionIdException.class, () -> registry.get(null, hash));
+		assertEquals(1, registry.stats().sessions());
+	}
+}
@@ -0,0 +1,53 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.gymai.back.model.ChatMessage;
+import com.gymai.back.model.ConversationContext;
+import com.gymai.back.model.UserProfile;
+
+class PromptBuilderTest {
+
+	private final PromptBuilder promptBuilder = new PromptBuilder();
+
+	@Test
+	void profileGoesToStablePrefixAndTurnToSuffix() {
+		String raw = "Perfil del usuario para entreno y dieta: 30 años, 80 kg.\n\nMensaje del usuario: ¿Qué desayuno?";
+		ConversationContext context = new ConversationContext("- user: hola", List.of(new ChatMessage("bot", "¡Hola!")));
+
+		PromptBuilder.Prompt prompt = promptBuilder.buildPrompt(context, raw);
+
+		assertTrue(prompt.prefix().startsWith("Eres GymAI"));
+		assertTrue(prompt.prefix().endsWith("30 años, 80 kg.\n"));
+		assertFalse(prompt.suffix().contains("80 kg"));
+		assertTrue(prompt.suffix().endsWith("bot: ¡Hola!\nuser: ¿Qué desayuno?\n"));
+		assertEquals(prompt.prefix() + prompt.suffix(), prompt.full());
+	}
+
+	@Test
+	void messageWithoutProfileKeepsSystemPromptAsPrefix() {
+		PromptBuilder.Prompt prompt = promptBuilder.buildPrompt(ConversationContext.empty(), "hola");
+
+		assertFalse(prompt.prefix().contains("Perfil"));
+		assertEquals("user: hola\n", prompt.suffix());
+	}
+
+	@Test
+	void registeredProfileRendersLikeTheEmbeddedOne() {
+		UserProfile profile = new UserProfile(30, 180.0, 80.5, "definir", " sedentaria ", null);
+		String raw = promptBuilder.renderProfile(profile) + "\n\nMensaje del usuario: ¿Qué desayuno?";
+
+		PromptBuilder.Prompt embedded = promptBuilder.buildPrompt(ConversationContext.empty(), raw);
+		PromptBuilder.Prompt registered = promptBuilder.buildPrompt(ConversationContext.empty(),
+				promptBuilder.profilePrefix(promptBuilder.renderProfile(profile)), "¿Qué desayuno?");
+
+		assertEquals("Perfil del usuario para entreno y dieta: edad: 30 años, altura: 180 cm, peso: 80.5 kg, "
+				+ "objetivo: definir, actividad diaria: sedentaria.", promptBuilder.renderProfile(profile));
+		assertEquals(embedded, registered);
+		assertEquals("", promptBuilder.renderProfile(new UserProfile(null, null, null, "", null, null)));
+	}
+}
@@ -0,0 +1,63 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ResponseCacheTest {
+
+	@Test
+	void normalizesWhitespaceInKeys() {
+		assertEquals(ResponseCache.keyFor("hola  mundo\n"), ResponseCache.keyFor(" hola mundo"));
+		assertNotEquals(ResponseCache.keyFor("hola mundo"), ResponseCache.keyFor("hola mundos"));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedByBytes() {
+		ResponseCache cache = newCache(3 * (96 + 2 * 64 + 2 * 100), Duration.ofMinutes(5));
+		String a = ResponseCache.keyFor("a"), b = ResponseCache.keyFor("b"), c = ResponseCache.keyFor("c"),
+				d = ResponseCache.keyFor("d");
+		cache.put(a, "x".repeat(100));
+		cache.put(b, "y".repeat(100));
+		cache.put(c, "z".repeat(100));
+		assertNotNull(cache.get(a));
+		cache.put(d, "w".repeat(100));
+
+		assertNull(cache.get(b), "b es la menos usada y debe expulsarse");
+		assertNotNull(cache.get(a));
+		assertEquals(1, cache.stats().evictions());
+		assertEquals(3, cache.stats().entries());
+	}
+
+	@Test
+	void expiredEntriesAreMisses() {
+		ResponseCache cache = newCache(1 << 20, Duration.ZERO);
+		String key = ResponseCache.keyFor("prompt");
+		cache.put(key, "respuesta");
+		assertNull(cache.get(key));
+		assertEquals(1, cache.stats().misses());
+	}
+
+	@Test
+	void replayNeverSplitsSurrogatePairs() {
+		ResponseCache cache = newCache(1 << 20, Duration.ofMinutes(5));
+		String reply = "a".repeat(63) + "🏋️" + "b".repeat(70);
+		List<String> chunks = cache.replay(reply).collectList().block();
+
+		assertEquals(reply, String.join("", chunks));
+		chunks.forEach(chunk -> assertFalse(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1))));
+	}
+
+	private static ResponseCache newCache(long maxBytes, Duration ttl) {
+		ResponseCache cache = new ResponseCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+		ReflectionTestUtils.setField(cache, "ttl", ttl);
+		ReflectionTestUtils.setField(cache, "replayChunkSize", 64);
+		return cache;
+	}
+}
@@ -0,0 +1,76 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class SingleFlightTest {
+
+	private final SingleFlight singleFlight = new SingleFlight();
+
+	@Test
+	void concurrentMonoCallersShareOneUpstreamCall() {
+		AtomicInteger calls = new AtomicInteger();
+		Mono<String> upstream = Mono.fromCallable(calls::incrementAndGet)
+				.delayElement(Duration.ofMillis(200))
+				.map(n -> "respuesta " + n);
+
+		List<String> replies = Flux.range(0, 50)
+				.flatMap(i -> singleFlight.mono("k", () -> upstream))
+				.collectList()
+				.block();
+
+		assertEquals(1, calls.get());
+		assertEquals(50, replies.size());
+		assertTrue(replies.stream().allMatch("respuesta 1"::equals));
+		assertEquals(0, singleFlight.stats().inFlight());
+
+		singleFlight.mono("k", () -> upstream).block();
+		assertEquals(2, calls.get(), "terminada la llamada, la siguiente vuelve a Gemini");
+	}
+
+	@Test
+	void monoEntryIsGoneBeforeTheResultIsDelivered() {
+		AtomicInteger calls = new AtomicInteger();
+		Mono<String> upstream = Mono.fromCallable(() -> "respuesta " + calls.incrementAndGet());
+		Mono<String> failing = Mono.defer(() -> Mono.error(new IllegalStateException("fallo " + calls.incrementAndGet())));
+
+		// Quien recibe el resultado y vuelve a llamar en el mismo hilo no ve la llamada resuelta
+		String again = singleFlight.mono("ok", () -> upstream)
+				.flatMap(first -> singleFlight.mono("ok", () -> upstream))
+				.block();
+		assertEquals("respuesta 2", again);
+
+		String retried = singleFlight.mono("error", () -> failing)
+				.onErrorResume(e -> singleFlight.mono("error", () -> upstream))
+				.block();
+		assertEquals("respuesta 4", retried);
+		assertEquals(0, singleFlight.stats().inFlight());
+	}
+
+	@Test
+	void lateStreamSubscriberReplaysEmittedFragments() {
+		AtomicInteger calls = new AtomicInteger();
+		Flux<String> upstream = Flux.defer(() -> {
+			calls.incrementAndGet();
+			return Flux.just("a", "b", "c", "d").delayElements(Duration.ofMillis(100));
+		});
+
+		Flux<String> first = singleFlight.flux("k", () -> upstream);
+		Flux<String> late = Mono.delay(Duration.ofMillis(250)).thenMany(singleFlight.flux("k", () -> upstream));
+
+		List<List<String>> results = Flux.merge(first.collectList(), late.collectList()).collectList().block();
+
+		assertEquals(1, calls.get());
+		assertEquals(List.of("a", "b", "c", "d"), results.get(0));
+		assertEquals(List.of("a", "b", "c", "d"), results.get(1));
+		assertEquals(1, singleFlight.stats().coalesced());
+	}
+}
@@ -0,0 +1,108 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+class SseFramingTest {
+
+	private SseFraming newFraming(Duration heartbeat) {
+		SseFraming framing = new SseFraming();
+		ReflectionTestUtils.setField(framing, "coalesceEnabled", true);
+		ReflectionTestUtils.setField(framing, "maxBytes", 64);
+		ReflectionTestUtils.setField(framing, "window", Duration.ofMillis(30));
+		ReflectionTestUtils.setField(framing, "heartbeat", heartbeat);
+		return framing;
+	}
+
+	@Test
+	void burstOfTinyFragmentsIsCoalescedWithoutChangingText() {
+		SseFraming framing = newFraming(Duration.ZERO);
+		List<String> fragments = Flux.range(0, 200).map(i -> "tok" + i + " ").collectList().block();
+
+		List<String> frames = framing.coalesce(Flux.fromIterable(fragments)).collectList().block();
+
+		assertEquals(String.join("", fragments), String.join("", frames));
+		assertEquals("tok0 ", frames.get(0), "el primer fragmento sale sin esperar");
+		assertTrue(frames.size() < fragments.size() / 5, "se esperaban pocos eventos, hubo " + frames.size());
+	}
+
+	@Test
+	void slowFragmentsAreNotDelayedBeyondWindow() {
+		SseFraming framing = newFraming(Duration.ZERO);
+		Flux<String> slow = Flux.just("a", "b", "c").delayElements(Duration.ofMillis(100));
+
+		long start = System.nanoTime();
+		List<Long> arrivals = framing.coalesce(slow).map(f -> System.nanoTime() - start).collectList().block();
+
+		assertEquals(3, arrivals.size());
+		assertTrue(Duration.ofNanos(arrivals.get(2)).toMillis() < 400);
+	}
+
+	@Test
+	void heartbeatCommentsFillIdleGapsAndStopOnCompletion() {
+		SseFraming framing = newFraming(Duration.ofMillis(50));
+		Flux<String> idle = Flux.just("hola").concatWith(Flux.just("fin").delaySubscription(Duration.ofMillis(300)));
+
+		List<ServerSentEvent<String>> events = framing.frames(idle).collectList().block(Duration.ofSeconds(5));
+
+		long comments = events.stream().filter(e -> e.comment() != null).count();
+		assertTrue(comments >= 3, "se esperaban latidos, hubo " + comments);
+		assertEquals("holafin", events.stream().filter(e -> e.data() != null).map(ServerSentEvent::data)
+				.reduce("", String::concat));
+		assertEquals("fin", events.get(events.size() - 1).data());
+	}
+
+	@Test
+	void cancellingFramesCancelsUpstream() throws Exception {
+		SseFraming framing = newFraming(Duration.ofMillis(50));
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Flux<String> endless = Flux.interval(Duration.ofMillis(10)).map(i -> "x").doOnCancel(() -> cancelled.set(true));
+
+		Disposable subscription = framing.frames(endless).subscribe();
+		Thread.sleep(100);
+		subscription.dispose();
+
+		assertTrue(cancelled.get());
+	}
+
+	@Test
+	void resumableEventsCarryIdsAndEndWithDone() {
+		SseFraming framing = newFraming(Duration.ZERO);
+		Flux<StreamRegistry.Chunk> chunks = Flux.just(new StreamRegistry.Chunk("abc", 0, "hola"),
+				new StreamRegistry.Chunk("abc", 1, " mundo"));
+
+		List<ServerSentEvent<String>> events = framing.events("abc", chunks).collectList().block();
+
+		assertEquals(4, events.size());
+		assertEquals("abc:-1", events.get(0).id());
+		assertNull(events.get(0).data());
+		assertEquals("abc:1", events.get(2).id());
+		assertEquals(" mundo", events.get(2).data());
+		assertEquals("done", events.get(3).event());
+	}
+
+	@Test
+	void deadlineCutIsAnnouncedAsItsOwnEventBeforeDone() {
+		SseFraming framing = newFraming(Duration.ZERO);
+		Flux<StreamRegistry.Chunk> chunks = Flux.just(new StreamRegistry.Chunk("abc", 0, "hola"))
+				.concatWith(Flux.error(new GenerationBudgets.DeadlineExceededException(Duration.ofSeconds(1))));
+
+		List<ServerSentEvent<String>> events = framing.events("abc", chunks).collectList().block();
+
+		assertEquals(4, events.size());
+		assertEquals("hola", events.get(1).data());
+		assertEquals("deadline", events.get(2).event());
+		assertTrue(events.get(2).data().contains("Respuesta recortada"));
+		assertEquals("done", events.get(3).event());
+	}
+}
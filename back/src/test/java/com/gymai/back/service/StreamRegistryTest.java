@@ -0,0 +1,145 @@
+package com.gymai.back.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+class StreamRegistryTest {
+
+	static StreamRegistry newRegistry(int maxEvents, Duration ttl) {
+		StreamRegistry registry = new StreamRegistry();
+		ReflectionTestUtils.setField(registry, "maxEvents", maxEvents);
+		ReflectionTestUtils.setField(registry, "ttl", ttl);
+		ReflectionTestUtils.setField(registry, "detachGrace", Duration.ofMinutes(1));
+		return registry;
+	}
+
+	@Test
+	void reconnectResumesAfterLastDeliveredChunkWhileGenerationContinues() {
+		StreamRegistry registry = newRegistry(16, Duration.ofMinutes(1));
+		Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+		AtomicReference<String> stored = new AtomicReference<>();
+		AtomicInteger completions = new AtomicInteger();
+
+		String id = registry.start("s1", upstream.asFlux(), (reply, truncated) -> {
+			stored.set(reply);
+			completions.incrementAndGet();
+		});
+		upstream.tryEmitNext("Hola ");
+		upstream.tryEmitNext("qué ");
+
+		// El cliente recibe dos fragmentos y se corta; la generación sigue sin él.
+		List<StreamRegistry.Chunk> first = registry.chunks(id).take(2).collectList().block(Duration.ofSeconds(2));
+		upstream.tryEmitNext("tal");
+		upstream.tryEmitComplete();
+
+		List<StreamRegistry.Chunk> rest = registry.resume("s1", first.get(1).eventId())
+				.collectList().block(Duration.ofSeconds(2));
+
+		assertEquals(List.of(0L, 1L), first.stream().map(StreamRegistry.Chunk::seq).toList());
+		assertEquals(1, rest.size());
+		assertEquals("tal", rest.get(0).text());
+		assertEquals(2L, rest.get(0).seq());
+		assertEquals("Hola qué tal", stored.get());
+		assertEquals(1, completions.get());
+		assertEquals(1, registry.stats().resumed());
+	}
+
+	@Test
+	void resumeBeforeFirstChunkReplaysEverything() {
+		StreamRegistry registry = newRegistry(16, Duration.ofMinutes(1));
+		String id = registry.start("s1", Flux.just("a", "b", "c"), (reply, truncated) -> {});
+
+		List<String> texts = registry.resume("s1", StreamRegistry.eventId(id, -1))
+				.map(StreamRegistry.Chunk::text).collectList().block(Duration.ofSeconds(2));
+
+		assertEquals(List.of("a", "b", "c"), texts);
+	}
+
+	@Test
+	void chunksDroppedFromBufferCannotBeResumed() {
+		StreamRegistry registry = newRegistry(2, Duration.ofMinutes(1));
+		String id = registry.start("s1", Flux.range(0, 10).map(String::valueOf), (reply, truncated) -> {});
+
+		assertThrows(StreamRegistry.StreamExpiredException.class,
+				() -> registry.resume("s1", StreamRegistry.eventId(id, 3)).blockLast(Duration.ofSeconds(2)));
+		List<String> tail = registry.resume("s1", StreamRegistry.eventId(id, 7))
+				.map(StreamRegistry.Chunk::text).collectList().block(Duration.ofSeconds(2));
+		assertEquals(List.of("8", "9"), tail);
+	}
+
+	@Test
+	void unknownIdsOtherSessionsAndExpiredStreamsAreRejected() throws Exception {
+		StreamRegistry registry = newRegistry(16, Duration.ofMillis(50));
+		String id = registry.start("s1", Flux.just("a"), (reply, truncated) -> {});
+
+		assertThrows(StreamRegistry.StreamExpiredException.class,
+				() -> registry.resume("s2", StreamRegistry.eventId(id, 0)).blockLast());
+		assertThrows(StreamRegistry.StreamExpiredException.class,
+				() -> registry.resume("s1", "no-es-un-id").blockLast());
+
+		Thread.sleep(200);
+		assertThrows(StreamRegistry.StreamExpiredException.class,
+				() -> registry.resume("s1", StreamRegistry.eventId(id, 0)).blockLast());
+		assertEquals(0, registry.stats().streams());
+	}
+
+	@Test
+	void abandonedStreamIsCancelledAfterGraceAndStoredAsTruncated() throws Exception {
+		StreamRegistry registry = newRegistry(16, Duration.ofMinutes(1));
+		ReflectionTestUtils.setField(registry, "detachGrace", Duration.ofMillis(100));
+		AtomicBoolean cancelled = new AtomicBoolean();
+		AtomicReference<String> stored = new AtomicReference<>();
+		AtomicBoolean truncated = new AtomicBoolean();
+		Flux<String> endless = Flux.interval(Duration.ofMillis(20)).map(i -> "x")
+				.doOnCancel(() -> cancelled.set(true));
+
+		String id = registry.start("s1", endless, (reply, cut) -> {
+			stored.set(reply);
+			truncated.set(cut);
+		});
+		StreamRegistry.Chunk first = registry.chunks(id).blockFirst(Duration.ofSeconds(2));
+
+		// Una reconexión dentro del plazo mantiene viva la generación.
+		Thread.sleep(50);
+		registry.resume("s1", first.eventId()).take(3).blockLast(Duration.ofSeconds(2));
+		assertFalse(cancelled.get());
+
+		Thread.sleep(400);
+		assertTrue(cancelled.get());
+		assertTrue(truncated.get());
+		assertTrue(stored.get().startsWith("xxxx"));
+		assertEquals(1, registry.stats().cancelled());
+		assertThrows(StreamRegistry.StreamExpiredException.class,
+				() -> registry.resume("s1", first.eventId()).blockLast(Duration.ofSeconds(2)));
+	}
+
+	@Test
+	void deadlineCutIsStoredAsTruncatedAndReachesClients() {
+		StreamRegistry registry = newRegistry(16, Duration.ofMinutes(1));
+		AtomicReference<String> stored = new AtomicReference<>();
+		AtomicBoolean truncated = new AtomicBoolean();
+		Flux<String> cut = Flux.just("hola", " mun")
+				.concatWith(Flux.error(new GenerationBudgets.DeadlineExceededException(Duration.ofSeconds(1))));
+
+		String id = registry.start("s1", cut, (reply, wasCut) -> {
+			stored.set(reply);
+			truncated.set(wasCut);
+		});
+
+		assertEquals("hola mun", stored.get());
+		assertTrue(truncated.get());
+		assertThrows(GenerationBudgets.DeadlineExceededException.class,
+				() -> registry.chunks(id).blockLast(Duration.ofSeconds(2)));
+	}
+}
@@ -0,0 +1,96 @@
+package com.gymai.back.support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP local que imita la API REST de Gemini en los tests.
+ * Cada ruta se configura con un {@link HttpHandler}; por defecto responde a
+ * generateContent con un texto fijo tras un retardo configurable.
+ */
+public class GeminiStubServer implements AutoCloseable {
+
+	private final HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private volatile long delayMillis;
+	private volatile String replyText = "ok";
+
+	public GeminiStubServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/v1beta/models/", exchange -> {
+			requests.incrementAndGet();
+			exchange.getRequestBody().readAllBytes();
+			sleep(delayMillis);
+			respond(exchange, 200, "application/json", generateContentJson(replyText));
+		});
+		server.start();
+	}
+
+	public String baseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public void handle(String path, HttpHandler handler) {
+		try {
+			server.removeContext(path);
+		} catch (IllegalArgumentException noSuchContext) {
+			// Ruta nueva, no había manejador que sustituir.
+		}
+		server.createContext(path, exchange -> {
+			requests.incrementAndGet();
+			handler.handle(exchange);
+		});
+	}
+
+	public void setDelayMillis(long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	public void setReplyText(String replyText) {
+		this.replyText = replyText;
+	}
+
+	public int requestCount() {
+		return requests.get();
+	}
+
+	public static String generateContentJson(String text) {
+		String escaped = text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+		return "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + escaped + "\"}],\"role\":\"model\"}}]}";
+	}
+
+	public static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	public static void sleep(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
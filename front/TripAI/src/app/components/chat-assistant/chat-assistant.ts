@@ -41,6 +41,8 @@ export class ChatAssistant {
 
   isTyping = signal(false);
   pdfGenerating = signal<'routine' | 'diet' | null>(null);
+  // Consultas del trabajo de PDF antes de rendirse (una por segundo)
+  private readonly maxPdfPolls = 60;
 
   private previousMessageCount = 0;
 
@@ -54,6 +56,17 @@ export class ChatAssistant {
     return message.id || `${index}-${message.timestamp}`;
   }
 
+  // El backend cortó la respuesta por plazo: se marca para mostrar el aviso aparte del texto.
+  private markTruncated(botIndex: number) {
+    this.chat.messages.update((msgs: ChatMessage[]) => {
+      const updated = [...msgs];
+      const current = updated[botIndex];
+      if (!current) return msgs;
+      updated[botIndex] = { ...current, truncated: true };
+      return updated;
+    });
+  }
+
   private generateId(): string {
     return `${Date.now()}-${Math.random().toString(36).substr(2, 9)}`;
   }
@@ -134,27 +147,8 @@ export class ChatAssistant {
         ? 'Genera un plan de ENTRENAMIENTO detallado. IMPORTANTE: Estructura los días en una TABLA Markdown con las columnas: Día, Ejercicio, Series, Repeticiones. Usa encabezados claros (##) para las secciones principales.'
         : 'Genera un plan de DIETA detallado. IMPORTANTE: Estructura las comidas en una TABLA Markdown con las columnas: Comida, Opción 1, Opción 2, Calorías aprox. Usa encabezados claros (##) para las secciones principales.';
 
-    const profile = this.profileService.profile();
-    if (!profile) {
-      return baseInstruction;
-    }
-
-    const parts: string[] = [];
-    if (profile.age != null) parts.push(`edad: ${profile.age} años`);
-    if (profile.height != null) parts.push(`altura: ${profile.height} cm`);
-    if (profile.weight != null) parts.push(`peso: ${profile.weight} kg`);
-    if (profile.goal) parts.push(`objetivo: ${profile.goal}`);
-    if (profile.activity) parts.push(`actividad diaria: ${profile.activity}`);
-    if (profile.medicalNotes)
-      parts.push(`datos médicos: ${profile.medicalNotes}`);
-
-    if (!parts.length) {
-      return baseInstruction;
-    }
-
-    const profileText =
-      'Perfil del usuario para entreno y dieta: ' + parts.join(', ') + '.';
-    return profileText + '\n\nInstrucción para GymAI: ' + baseInstruction;
+    // El perfil ya está registrado en el backend (PUT /api/profile) y se añade al prompt allí.
+    return baseInstruction;
   }
 
   generateRoutine() {
@@ -169,8 +163,8 @@ export class ChatAssistant {
 
   private async triggerPdfDownload(kind: 'routine' | 'diet') {
     try {
-      const res = await fetch(`${environment.apiBaseUrl}/export/last-plan.pdf`);
-      if (!res.ok) return;
+      const res = await this.fetchPlanPdf();
+      if (!res || !res.ok) return;
       const blob = await res.blob();
       const url = URL.createObjectURL(blob);
       const a = document.createElement('a');
@@ -188,6 +182,41 @@ export class ChatAssistant {
     }
   }
 
+  // Toda la conversación en un PDF con índice; el servidor lo envía como adjunto
+  conversationPdfUrl(): string {
+    return `${environment.apiBaseUrl}/export/conversation.pdf?sessionId=${encodeURIComponent(
+      this.chat.sessionId
+    )}`;
+  }
+
+  /**
+   * Pide el PDF como trabajo en segundo plano y consulta su estado hasta que está listo
+   * (200). Si la cola del servidor está llena (503), usa la exportación directa.
+   */
+  private async fetchPlanPdf(): Promise<Response | null> {
+    const sessionId = encodeURIComponent(this.chat.sessionId);
+    const created = await fetch(`${environment.apiBaseUrl}/export/jobs`, {
+      method: 'POST',
+      headers: { 'Content-Type': 'application/json' },
+      body: JSON.stringify({ sessionId: this.chat.sessionId }),
+    });
+    if (created.status === 503) {
+      return fetch(`${environment.apiBaseUrl}/export/last-plan.pdf?sessionId=${sessionId}`);
+    }
+    if (!created.ok) return null;
+    const { jobId } = await created.json();
+
+    for (let attempt = 0; attempt < this.maxPdfPolls; attempt++) {
+      const res = await fetch(
+        `${environment.apiBaseUrl}/export/jobs/${jobId}?sessionId=${sessionId}`
+      );
+      if (res.status !== 202) return res;
+      const retryAfter = Number(res.headers.get('Retry-After')) || 1;
+      await new Promise((resolve) => setTimeout(resolve, retryAfter * 1000));
+    }
+    return null;
+  }
+
   private sendSpecialCommand(command: string, kind: 'routine' | 'diet') {
     const text = command.trim();
     if (!text) return;
@@ -210,7 +239,9 @@ export class ChatAssistant {
       },
       (err) => {
         console.error('Error en stream', err);
-      }
+      },
+      // Plan completo: presupuesto de generación más amplio que el de una respuesta de chat
+      'plan'
     );
   }
 
@@ -221,7 +252,8 @@ export class ChatAssistant {
   private isSystemCommandMessage(m: ChatMessage): boolean {
     return (
       m.sender === 'user' &&
-      m.content.startsWith('Perfil del usuario para entreno y dieta:')
+      (m.content.startsWith('Perfil del usuario para entreno y dieta:') ||
+        m.content.startsWith('Genera un plan de '))
     );
   }
 
@@ -266,36 +298,8 @@ export class ChatAssistant {
     this.draft.set('');
     this.form.reset({ message: '' });
 
-    const profile = this.profileService.profile();
-    let messageForGemini = text;
-
-    if (profile) {
-      const parts: string[] = [];
-      if (profile.age != null) {
-        parts.push(`edad: ${profile.age} años`);
-      }
-      if (profile.height != null) {
-        parts.push(`altura: ${profile.height} cm`);
-      }
-      if (profile.weight != null) {
-        parts.push(`peso: ${profile.weight} kg`);
-      }
-      if (profile.goal) {
-        parts.push(`objetivo: ${profile.goal}`);
-      }
-      if (profile.activity) {
-        parts.push(`actividad diaria: ${profile.activity}`);
-      }
-      if (profile.medicalNotes) {
-        parts.push(`datos médicos: ${profile.medicalNotes}`);
-      }
-
-      if (parts.length) {
-        const profileText =
-          'Perfil del usuario para entreno y dieta: ' + parts.join(', ') + '.';
-        messageForGemini = profileText + '\n\nMensaje del usuario: ' + text;
-      }
-    }
+    // Sólo el texto: el perfil viaja como hash y el backend reutiliza su versión renderizada.
+    const messageForGemini = text;
 
     const botIndex = this.chat.messages().length;
     this.chat.messages.update((m: ChatMessage[]) => [
@@ -389,7 +393,9 @@ export class ChatAssistant {
       (err) => {
         console.error('Error en stream', err);
         this.isTyping.set(false);
-      }
+      },
+      'chat',
+      () => this.markTruncated(botIndex)
     );
   }
 
@@ -428,11 +434,7 @@ export class ChatAssistant {
     const autoUserText =
       'Empieza con un primer análisis y plan inicial basado en este perfil.';
 
-    const profileText =
-      'Perfil del usuario para entreno y dieta: ' + parts.join(', ') + '.';
-
-    const messageForGemini =
-      profileText + '\n\nMensaje del usuario: ' + autoUserText;
+    const messageForGemini = autoUserText;
 
     const botIndex = this.chat.messages().length;
     this.chat.messages.update((m: ChatMessage[]) => [
@@ -488,7 +490,9 @@ export class ChatAssistant {
       (err) => {
         console.error('Error en stream', err);
         this.isTyping.set(false);
-      }
+      },
+      'chat',
+      () => this.markTruncated(botIndex)
     );
   }
 
@@ -1,26 +1,43 @@
 import { Injectable, signal, effect } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
+import { HttpClient, HttpErrorResponse } from '@angular/common/http';
 import { firstValueFrom, interval, switchMap } from 'rxjs';
 import { environment } from '../../environments/environment';
+import { ProfileService } from './profile-service';
 
 export interface ChatMessage {
   id?: string;
   sender: 'user' | 'bot';
   content: string;
   timestamp?: string;
+  truncated?: boolean;
 }
 
 @Injectable({ providedIn: 'root' })
 export class ChatService {
   private base = environment.apiBaseUrl;
   private storageKey = 'gymai_messages';
+  private sessionKey = 'gymai_session';
+  private maxStreamRetries = 3;
   messages = signal<ChatMessage[]>([]);
+  readonly sessionId = this.loadSessionId();
 
   private generateId(): string {
     return `${Date.now()}-${Math.random().toString(36).substr(2, 9)}`;
   }
 
-  constructor(private http: HttpClient) {
+  private loadSessionId(): string {
+    try {
+      const existing = localStorage.getItem(this.sessionKey);
+      if (existing) return existing;
+      const created = crypto.randomUUID();
+      localStorage.setItem(this.sessionKey, created);
+      return created;
+    } catch {
+      return this.generateId();
+    }
+  }
+
+  constructor(private http: HttpClient, private profiles: ProfileService) {
     // Cargar historial desde localStorage al iniciar (si existe)
     try {
       const raw = localStorage.getItem(this.storageKey);
@@ -45,29 +62,89 @@ export class ChatService {
     text: string,
     onChunk: (chunk: string) => void,
     onDone?: () => void,
-    onError?: (err: any) => void
+    onError?: (err: any) => void,
+    budget: 'chat' | 'plan' = 'chat',
+    onTruncated?: (notice: string) => void
   ): void {
-    const url = `${this.base}/chat/stream?message=${encodeURIComponent(text)}`;
+    this.openStream(text, onChunk, onDone, onError, budget, onTruncated, true);
+  }
+
+  private async openStream(
+    text: string,
+    onChunk: (chunk: string) => void,
+    onDone: (() => void) | undefined,
+    onError: ((err: any) => void) | undefined,
+    budget: 'chat' | 'plan',
+    onTruncated: ((notice: string) => void) | undefined,
+    retryProfile: boolean
+  ): Promise<void> {
+    const { message, profileHash } = await this.withProfile(text);
+    let url = `${this.base}/chat/stream?message=${encodeURIComponent(
+      message
+    )}&sessionId=${encodeURIComponent(this.sessionId)}&budget=${budget}`;
+    if (profileHash) {
+      url += `&profileHash=${encodeURIComponent(profileHash)}`;
+    }
     const es = new EventSource(url);
+    let retries = 0;
 
     es.onmessage = (event) => {
+      retries = 0;
       const chunk = event.data as string;
       if (chunk) {
         onChunk(chunk);
       }
     };
 
-    es.onerror = (err) => {
+    // El servidor marca el final con 'done'; sin él, un cierre es un corte de red.
+    es.addEventListener('done', () => {
       es.close();
-      // Muchos navegadores disparan 'error' cuando el servidor cierra la conexión SSE.
-      // Si el EventSource ya está cerrado, lo tratamos como finalización normal.
-      if ((es as EventSource).readyState === EventSource.CLOSED) {
-        if (onDone) {
-          onDone();
-        }
+      if (onDone) {
+        onDone();
+      }
+    });
+
+    // Respuesta cortada por plazo: el aviso llega aparte del texto, seguido de 'done'.
+    es.addEventListener('deadline', (event) => {
+      if (onTruncated) {
+        onTruncated((event as MessageEvent).data as string);
+      }
+    });
+
+    // El backend no conoce el hash: se registra el perfil otra vez y se reenvía una vez.
+    es.addEventListener('profile-missing', (event) => {
+      es.close();
+      this.profiles.invalidateHash();
+      if (retryProfile) {
+        this.openStream(text, onChunk, onDone, onError, budget, onTruncated, false);
         return;
       }
+      if (onError) {
+        onError(event);
+      }
+      if (onDone) {
+        onDone();
+      }
+    });
 
+    // La respuesta ya no se puede reanudar en el servidor.
+    es.addEventListener('expired', (event) => {
+      es.close();
+      if (onError) {
+        onError(event);
+      }
+      if (onDone) {
+        onDone();
+      }
+    });
+
+    es.onerror = (err) => {
+      // Mientras está en CONNECTING el navegador reconecta solo enviando Last-Event-ID,
+      // y el servidor continúa la misma respuesta sin repetir el mensaje.
+      if (es.readyState === EventSource.CONNECTING && retries++ < this.maxStreamRetries) {
+        return;
+      }
+      es.close();
       if (onError) {
         onError(err);
       }
@@ -80,7 +157,9 @@ export class ChatService {
   async resetConversation(): Promise<void> {
     try {
       await firstValueFrom(
-        this.http.post<void>(`${this.base}/messages/reset`, {})
+        this.http.post<void>(`${this.base}/messages/reset`, {}, {
+          params: { sessionId: this.sessionId },
+        })
       );
     } catch {
       // incluso si falla el backend, limpiamos el estado local para evitar confusión
@@ -92,18 +171,42 @@ export class ChatService {
     } catch {}
   }
 
-  async sendMessage(text: string) {
-    const body = { message: text };
-    const res: any = await firstValueFrom(
-      this.http.post(`${this.base}/chat`, body)
-    );
-    // respuesta inmediata ya guardada en back; opcional: actualizar UI inmediatamente
-    return res?.reply;
+  async sendMessage(text: string, retryProfile = true): Promise<any> {
+    const { message, profileHash } = await this.withProfile(text);
+    const body = { message, sessionId: this.sessionId, profileHash };
+    try {
+      const res: any = await firstValueFrom(
+        this.http.post(`${this.base}/chat`, body)
+      );
+      // respuesta inmediata ya guardada en back; opcional: actualizar UI inmediatamente
+      return res?.reply;
+    } catch (err) {
+      // 409: el backend no conoce el hash; se registra el perfil otra vez y se reenvía una vez.
+      if (err instanceof HttpErrorResponse && err.status === 409 && retryProfile) {
+        this.profiles.invalidateHash();
+        return this.sendMessage(text, false);
+      }
+      throw err;
+    }
+  }
+
+  // El perfil va registrado en el backend y cada mensaje sólo lleva su hash; si no se
+  // pudo registrar, el mensaje sale con el perfil incrustado como antes.
+  private async withProfile(
+    text: string
+  ): Promise<{ message: string; profileHash: string | null }> {
+    const profileHash = await this.profiles.ensureHash(this.sessionId);
+    if (profileHash) {
+      return { message: text, profileHash };
+    }
+    return { message: this.profiles.embedInMessage(text), profileHash: null };
   }
 
   async loadMessagesOnce() {
     const msgs = await firstValueFrom(
-      this.http.get<ChatMessage[]>(`${this.base}/messages`)
+      this.http.get<ChatMessage[]>(`${this.base}/messages`, {
+        params: { sessionId: this.sessionId },
+      })
     );
     const withTs = (msgs || [])
       .filter(
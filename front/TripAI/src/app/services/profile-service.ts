@@ -1,4 +1,7 @@
 import { Injectable, signal } from '@angular/core';
+import { HttpClient } from '@angular/common/http';
+import { firstValueFrom } from 'rxjs';
+import { environment } from '../../environments/environment';
 
 export type GymGoal = 'adelgazar' | 'ganar_masa' | 'definir' | 'mantener' | '';
 
@@ -12,22 +15,27 @@ export interface GymProfile {
 }
 
 const STORAGE_KEY = 'gymai_profile';
+const HASH_KEY = 'gymai_profile_hash';
 
 @Injectable({ providedIn: 'root' })
 export class ProfileService {
   profile = signal<GymProfile | null>(null);
+  // Hash con el que el backend conoce el perfil actual (PUT /api/profile).
+  private profileHash: string | null = null;
 
-  constructor() {
+  constructor(private http: HttpClient) {
     try {
       const raw = localStorage.getItem(STORAGE_KEY);
       if (raw) {
         this.profile.set(JSON.parse(raw) as GymProfile);
       }
+      this.profileHash = localStorage.getItem(HASH_KEY);
     } catch {}
   }
 
   saveProfile(p: GymProfile) {
     this.profile.set(p);
+    this.invalidateHash();
     try {
       localStorage.setItem(STORAGE_KEY, JSON.stringify(p));
     } catch {}
@@ -35,8 +43,69 @@ export class ProfileService {
 
   clearProfile() {
     this.profile.set(null);
+    this.invalidateHash();
     try {
       localStorage.removeItem(STORAGE_KEY);
     } catch {}
   }
+
+  /**
+   * Hash del perfil registrado en el backend, registrándolo si hace falta.
+   * Null si no hay perfil o no se pudo registrar; en ese caso el mensaje debe
+   * llevar el perfil incrustado ({@link embedInMessage}).
+   */
+  async ensureHash(sessionId: string): Promise<string | null> {
+    const profile = this.profile();
+    if (!profile) {
+      return null;
+    }
+    if (this.profileHash) {
+      return this.profileHash;
+    }
+    try {
+      const res = await firstValueFrom(
+        this.http.put<{ profileHash: string; version: number }>(
+          `${environment.apiBaseUrl}/profile`,
+          profile,
+          { params: { sessionId } }
+        )
+      );
+      this.profileHash = res.profileHash;
+      localStorage.setItem(HASH_KEY, res.profileHash);
+    } catch {}
+    return this.profileHash;
+  }
+
+  /**
+   * Formato anterior al registro del perfil: el perfil va incrustado en el propio
+   * mensaje y el backend lo separa por el marcador "Mensaje del usuario:". Se usa
+   * cuando no hay hash (el PUT falló), para no enviar el mensaje sin perfil.
+   */
+  embedInMessage(text: string): string {
+    const profile = this.profile();
+    if (!profile) {
+      return text;
+    }
+    const parts: string[] = [];
+    if (profile.age != null) parts.push(`edad: ${profile.age} años`);
+    if (profile.height != null) parts.push(`altura: ${profile.height} cm`);
+    if (profile.weight != null) parts.push(`peso: ${profile.weight} kg`);
+    if (profile.goal) parts.push(`objetivo: ${profile.goal}`);
+    if (profile.activity) parts.push(`actividad diaria: ${profile.activity}`);
+    if (profile.medicalNotes) parts.push(`datos médicos: ${profile.medicalNotes}`);
+    if (!parts.length) {
+      return text;
+    }
+    const profileText =
+      'Perfil del usuario para entreno y dieta: ' + parts.join(', ') + '.';
+    return profileText + '\n\nMensaje del usuario: ' + text;
+  }
+
+  // El backend ya no conoce el hash (p. ej. tras reiniciarse): se registrará de nuevo.
+  invalidateHash() {
+    this.profileHash = null;
+    try {
+      localStorage.removeItem(HASH_KEY);
+    } catch {}
+  }
 }